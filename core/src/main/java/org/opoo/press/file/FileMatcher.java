@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.file;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled set of file patterns.
+ *
+ * <p>Supported patterns:</p>
+ * <ul>
+ *     <li>A pattern without '/' matches the file name at any depth, e.g.
+ *     <code>Thumbs.db</code>, <code>*.bak</code>, <code>_*</code>, <code>*~</code>.</li>
+ *     <li>A pattern with '/' matches the path relative to the source root, a leading
+ *     '/' is optional, e.g. <code>drafts/old</code>, <code>/posts/2010/**</code>,
+ *     <code>images/*.psd</code>.</li>
+ *     <li>'*' matches any characters except '/', '**' matches any characters,
+ *     '?' matches one character except '/'.</li>
+ * </ul>
+ *
+ * <p>Literal names and paths are looked up in hash sets, name prefixes
+ * (<code>abc*</code>), name suffixes (<code>*abc</code>) and path prefixes
+ * (<code>a/b/**</code>) in tries, only the other patterns are matched by
+ * regular expressions.</p>
+ *
+ * @author Alex Lin
+ */
+public class FileMatcher {
+    private final Set<String> names = new HashSet<String>();
+    private final CharTrie namePrefixes = new CharTrie();
+    private final CharTrie nameSuffixes = new CharTrie();
+    private final List<Pattern> namePatterns = new ArrayList<Pattern>();
+
+    private final Set<String> paths = new HashSet<String>();
+    private final CharTrie pathPrefixes = new CharTrie();
+    private final List<Pattern> pathPatterns = new ArrayList<Pattern>();
+
+    private boolean empty = true;
+
+    public FileMatcher(Collection<String> patterns){
+        if(patterns != null){
+            for(String pattern: patterns){
+                add(pattern);
+            }
+        }
+    }
+
+    public FileMatcher(String... patterns){
+        for(String pattern: patterns){
+            add(pattern);
+        }
+    }
+
+    private void add(String pattern){
+        if(pattern == null){
+            return;
+        }
+        pattern = pattern.trim().replace('\\', '/');
+        while(pattern.startsWith("/")){
+            pattern = pattern.substring(1);
+        }
+        while(pattern.endsWith("/")){
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        if(pattern.length() == 0){
+            return;
+        }
+        empty = false;
+
+        if(pattern.indexOf('/') == -1){
+            addNamePattern(pattern);
+        }else{
+            addPathPattern(pattern);
+        }
+    }
+
+    private void addNamePattern(String pattern){
+        if(!hasWildcard(pattern)){
+            names.add(pattern);
+            return;
+        }
+
+        int last = pattern.length() - 1;
+        if(last == 0){
+            namePatterns.add(toRegex(pattern));
+        }else if(pattern.charAt(last) == '*' && !hasWildcard(pattern.substring(0, last))){
+            namePrefixes.add(pattern.substring(0, last), false);
+        }else if(pattern.charAt(0) == '*' && !hasWildcard(pattern.substring(1))){
+            nameSuffixes.add(pattern.substring(1), true);
+        }else{
+            namePatterns.add(toRegex(pattern));
+        }
+    }
+
+    private void addPathPattern(String pattern){
+        if(!hasWildcard(pattern)){
+            paths.add(pattern);
+            return;
+        }
+
+        if(pattern.endsWith("/**")){
+            String prefix = pattern.substring(0, pattern.length() - 3);
+            if(!hasWildcard(prefix)){
+                //the directory itself and everything under it
+                paths.add(prefix);
+                pathPrefixes.add(prefix + "/", false);
+                return;
+            }
+        }
+        pathPatterns.add(toRegex(pattern));
+    }
+
+    /**
+     * @return true if no pattern compiled
+     */
+    public boolean isEmpty(){
+        return empty;
+    }
+
+    /**
+     * @param path the path relative to the source root, separated by '/', without leading '/'
+     * @param name the file name
+     * @return true if the file matches any pattern
+     */
+    public boolean matches(String path, String name){
+        if(empty){
+            return false;
+        }
+
+        if(names.contains(name)
+                || namePrefixes.matchesPrefixOf(name, false)
+                || nameSuffixes.matchesPrefixOf(name, true)){
+            return true;
+        }
+        for(Pattern pattern: namePatterns){
+            if(pattern.matcher(name).matches()){
+                return true;
+            }
+        }
+
+        if(path == null){
+            return false;
+        }
+        if(paths.contains(path) || pathPrefixes.matchesPrefixOf(path, false)){
+            return true;
+        }
+        for(Pattern pattern: pathPatterns){
+            if(pattern.matcher(path).matches()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasWildcard(String s){
+        return s.indexOf('*') != -1 || s.indexOf('?') != -1;
+    }
+
+    static Pattern toRegex(String glob){
+        StringBuilder sb = new StringBuilder();
+        int length = glob.length();
+        for(int i = 0 ; i < length ; i++){
+            char c = glob.charAt(i);
+            if(c == '*'){
+                if(i + 1 < length && glob.charAt(i + 1) == '*'){
+                    i++;
+                    //'**/' matches zero or more directories
+                    if(i + 1 < length && glob.charAt(i + 1) == '/'){
+                        i++;
+                        sb.append("(?:.*/)?");
+                    }else{
+                        sb.append(".*");
+                    }
+                }else{
+                    sb.append("[^/]*");
+                }
+            }else if(c == '?'){
+                sb.append("[^/]");
+            }else if("\\.[]{}()+-^$|".indexOf(c) != -1){
+                sb.append('\\').append(c);
+            }else{
+                sb.append(c);
+            }
+        }
+        return Pattern.compile(sb.toString());
+    }
+
+    /**
+     * Character trie, reports whether any added string is a prefix
+     * (or a suffix if added and matched reversed) of the input.
+     */
+    private static class CharTrie{
+        private final Node root = new Node();
+        private boolean empty = true;
+
+        void add(String s, boolean reverse){
+            Node node = root;
+            int length = s.length();
+            for(int i = 0 ; i < length ; i++){
+                char c = s.charAt(reverse ? length - 1 - i : i);
+                Node child = node.children.get(c);
+                if(child == null){
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.terminal = true;
+            empty = false;
+        }
+
+        boolean matchesPrefixOf(String s, boolean reverse){
+            if(empty){
+                return false;
+            }
+            Node node = root;
+            int length = s.length();
+            for(int i = 0 ; i < length ; i++){
+                node = node.children.get(s.charAt(reverse ? length - 1 - i : i));
+                if(node == null){
+                    return false;
+                }
+                if(node.terminal){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Node{
+        private final Map<Character,Node> children = new HashMap<Character, Node>(4);
+        private boolean terminal;
+    }
+}
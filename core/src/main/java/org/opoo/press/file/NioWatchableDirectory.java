@@ -0,0 +1,316 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Watches a directory tree by native file events of {@link WatchService}.
+ *
+ * <p>All sub directories accepted by the file filter are registered, new
+ * directories are registered and scanned when created, the events of a
+ * registered directory are not rescanned. Events are collected by a daemon
+ * thread, {@link #check()} compares the changed paths with the last known
+ * state, so a file modified many times between checks is reported once, and a
+ * file created and deleted between checks is not reported.</p>
+ *
+ * <p>Use {@link #create(File, FileFilter)}, which falls back to the polling
+ * {@link WatchableDirectory} if the file system has no native events.</p>
+ *
+ * @author Alex Lin
+ */
+public class NioWatchableDirectory implements Watchable {
+	private static final Logger log = LoggerFactory.getLogger(NioWatchableDirectory.class);
+	private static Boolean nativeEventsSupported;
+
+	private final File directory;
+	private final FileFilter fileFilter;
+	private WatchService watchService;
+	private final Map<WatchKey,Path> keys = new ConcurrentHashMap<WatchKey, Path>();
+	private final Set<Path> registeredPaths = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+	//absolute path => {lastModified, length}
+	private final NavigableMap<String,long[]> files = new TreeMap<String, long[]>();
+	private final ConcurrentLinkedQueue<Path> changedPaths = new ConcurrentLinkedQueue<Path>();
+	private final Set<Path> modifiedPaths = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+	private final Set<Path> overflowPaths = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+	private Thread thread;
+
+	public NioWatchableDirectory(File directory, FileFilter fileFilter) {
+		this.directory = directory;
+		this.fileFilter = fileFilter;
+	}
+
+	/**
+	 * @param directory the directory to watch
+	 * @param fileFilter the file filter or null if none
+	 * @return native watchable if supported, otherwise the polling one
+	 */
+	public static Watchable create(File directory, FileFilter fileFilter){
+		if(isNativeEventsSupported()){
+			return new NioWatchableDirectory(directory, fileFilter);
+		}
+		return new WatchableDirectory(directory, fileFilter);
+	}
+
+	private static synchronized boolean isNativeEventsSupported(){
+		if(nativeEventsSupported == null){
+			try{
+				WatchService service = FileSystems.getDefault().newWatchService();
+				//the polling implementation of JDK, e.g. on Mac OS X
+				nativeEventsSupported = !service.getClass().getName().contains("Polling");
+				service.close();
+			}catch(Exception e){
+				nativeEventsSupported = false;
+			}
+			if(!nativeEventsSupported){
+				log.info("Native file events not supported, watching files by polling.");
+			}
+		}
+		return nativeEventsSupported;
+	}
+
+	@Override
+	public void initialize() {
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException e) {
+			throw new RuntimeException("Create watch service failed", e);
+		}
+		synchronized (files){
+			scan(directory, new HashMap<String, long[]>());
+		}
+
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				processEvents();
+			}
+		}, "watch-" + directory.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void processEvents(){
+		while(true){
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException e) {
+				return;
+			} catch (ClosedWatchServiceException e) {
+				return;
+			}
+
+			Path dir = keys.get(key);
+			if(dir != null){
+				for(WatchEvent<?> event: key.pollEvents()){
+					WatchEvent.Kind<?> kind = event.kind();
+					if(kind == StandardWatchEventKinds.OVERFLOW){
+						//events lost, rescan the directory
+						overflowPaths.add(dir);
+						changedPaths.add(dir);
+						continue;
+					}
+					Path path = dir.resolve((Path) event.context());
+					if(kind == StandardWatchEventKinds.ENTRY_MODIFY){
+						modifiedPaths.add(path);
+					}else if(kind == StandardWatchEventKinds.ENTRY_CREATE){
+						//a directory deleted and created again, before its key cancelled
+						registeredPaths.remove(path);
+					}
+					changedPaths.add(path);
+				}
+			}
+			if(!key.reset()){
+				keys.remove(key);
+				if(dir != null){
+					registeredPaths.remove(dir);
+				}
+			}
+			WatchSignal.signal();
+		}
+	}
+
+	@Override
+	public Result check() {
+		Result result = Result.newResult();
+		if(changedPaths.isEmpty()){
+			return result;
+		}
+
+		Set<Path> paths = new LinkedHashSet<Path>();
+		Path path;
+		while((path = changedPaths.poll()) != null){
+			paths.add(path);
+		}
+
+		synchronized (files){
+			for(Path p: paths){
+				File file = p.toFile();
+				Map<String,long[]> found = new HashMap<String, long[]>();
+				if(file.isDirectory()){
+					//the files of a registered directory are in its own events
+					if(!overflowPaths.remove(p) && registeredPaths.contains(p)){
+						continue;
+					}
+					if(accept(file)){
+						scan(file, found);
+					}
+					compare(result, file.getAbsolutePath() + File.separator, found);
+				}else{
+					boolean modified = modifiedPaths.remove(p);
+					if(file.isFile() && accept(file)){
+						String key = file.getAbsolutePath();
+						long[] current = new long[]{file.lastModified(), file.length()};
+						long[] previous = files.put(key, current);
+						if(previous == null){
+							result.addCreatedFile(file);
+						}else if(modified || previous[0] != current[0] || previous[1] != current[1]){
+							//modified time is in seconds on some platforms
+							result.addUpdatedFile(file);
+						}
+					}else{
+						//a deleted file, or a deleted directory with its files
+						if(files.remove(file.getAbsolutePath()) != null){
+							result.addDeletedFile(file);
+						}
+						compare(result, file.getAbsolutePath() + File.separator, found);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Compares the files found under the prefix with the known files.
+	 */
+	private void compare(Result result, String prefix, Map<String,long[]> found){
+		NavigableMap<String,long[]> known = files.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+		List<String> deleted = new ArrayList<String>();
+		for(Map.Entry<String,long[]> entry: known.entrySet()){
+			long[] current = found.remove(entry.getKey());
+			if(current == null){
+				deleted.add(entry.getKey());
+			}else if(current[0] != entry.getValue()[0] || current[1] != entry.getValue()[1]){
+				entry.setValue(current);
+				result.addUpdatedFile(new File(entry.getKey()));
+			}
+		}
+		for(String key: deleted){
+			files.remove(key);
+			result.addDeletedFile(new File(key));
+		}
+		for(Map.Entry<String,long[]> entry: found.entrySet()){
+			files.put(entry.getKey(), entry.getValue());
+			result.addCreatedFile(new File(entry.getKey()));
+		}
+	}
+
+	/**
+	 * Registers the directory tree, collects files to <code>found</code>, and
+	 * puts them to the known files on initialization.
+	 */
+	private void scan(File dir, Map<String,long[]> found){
+		register(dir);
+		File[] list = dir.listFiles();
+		if(list == null){
+			return;
+		}
+		for(File file: list){
+			if(!accept(file)){
+				continue;
+			}
+			if(file.isDirectory()){
+				scan(file, found);
+			}else if(file.isFile()){
+				long[] value = new long[]{file.lastModified(), file.length()};
+				if(thread == null){
+					files.put(file.getAbsolutePath(), value);
+				}else{
+					found.put(file.getAbsolutePath(), value);
+				}
+			}
+		}
+	}
+
+	private void register(File dir){
+		try {
+			Path path = dir.toPath();
+			WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			keys.put(key, path);
+			registeredPaths.add(path);
+		} catch (IOException e) {
+			log.warn("Watch directory failed: {}", dir);
+		}
+	}
+
+	private boolean accept(File file){
+		return fileFilter == null || fileFilter.accept(file);
+	}
+
+	@Override
+	public void destroy() {
+		try {
+			if(watchService != null){
+				watchService.close();
+			}
+		} catch (IOException e) {
+			log.debug("Close watch service failed", e);
+		}
+		if(thread != null){
+			thread.interrupt();
+			thread = null;
+		}
+		keys.clear();
+		registeredPaths.clear();
+		synchronized (files){
+			files.clear();
+		}
+		changedPaths.clear();
+		modifiedPaths.clear();
+		overflowPaths.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "NioWatchableDirectory(" + directory + ")";
+	}
+}
@@ -64,6 +64,41 @@ public class Result {
 		return this;
 	}
 
+	/**
+	 * Merges the changes happened after this result, a file keeps its latest
+	 * state, e.g. a file created then deleted is removed from result.
+	 *
+	 * @param later the later result
+	 * @return this result
+	 */
+	public Result merge(Result later){
+		for(File f: later.deletedFiles){
+			boolean created = createdFiles.remove(f);
+			updatedFiles.remove(f);
+			if(!created && !deletedFiles.contains(f)){
+				deletedFiles.add(f);
+			}
+		}
+		for(File f: later.createdFiles){
+			if(deletedFiles.remove(f)){
+				if(!updatedFiles.contains(f)){
+					updatedFiles.add(f);
+				}
+			}else if(!createdFiles.contains(f)){
+				createdFiles.add(f);
+			}
+		}
+		for(File f: later.updatedFiles){
+			if(!createdFiles.contains(f) && !updatedFiles.contains(f)){
+				updatedFiles.add(f);
+			}
+		}
+		this.size = updatedFiles.size()
+				+ createdFiles.size()
+				+ deletedFiles.size();
+		return this;
+	}
+
 	public List<File> getUpdatedFiles() {
 		return updatedFiles;
 	}
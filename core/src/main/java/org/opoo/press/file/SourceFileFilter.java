@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.file;
+
+import org.opoo.press.Site;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * File filter shared by the source walker, the stale checker and the site
+ * observer. A rejected directory is never descended into.
+ *
+ * <p>A file is accepted if it matches any <code>includes</code> pattern,
+ * otherwise rejected if it matches any <code>excludes</code> pattern.
+ * Patterns are compiled by {@link FileMatcher} and matched against the file
+ * name and the path relative to the root directory it belongs to.</p>
+ *
+ * @author Alex Lin
+ */
+public class SourceFileFilter implements FileFilter {
+    /**
+     * Files never read as sources or assets.
+     */
+    public static final String[] DEFAULT_EXCLUDES = {".*", "_*", "#*", "*~"};
+
+    /**
+     * Files never watched or checked in templates directory, underscore files are
+     * included templates.
+     */
+    public static final String[] DEFAULT_TEMPLATE_EXCLUDES = {".*", "#*", "*~"};
+
+    //only Windows has a hidden attribute, elsewhere hidden files start with '.'
+    private static final boolean CHECK_HIDDEN_ATTRIBUTE = File.separatorChar == '\\';
+
+    private final String[] roots;
+    private final FileMatcher includes;
+    private final FileMatcher excludes;
+
+    /**
+     * @param roots the root directories, used to resolve relative paths
+     * @param includes include patterns, may be null
+     * @param excludes exclude patterns, may be null
+     */
+    public SourceFileFilter(List<File> roots, List<String> includes, List<String> excludes) {
+        this.roots = new String[roots.size()];
+        for(int i = 0 ; i < this.roots.length ; i++){
+            String path = roots.get(i).getAbsolutePath();
+            this.roots[i] = path.endsWith(File.separator) ? path : path + File.separator;
+        }
+        //nested roots, the longest one first
+        Arrays.sort(this.roots, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o2.length() - o1.length();
+            }
+        });
+        this.includes = new FileMatcher(includes);
+        this.excludes = new FileMatcher(excludes);
+    }
+
+    /**
+     * Filter for site sources and assets, uses <code>includes</code> and
+     * <code>excludes</code> of site configuration.
+     */
+    public static SourceFileFilter createSiteFilter(Site site){
+        List<File> roots = new ArrayList<File>(site.getSources());
+        if(site.getAssets() != null){
+            roots.addAll(site.getAssets());
+        }
+        List<String> excludes = new ArrayList<String>(Arrays.asList(DEFAULT_EXCLUDES));
+        List<String> configExcludes = site.getConfig().get("excludes");
+        if(configExcludes != null){
+            excludes.addAll(configExcludes);
+        }
+        List<String> includes = site.getConfig().get("includes");
+        return new SourceFileFilter(roots, includes, excludes);
+    }
+
+    /**
+     * Filter for site templates.
+     */
+    public static SourceFileFilter createTemplatesFilter(Site site){
+        return new SourceFileFilter(Arrays.asList(site.getTemplates()), null,
+                Arrays.asList(DEFAULT_TEMPLATE_EXCLUDES));
+    }
+
+    @Override
+    public boolean accept(File file) {
+        String name = file.getName();
+        if(name.length() == 0){
+            return true;
+        }
+
+        String path = getRelativePath(file);
+        if(includes.matches(path, name)){
+            return true;
+        }
+        if(excludes.matches(path, name)){
+            return false;
+        }
+        return !CHECK_HIDDEN_ATTRIBUTE || !file.isHidden();
+    }
+
+    private String getRelativePath(File file){
+        String path = file.getAbsolutePath();
+        for(String root: roots){
+            if(path.startsWith(root)){
+                path = path.substring(root.length());
+                return File.separatorChar == '/' ? path : path.replace(File.separatorChar, '/');
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.file;
+
+/**
+ * Wakes up the thread which waits for file changes, signaled by
+ * {@link NioWatchableDirectory} when native file events received.
+ *
+ * @author Alex Lin
+ */
+public final class WatchSignal {
+	private static final Object lock = new Object();
+	private static long count = 0;
+	/**
+	 * The count of signals consumed by {@link #await(long, long, long)}, the
+	 * signals after it (e.g. during the last check) are not missed.
+	 */
+	private static long consumed = 0;
+	private static long lastSignalTime = 0;
+
+	private WatchSignal(){
+	}
+
+	static void signal(){
+		synchronized (lock){
+			count++;
+			lastSignalTime = System.currentTimeMillis();
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until a file event signaled since the last signaled return, or the
+	 * timeout elapsed. After the first signal, waits until no more signal in the
+	 * quiet period, so a burst of events (e.g. saving or copying many files) is
+	 * checked once.
+	 *
+	 * @param timeoutMillis max time to wait for the first signal
+	 * @param quietMillis the quiet period
+	 * @param maxDelayMillis max time to wait for the quiet period
+	 * @return true if signaled, false if timeout
+	 * @throws InterruptedException if interrupted
+	 */
+	public static boolean await(long timeoutMillis, long quietMillis, long maxDelayMillis) throws InterruptedException{
+		synchronized (lock){
+			long start = System.currentTimeMillis();
+			while(count == consumed){
+				long wait = timeoutMillis - (System.currentTimeMillis() - start);
+				if(wait <= 0){
+					return false;
+				}
+				lock.wait(wait);
+			}
+
+			long first = System.currentTimeMillis();
+			while(true){
+				long now = System.currentTimeMillis();
+				long quiet = lastSignalTime + quietMillis - now;
+				long max = first + maxDelayMillis - now;
+				if(quiet <= 0 || max <= 0){
+					consumed = count;
+					return true;
+				}
+				lock.wait(Math.min(quiet, max));
+			}
+		}
+	}
+}
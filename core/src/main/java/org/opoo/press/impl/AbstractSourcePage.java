@@ -45,6 +45,8 @@ public abstract class AbstractSourcePage extends SimplePage implements Base, Con
     private DateFormat f1 = new SimpleDateFormat(DATE_FORMAT_PATTERN_1);
     private DateFormat f2 = new SimpleDateFormat(DATE_FORMAT_PATTERN_2);
 
+    private volatile boolean contentLoaded;
+
     AbstractSourcePage(Site site, Source source, Pager pager) {
         super(site);
 
@@ -56,7 +58,6 @@ public abstract class AbstractSourcePage extends SimplePage implements Base, Con
         setPager(pager);
 
         String title = (String) source.getMeta().get("title");
-        String content = source.getContent();
         String layout = (String) source.getMeta().get("layout");
         String permalink = (String) source.getMeta().get("permalink");
         String url = (String) source.getMeta().get("url");
@@ -75,7 +76,6 @@ public abstract class AbstractSourcePage extends SimplePage implements Base, Con
         boolean published = (bool == null || bool.booleanValue());
 
         setTitle(published ? title : "[Draft]" + title);
-        setContent(content);
         setLayout(layout);
         setPermalink(permalink);
         setPath(path);
@@ -92,6 +92,46 @@ public abstract class AbstractSourcePage extends SimplePage implements Base, Con
             url = buildUrl();
         }
         setUrl(url);
+
+        //the content of source is loaded on demand, see loadContent()
+    }
+
+    @Override
+    public String getContent() {
+        loadContent();
+        return super.getContent();
+    }
+
+    @Override
+    public void setContent(String content) {
+        contentLoaded = true;
+        super.setContent(content);
+    }
+
+    /**
+     * Loads the content from source if not loaded yet. Reading the source
+     * content is deferred until the content is required (normally right
+     * before converting), so the site model can be built from front-matter only.
+     */
+    protected void loadContent(){
+        if(contentLoaded){
+            return;
+        }
+        synchronized (this){
+            if(!contentLoaded){
+                String content = getSource().getContent();
+                super.setContent(content);
+                onContentLoaded(content);
+                contentLoaded = true;
+            }
+        }
+    }
+
+    /**
+     * Callback after the source content loaded.
+     * @param content the source content
+     */
+    protected void onContentLoaded(String content){
     }
 
     protected Date lookup(Map<String, Object> frontMatter, String dateName) {
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Page;
+import org.opoo.press.ProcessorAdapter;
+import org.opoo.press.Site;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the asset fingerprints manifest before rendering and rewrites the
+ * asset references in rendered HTML pages.
+ *
+ * @author Alex Lin
+ * @see AssetFingerprints
+ */
+public class AssetFingerprintProcessor extends ProcessorAdapter{
+    public static final String KEY = "assetFingerprints";
+
+    private AssetFingerprints fingerprints;
+    /**
+     * The option the fingerprints built from, built again if the option changed
+     * on reconfiguration.
+     */
+    private Object fingerprintsConfig;
+
+    /**
+     * After other processors, before HTML minify.
+     */
+    @Override
+    public int getOrder() {
+        return DEFAULT_ORDER + 900;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void preRender(Site site) {
+        Object config = site.getConfig().get("asset_fingerprint");
+        if(config == null || Boolean.FALSE.equals(config)){
+            fingerprints = null;
+            site.set(KEY, null);
+            return;
+        }
+
+        if(fingerprints == null || !config.equals(fingerprintsConfig)){
+            List<String> extensions = null;
+            if(config instanceof Map){
+                extensions = (List<String>) ((Map<String, Object>) config).get("extensions");
+            }
+            fingerprints = new AssetFingerprints(site,
+                    extensions != null ? extensions : AssetFingerprints.DEFAULT_EXTENSIONS);
+            fingerprintsConfig = config;
+        }
+
+        fingerprints.build(site.getStaticFiles());
+        site.set(KEY, fingerprints);
+    }
+
+    @Override
+    public void postRender(Site site, Page page) {
+        if(fingerprints == null || !(page instanceof SimplePage)){
+            return;
+        }
+        SimplePage simplePage = (SimplePage) page;
+        if(!simplePage.isHtml()){
+            return;
+        }
+        String content = simplePage.getContent();
+        if(content != null){
+            simplePage.setContent(fingerprints.rewrite(content));
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.opoo.press.Site;
+import org.opoo.press.SourceEntry;
+import org.opoo.press.StaticFile;
+import org.opoo.util.DigestUtils;
+import org.opoo.util.MultiPatternMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content hash fingerprints of static files.
+ *
+ * <p>Each static file with a configured extension is published as
+ * <code>name.&lt;hash&gt;.ext</code>. The manifest maps the original path, e.g.
+ * <code>/stylesheets/screen.css</code>, to the fingerprinted path. References in
+ * CSS files are rewritten before their own hash is computed, so a CSS file gets a
+ * new name whenever an image it references changed. Stylesheets referencing
+ * other stylesheets are hashed after them.</p>
+ *
+ * <p>Site configuration:</p>
+ * <pre>
+ * asset_fingerprint: true
+ * </pre>
+ * or
+ * <pre>
+ * asset_fingerprint:
+ *   extensions: [css, js, png, jpg]
+ * </pre>
+ *
+ * @author Alex Lin
+ */
+public class AssetFingerprints {
+    private static final Logger log = LoggerFactory.getLogger(AssetFingerprints.class);
+
+    public static final List<String> DEFAULT_EXTENSIONS = Arrays.asList("css", "js", "png", "jpg", "jpeg",
+            "gif", "svg", "webp", "ico", "woff", "woff2", "ttf", "eot", "otf");
+
+    /** <code>url(...)</code>, or <code>@import "..."</code> without url(). */
+    private static final Pattern CSS_URL = Pattern.compile(
+            "url\\(\\s*(['\"]?)([^'\")]+?)\\1\\s*\\)|@import\\s+(['\"])([^'\"]+)\\3");
+    private static final Pattern SCHEME = Pattern.compile("[a-zA-Z][a-zA-Z0-9+.-]*:");
+    private static final int HASH_LENGTH = 10;
+    private static final String BOUNDARY_BEFORE = "\"'(=,; \t\r\n";
+    private static final String BOUNDARY_AFTER = "\"')?#,;> \t\r\n";
+
+    private final Site site;
+    private final String root;
+    private final String host;
+    private final Set<String> extensions = new HashSet<String>();
+    private final RecordStore<Digest> digests;
+    private final File manifestFile;
+
+    private Map<String,Asset> assets = new HashMap<String, Asset>();
+    private MultiPatternMatcher matcher;
+
+    public AssetFingerprints(Site site, List<String> extensions) {
+        this.site = site;
+        this.root = site.getRoot() == null ? "" : site.getRoot();
+        this.host = getHost(site.getConfig().<String>get("url"));
+        for(String ext: extensions){
+            this.extensions.add(ext.toLowerCase());
+        }
+        this.digests = new RecordStore<Digest>(new File(site.getWorking(), ".assetDigests"));
+        this.manifestFile = new File(site.getWorking(), "asset-manifest.json");
+    }
+
+    /**
+     * Builds the manifest from static files.
+     */
+    public void build(List<StaticFile> staticFiles){
+        Map<String,Asset> map = new HashMap<String, Asset>();
+        List<Asset> stylesheets = new ArrayList<Asset>();
+        List<String> keys = new ArrayList<String>();
+
+        for(StaticFile staticFile: staticFiles){
+            if(!(staticFile instanceof StaticFileImpl)){
+                continue;
+            }
+            SourceEntry sourceEntry = ((StaticFileImpl) staticFile).getSourceEntry();
+            String ext = FilenameUtils.getExtension(sourceEntry.getName()).toLowerCase();
+            if(!extensions.contains(ext)){
+                continue;
+            }
+
+            Asset asset = new Asset(sourceEntry);
+            map.put(asset.path, asset);
+            if("css".equals(ext)){
+                stylesheets.add(asset);
+            }else{
+                asset.setHash(getDigest(sourceEntry.getFile()));
+                keys.add(sourceEntry.getFile().getAbsolutePath());
+            }
+        }
+
+        this.assets = map;
+
+        //references of stylesheets to other assets, in a stable order for cycles
+        Collections.sort(stylesheets, new Comparator<Asset>() {
+            @Override
+            public int compare(Asset a, Asset b) {
+                return a.path.compareTo(b.path);
+            }
+        });
+        for(Asset asset: stylesheets){
+            hashStylesheet(asset, new HashSet<Asset>());
+        }
+
+        List<String> patterns = new ArrayList<String>();
+        for(String path: map.keySet()){
+            patterns.add(root + path);
+        }
+        this.matcher = new MultiPatternMatcher(patterns);
+
+        log.info("Fingerprinted {} assets.", map.size());
+        digests.retain(keys);
+        digests.save();
+        saveManifest();
+    }
+
+    /**
+     * @param path the original path, e.g. <code>/javascripts/app.js</code>
+     * @return the fingerprinted path, or the original path if not fingerprinted.
+     */
+    public String getPath(String path){
+        Asset asset = assets.get(path);
+        return asset == null ? path : asset.fingerprintedPath;
+    }
+
+    /**
+     * @return the fingerprinted output path of the source relative to destination,
+     * or null if not fingerprinted or the source changed since the manifest built.
+     */
+    String getOutputPath(SourceEntry sourceEntry){
+        Asset asset = getAsset(sourceEntry);
+        return asset == null ? null : asset.fingerprintedPath;
+    }
+
+    /**
+     * @return the rewritten content of stylesheet, or null if the source is not a
+     * fingerprinted stylesheet.
+     */
+    String getRewrittenContent(SourceEntry sourceEntry){
+        Asset asset = getAsset(sourceEntry);
+        return asset == null ? null : asset.content;
+    }
+
+    private Asset getAsset(SourceEntry sourceEntry){
+        Asset asset = assets.get(sourceEntry.getPath() + "/" + sourceEntry.getName());
+        if(asset == null || asset.sourceEntry.getLength() != sourceEntry.getLength()
+                || asset.sourceEntry.getLastModified() != sourceEntry.getLastModified()){
+            return null;
+        }
+        return asset;
+    }
+
+    /**
+     * Rewrites absolute references (with site root) to fingerprinted paths.
+     *
+     * @param content HTML content
+     * @return rewritten content
+     */
+    public String rewrite(final String content){
+        if(matcher == null || matcher.isEmpty() || content == null){
+            return content;
+        }
+        final StringBuilder sb = new StringBuilder(content.length());
+        final int[] last = {0};
+        matcher.find(content, new MultiPatternMatcher.MatchListener() {
+            @Override
+            public boolean onMatch(int start, int end, String pattern) {
+                if(!isReference(content, start, end)){
+                    return false;
+                }
+                Asset asset = assets.get(pattern.substring(root.length()));
+                sb.append(content, last[0], start).append(root).append(asset.fingerprintedPath);
+                last[0] = end;
+                return true;
+            }
+        });
+        if(last[0] == 0){
+            return content;
+        }
+        sb.append(content, last[0], content.length());
+        return sb.toString();
+    }
+
+    private static String getHost(String url){
+        if(url == null){
+            return null;
+        }
+        try {
+            return new URI(url).getRawAuthority();
+        } catch (URISyntaxException e) {
+            log.warn("Invalid site url '{}', absolute urls are not fingerprinted.", url);
+            return null;
+        }
+    }
+
+    private boolean isReference(String content, int start, int end){
+        if(end < content.length() && BOUNDARY_AFTER.indexOf(content.charAt(end)) == -1){
+            return false;
+        }
+        if(start == 0 || BOUNDARY_BEFORE.indexOf(content.charAt(start - 1)) != -1){
+            return true;
+        }
+        //absolute url of site only, e.g. http://host/path or //host/path
+        int i = start - 1;
+        while(i >= 0 && BOUNDARY_BEFORE.indexOf(content.charAt(i)) == -1){
+            i--;
+        }
+        return isSiteUrl(content.substring(i + 1, start));
+    }
+
+    /**
+     * @param prefix the scheme and host before path, e.g. <code>http://host</code>
+     */
+    private boolean isSiteUrl(String prefix){
+        int i = prefix.indexOf("//");
+        if(host == null || i == -1 || !prefix.substring(i + 2).equalsIgnoreCase(host)){
+            return false;
+        }
+        return i == 0 || SCHEME.matcher(prefix.substring(0, i)).matches();
+    }
+
+    /**
+     * Rewrites the references of stylesheet and computes its hash, after the
+     * referenced stylesheets (e.g. <code>@import url(base.css)</code>). In a
+     * cycle of references, the reference to the stylesheet being hashed is
+     * not rewritten.
+     */
+    private void hashStylesheet(Asset asset, Set<Asset> hashing){
+        if(asset.fingerprintedPath != null || !hashing.add(asset)){
+            return;
+        }
+        String css;
+        try {
+            css = FileUtils.readFileToString(asset.sourceEntry.getFile(), "UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException("Read stylesheet error: " + asset.sourceEntry.getFile(), e);
+        }
+
+        String dir = asset.path.substring(0, asset.path.lastIndexOf('/') + 1);
+        Matcher m = CSS_URL.matcher(css);
+        while(m.find()){
+            Asset referenced = resolveStylesheetUrl(m.group(urlGroup(m)).trim(), dir);
+            if(referenced != null && referenced.path.toLowerCase().endsWith(".css")){
+                hashStylesheet(referenced, hashing);
+            }
+        }
+
+        asset.content = rewriteStylesheet(css, asset.path);
+        asset.setHash(DigestUtils.md5Hex(asset.content));
+    }
+
+    private String rewriteStylesheet(String css, String cssPath){
+        String dir = cssPath.substring(0, cssPath.lastIndexOf('/') + 1);
+        Matcher m = CSS_URL.matcher(css);
+        StringBuilder sb = new StringBuilder(css.length());
+        int last = 0;
+        while(m.find()){
+            int group = urlGroup(m);
+            String url = m.group(group).trim();
+            sb.append(css, last, m.start(group)).append(rewriteStylesheetUrl(url, dir));
+            last = m.end(group);
+        }
+        sb.append(css, last, css.length());
+        return sb.toString();
+    }
+
+    /**
+     * @return the group of url matched by {@link #CSS_URL}
+     */
+    private static int urlGroup(Matcher m){
+        return m.group(2) != null ? 2 : 4;
+    }
+
+    private String rewriteStylesheetUrl(String url, String dir){
+        Asset asset = resolveStylesheetUrl(url, dir);
+        if(asset == null || asset.fingerprintedPath == null){
+            return url;
+        }
+        int i = indexOfAny(url, "?#");
+        String path = i == -1 ? url : url.substring(0, i);
+        String suffix = i == -1 ? "" : url.substring(i);
+        String name = asset.fingerprintedPath.substring(asset.fingerprintedPath.lastIndexOf('/') + 1);
+        String original = path.substring(0, path.lastIndexOf('/') + 1);
+        return original + name + suffix;
+    }
+
+    /**
+     * @param url the url in stylesheet
+     * @param dir the directory of stylesheet
+     * @return the asset referenced, or null if not an asset of site
+     */
+    private Asset resolveStylesheetUrl(String url, String dir){
+        if(url.startsWith("data:") || url.startsWith("#") || url.indexOf("//") != -1){
+            return null;
+        }
+        int i = indexOfAny(url, "?#");
+        String path = i == -1 ? url : url.substring(0, i);
+
+        String resolved;
+        if(path.startsWith("/")){
+            if(root.length() > 0){
+                if(!path.startsWith(root + "/")){
+                    return null;
+                }
+                path = path.substring(root.length());
+            }
+            resolved = FilenameUtils.normalize(path, true);
+        }else{
+            resolved = FilenameUtils.normalize(dir + path, true);
+        }
+        return resolved == null ? null : assets.get(resolved);
+    }
+
+    private static int indexOfAny(String s, String chars){
+        for(int i = 0 ; i < s.length() ; i++){
+            if(chars.indexOf(s.charAt(i)) != -1){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String getDigest(File file){
+        String key = file.getAbsolutePath();
+        Digest digest = digests.get(key);
+        if(digest != null && digest.length == file.length() && digest.lastModified == file.lastModified()){
+            return digest.value;
+        }
+        String value = DigestUtils.md5Hex(file);
+        digests.put(key, new Digest(file, value));
+        return value;
+    }
+
+    private void saveManifest(){
+        Map<String,String> manifest = new TreeMap<String, String>();
+        for(Asset asset: assets.values()){
+            manifest.put(asset.path, asset.fingerprintedPath);
+        }
+        try {
+            manifestFile.getParentFile().mkdirs();
+            new ObjectMapper().writeValue(manifestFile, manifest);
+        } catch (IOException e) {
+            throw new RuntimeException("Write asset manifest error: " + manifestFile, e);
+        }
+    }
+
+    private static class Asset{
+        private final SourceEntry sourceEntry;
+        private final String path;
+        private String fingerprintedPath;
+        private String content;
+
+        Asset(SourceEntry sourceEntry) {
+            this.sourceEntry = sourceEntry;
+            this.path = sourceEntry.getPath() + "/" + sourceEntry.getName();
+        }
+
+        void setHash(String hash){
+            String name = sourceEntry.getName();
+            int dot = name.lastIndexOf('.');
+            String fingerprint = hash.substring(0, HASH_LENGTH);
+            String fingerprintedName = name.substring(0, dot) + "." + fingerprint + name.substring(dot);
+            this.fingerprintedPath = sourceEntry.getPath() + "/" + fingerprintedName;
+        }
+    }
+
+    static class Digest implements Serializable{
+        private static final long serialVersionUID = 4785920310843362014L;
+
+        private final long length;
+        private final long lastModified;
+        private final String value;
+
+        Digest(File file, String value) {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.value = value;
+        }
+    }
+}
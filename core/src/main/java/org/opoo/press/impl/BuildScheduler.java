@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.file.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the incremental builds of {@link SiteObserver} on a dedicated thread.
+ *
+ * <p>The changes submitted while building are merged into one pending result,
+ * and the running build is cancelled at the next phase boundary, then the
+ * cancelled changes and the new changes are built together. So at most one
+ * build is waiting, and the site always converges on the latest files.</p>
+ *
+ * <p>The changes of a failed build are kept and built again with the next
+ * changes, e.g. after the error in template fixed, and so is the reloaded
+ * configuration which failed to apply.</p>
+ *
+ * <p>The reloaded configuration is applied to site by the builder thread
+ * before the next build, never in the middle of a build.</p>
+ *
+ * @author Alex Lin
+ */
+class BuildScheduler {
+    private static final Logger log = LoggerFactory.getLogger(BuildScheduler.class);
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+
+    private final SiteImpl site;
+    private final Callback callback;
+    private final Object lock = new Object();
+    private Result pending;
+    private ConfigDiff pendingConfig;
+    private Result failed;
+    private boolean building;
+    private boolean running;
+    private Thread thread;
+
+    BuildScheduler(SiteImpl site, Callback callback) {
+        this.site = site;
+        this.callback = callback;
+    }
+
+    void start(){
+        synchronized (lock){
+            running = true;
+        }
+        thread = new Thread("SiteBuilder"){
+            @Override
+            public void run() {
+                try {
+                    loop();
+                } catch (InterruptedException e) {
+                    log.debug("Site builder interrupted.");
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param result the changed files
+     */
+    void submit(Result result){
+        synchronized (lock){
+            pending = pending == null ? result : pending.merge(result);
+            if(building){
+                log.info("Files changed while building, cancelling the running build.");
+                site.cancelBuild();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @param diff the configuration changes, applied before next build
+     */
+    void submit(ConfigDiff diff){
+        synchronized (lock){
+            //an empty diff still overrides the pending one, e.g. option reverted
+            if(diff.isEmpty() && pendingConfig == null){
+                log.info("No option changed.");
+                return;
+            }
+            pendingConfig = pendingConfig == null ? diff : pendingConfig.merge(diff);
+            if(pending == null){
+                pending = Result.newResult();
+            }
+            if(building){
+                log.info("Configuration changed while building, cancelling the running build.");
+                site.cancelBuild();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void loop() throws InterruptedException {
+        while(true){
+            Result result;
+            ConfigDiff diff;
+            synchronized (lock){
+                while(running && pending == null){
+                    lock.wait();
+                }
+                if(!running){
+                    return;
+                }
+                result = failed != null ? failed.merge(pending) : pending;
+                diff = pendingConfig;
+                pending = null;
+                pendingConfig = null;
+                failed = null;
+                building = true;
+            }
+
+            boolean built = false;
+            try{
+                long start = System.currentTimeMillis();
+                if(diff != null){
+                    site.reconfigure(diff);
+                    diff = null;
+                }
+                site.build(result);
+                log.info("Build time: {}ms", System.currentTimeMillis() - start);
+                built = true;
+            }catch(SiteImpl.BuildCancelledException e){
+                log.info("Build cancelled, building again with the latest changes.");
+                synchronized (lock){
+                    pending = pending == null ? result : result.merge(pending);
+                }
+            }catch(RuntimeException e){
+                log.error("Build failed: " + e.getMessage(), e);
+                synchronized (lock){
+                    failed = result;
+                    if(diff != null){
+                        //not applied, merged with the later changes and applied again
+                        pendingConfig = pendingConfig == null ? diff : diff.merge(pendingConfig);
+                    }
+                }
+            }finally{
+                synchronized (lock){
+                    building = false;
+                }
+            }
+
+            if(built){
+                callback.built(result);
+            }
+        }
+    }
+
+    /**
+     * Stops the builder thread, cancels the running build.
+     */
+    void shutdown(){
+        synchronized (lock){
+            running = false;
+            pending = null;
+            pendingConfig = null;
+            if(building){
+                site.cancelBuild();
+            }
+            lock.notifyAll();
+        }
+        if(thread != null){
+            try {
+                thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    interface Callback{
+        /**
+         * Called on the builder thread after the site built.
+         * @param result the changed files built
+         */
+        void built(Result result);
+    }
+}
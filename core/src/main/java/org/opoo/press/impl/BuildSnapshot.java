@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Page;
+import org.opoo.press.Pager;
+import org.opoo.press.Source;
+import org.opoo.util.DigestUtils;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The page structure of a build, kept in memory for the next incremental
+ * build of {@link SiteImpl#build(org.opoo.press.file.Result)}. The parsed
+ * sources are kept by {@link SourcePool}.
+ *
+ * <p>The structure of a page is the signature of its front-matter, url, title,
+ * layout and pager. If the structures of all pages are the same as last build,
+ * only the content of changed sources changed, the pages listing other pages
+ * in site (e.g. recent posts, tag clouds) are not affected.</p>
+ *
+ * @author Alex Lin
+ */
+class BuildSnapshot {
+    //page key => structure signature
+    private final Map<String,String> structures = new TreeMap<String, String>();
+
+    /**
+     * Records the structures of the pages.
+     * @param pages all pages of site
+     * @param dest destination directory
+     */
+    void recordStructures(List<Page> pages, File dest){
+        structures.clear();
+        for(Page page: pages){
+            structures.put(getKey(page, dest), getStructure(page));
+        }
+    }
+
+    /**
+     * @param previous the previous snapshot
+     * @return true if pages added, removed, or the structure of any page changed
+     */
+    boolean isStructureChanged(BuildSnapshot previous){
+        return !structures.equals(previous.structures);
+    }
+
+    /**
+     * The output file path of page, or url if the page is not a {@link SimplePage}.
+     */
+    static String getKey(Page page, File dest){
+        if(page instanceof SimplePage){
+            return ((SimplePage) page).getOutputFile(dest).getPath();
+        }
+        return page.getUrl();
+    }
+
+    private static String getStructure(Page page){
+        StringBuilder sb = new StringBuilder();
+        sb.append(page.getClass().getName()).append('|')
+                .append(page.getUrl()).append('|')
+                .append(page.getTitle()).append('|')
+                .append(page.getLayout()).append('|');
+
+        Source source = page.getSource();
+        if(source != null && source.getMeta() != null){
+            sb.append(new TreeMap<String, Object>(source.getMeta()));
+        }
+
+        Pager pager = page.getPager();
+        if(pager != null){
+            sb.append('|').append(pager.getPageNumber()).append('/').append(pager.getTotalPages())
+                    .append('/').append(pager.getTotalItems());
+        }
+        return DigestUtils.md5Hex(sb.toString());
+    }
+}
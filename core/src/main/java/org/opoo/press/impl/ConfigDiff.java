@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The changed options between the current and the reloaded configuration of
+ * site and theme, and the scope of site to be set up again for the changes.
+ *
+ * @author Alex Lin
+ */
+class ConfigDiff {
+    /**
+     * What to set up again, ordered from the cheapest.
+     */
+    enum Scope{
+        /**
+         * Options read in each build, e.g. <code>permalink_*</code> and
+         * <code>paginate</code>: all pages are generated and rendered again.
+         */
+        BUILD,
+        /**
+         * Options of template engine, e.g. <code>freemarker.*</code>: the renderer
+         * is created again.
+         */
+        RENDERER,
+        /**
+         * Other options, may be read by plugins on creation: the factory,
+         * plugins and renderer are created again.
+         */
+        SETUP,
+        /**
+         * Directories, theme and output options: the site instance must be
+         * created again.
+         */
+        RESTART
+    }
+
+    private static final Set<String> RESTART_OPTIONS = new HashSet<String>(Arrays.asList(
+            "theme", "root", "source_dirs", "asset_dirs", "dest_dir", "work_dir", "threads",
+            "includes", "excludes", "cache", "static_files_publish", "memory_output",
+            "gzip_sidecars", "gzip_sidecars_extensions", "render_on_demand",
+            "render_on_demand_fill", "prioritized_rebuild"));
+
+    private static final Set<String> BUILD_OPTIONS = new HashSet<String>(Arrays.asList(
+            "paginate", "category_dir", "tag_dir", "excerpt_separator", "recent_posts",
+            "random_posts", "show_drafts", "url_encode", "url_decode", "collections",
+            "asset_fingerprint", "responsive_images", "html_minify", "pre_render", "debug"));
+
+    private static final Set<String> THEME_RESTART_OPTIONS = new HashSet<String>(Arrays.asList(
+            "source_dir", "asset_dir", "template_dir"));
+
+    private static final List<String> RENDERER_PREFIXES = Arrays.asList("freemarker.", "velocity.");
+
+    private final SiteConfigImpl config;
+    private final Map<String,Object> themeConfig;
+    private final Set<String> changedOptions = new TreeSet<String>();
+    private final Set<String> changedThemeOptions = new TreeSet<String>();
+    private Scope scope = Scope.BUILD;
+
+    /**
+     * @param oldConfig current site configuration
+     * @param config reloaded site configuration
+     * @param oldThemeConfig current theme configuration
+     * @param themeConfig reloaded theme configuration
+     */
+    ConfigDiff(SiteConfigImpl oldConfig, SiteConfigImpl config,
+               Map<String,Object> oldThemeConfig, Map<String,Object> themeConfig) {
+        this.config = config;
+        this.themeConfig = themeConfig;
+
+        for(String name: diff(oldConfig, config)){
+            changedOptions.add(name);
+            scope = max(scope, getScope(name));
+        }
+        for(String name: diff(oldThemeConfig, themeConfig)){
+            changedThemeOptions.add(name);
+            scope = max(scope, getThemeScope(name));
+        }
+    }
+
+    private static Set<String> diff(Map<String,Object> a, Map<String,Object> b){
+        Set<String> names = new HashSet<String>(a.keySet());
+        names.addAll(b.keySet());
+        Set<String> changed = new HashSet<String>();
+        for(String name: names){
+            if(!ObjectUtils.equals(a.get(name), b.get(name))){
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    static Scope getScope(String name){
+        if(RESTART_OPTIONS.contains(name)){
+            return Scope.RESTART;
+        }
+        if(BUILD_OPTIONS.contains(name) || name.startsWith("permalink_")){
+            return Scope.BUILD;
+        }
+        if(isRendererOption(name)){
+            return Scope.RENDERER;
+        }
+        return Scope.SETUP;
+    }
+
+    static Scope getThemeScope(String name){
+        if(THEME_RESTART_OPTIONS.contains(name)){
+            return Scope.RESTART;
+        }
+        if(isRendererOption(name)){
+            return Scope.RENDERER;
+        }
+        //e.g. renderer, plugin_dir, and the options used in templates
+        return Scope.SETUP;
+    }
+
+    private static boolean isRendererOption(String name){
+        for(String prefix: RENDERER_PREFIXES){
+            if(name.startsWith(prefix)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Scope max(Scope a, Scope b){
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /**
+     * Merges the later diff of the same site, the later configuration is used.
+     *
+     * @param later the later diff
+     * @return the merged diff
+     */
+    ConfigDiff merge(ConfigDiff later){
+        later.changedOptions.addAll(changedOptions);
+        later.changedThemeOptions.addAll(changedThemeOptions);
+        later.scope = max(scope, later.scope);
+        return later;
+    }
+
+    boolean isEmpty(){
+        return changedOptions.isEmpty() && changedThemeOptions.isEmpty();
+    }
+
+    /**
+     * @return true if any option of theme changed
+     */
+    boolean isThemeChanged(){
+        return !changedThemeOptions.isEmpty();
+    }
+
+    Scope getScope(){
+        return scope;
+    }
+
+    SiteConfigImpl getConfig() {
+        return config;
+    }
+
+    Map<String, Object> getThemeConfig() {
+        return themeConfig;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(scope).append(" changed options: ").append(changedOptions);
+        if(!changedThemeOptions.isEmpty()){
+            sb.append(", theme options: ").append(changedThemeOptions);
+        }
+        return sb.toString();
+    }
+}
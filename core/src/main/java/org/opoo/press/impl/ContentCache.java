@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.cache.Cache;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Page content cache with deterministic keys.
+ *
+ * <p>A key is built from the page url, the content stage and the digest of the
+ * stage input, so an entry written by one build is found again by the next build
+ * as long as its input is unchanged. Entries the current build did not use are
+ * removed by {@link #evictStale()}.</p>
+ *
+ * @author Alex Lin
+ */
+public class ContentCache {
+    private static final Logger log = LoggerFactory.getLogger(ContentCache.class);
+
+    private final Cache<String,String> cache;
+    private final String namespace;
+    private final Set<String> liveKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param cache the underlying cache
+     * @param namespace changes whenever the output of a stage may change for the
+     *                  same input, e.g. site or theme configuration changed.
+     */
+    public ContentCache(Cache<String,String> cache, String namespace) {
+        this.cache = cache;
+        this.namespace = namespace;
+    }
+
+    public String buildKey(String url, String stage, String input){
+        StringBuilder sb = new StringBuilder(namespace).append(':');
+        if(url != null){
+            sb.append(url);
+        }
+        return sb.append('#').append(stage).append('@').append(DigestUtils.md5Hex(input)).toString();
+    }
+
+    public String get(String key){
+        String value = cache.get(key);
+        if(value != null){
+            liveKeys.add(key);
+        }
+        return value;
+    }
+
+    public void put(String key, String value){
+        cache.put(key, value);
+        liveKeys.add(key);
+    }
+
+    /**
+     * Removes all entries which are not read or written since last eviction.
+     */
+    public void evictStale(){
+        Set<String> staleKeys = new HashSet<String>();
+        for(Cache.Entry<String,String> entry: cache){
+            if(!liveKeys.contains(entry.getKey())){
+                staleKeys.add(entry.getKey());
+            }
+        }
+        if(!staleKeys.isEmpty()){
+            cache.removeAll(staleKeys);
+        }
+        log.debug("Content cache: {} entries alive, {} stale entries evicted.", liveKeys.size(), staleKeys.size());
+        liveKeys.clear();
+    }
+}
@@ -134,7 +134,9 @@ public class FactoryImpl extends PluginManagerImpl implements Factory, PluginMan
         if(sourceEntryLoader == null){
             sourceEntryLoader = getInstance(SourceEntryLoader.class);
             if(sourceEntryLoader == null){
-                sourceEntryLoader = new SourceEntryLoaderImpl();
+                SourceEntryLoaderImpl loader = new SourceEntryLoaderImpl();
+                loader.setConfig(site.getConfig());
+                sourceEntryLoader = loader;
             }
         }
         return sourceEntryLoader;
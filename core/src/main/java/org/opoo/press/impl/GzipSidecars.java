@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.SiteConfig;
+import org.opoo.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a maximum compression <code>.gz</code> file next to each text output,
+ * for web servers which serve precompressed files, e.g. nginx <code>gzip_static</code>.
+ *
+ * <p>Enabled by <code>gzip_sidecars: true</code>, the file extensions can be
+ * changed by <code>gzip_sidecars_extensions</code>. A sidecar is compressed
+ * again only if the digest of the output changed.</p>
+ *
+ * @author Alex Lin
+ */
+public class GzipSidecars {
+    private static final Logger log = LoggerFactory.getLogger(GzipSidecars.class);
+
+    public static final String SUFFIX = ".gz";
+    public static final List<String> DEFAULT_EXTENSIONS = Arrays.asList("html", "htm", "css", "js", "xml", "json");
+
+    private final Set<String> extensions;
+    private final RecordStore<Record> records;
+
+    public GzipSidecars(SiteConfig config, File working) {
+        List<String> list = config.get("gzip_sidecars_extensions", DEFAULT_EXTENSIONS);
+        this.extensions = new HashSet<String>();
+        for(String ext: list){
+            extensions.add(ext.toLowerCase());
+        }
+        this.records = new RecordStore<Record>(new File(working, ".gzipSidecars"));
+    }
+
+    /**
+     * @param file output file
+     * @return true if the sidecar of the output file should be written
+     */
+    public boolean accept(File file){
+        return extensions.contains(FilenameUtils.getExtension(file.getName()).toLowerCase());
+    }
+
+    public static File getSidecarFile(File file){
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Writes the sidecar of the output file if the output changed.
+     *
+     * @param file output file
+     * @param content content of the output file, or null to read from file
+     */
+    public void write(File file, byte[] content){
+        if(!accept(file)){
+            return;
+        }
+
+        String key = file.getPath();
+        File sidecar = getSidecarFile(file);
+        Record record = records.get(key);
+        String digest = null;
+        if(record != null && sidecar.exists()){
+            if(record.length == file.length() && record.lastModified == file.lastModified()){
+                return;
+            }
+            digest = content != null ? DigestUtils.md5Hex(content) : DigestUtils.md5Hex(file);
+            if(digest.equals(record.digest)){
+                records.put(key, new Record(file, digest));
+                return;
+            }
+        }
+
+        if(digest == null){
+            digest = content != null ? DigestUtils.md5Hex(content) : DigestUtils.md5Hex(file);
+        }
+
+        log.debug("Compressing {}", file);
+        InputStream in = null;
+        OutputStream out = null;
+        try{
+            out = new MaxCompressionGZIPOutputStream(FileUtils.openOutputStream(sidecar));
+            if(content != null){
+                out.write(content);
+            }else{
+                in = new FileInputStream(file);
+                IOUtils.copy(in, out);
+            }
+        }catch(IOException e){
+            log.error("Write gzip file error: " + sidecar, e);
+            throw new RuntimeException(e);
+        }finally{
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+        sidecar.setLastModified(file.lastModified());
+
+        records.put(key, new Record(file, digest));
+    }
+
+    /**
+     * Removes the records of files which are not outputs of site any more.
+     *
+     * @param files output files of current build
+     */
+    public void retain(Collection<File> files){
+        List<String> keys = new ArrayList<String>();
+        for(File file: files){
+            keys.add(file.getPath());
+        }
+        records.retain(keys);
+    }
+
+    /**
+     * Saves the digests of compressed outputs if changed.
+     */
+    public void save(){
+        records.save();
+    }
+
+    private static class MaxCompressionGZIPOutputStream extends GZIPOutputStream{
+        MaxCompressionGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, 8192);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+
+    static class Record implements Serializable{
+        private static final long serialVersionUID = -6310562087723310247L;
+
+        private final long length;
+        private final long lastModified;
+        private final String digest;
+
+        Record(File file, String digest) {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.digest = digest;
+        }
+    }
+}
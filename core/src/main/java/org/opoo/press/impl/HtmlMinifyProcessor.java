@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Page;
+import org.opoo.press.ProcessorAdapter;
+import org.opoo.press.Site;
+import org.opoo.press.util.HtmlMinifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minifies the rendered HTML pages.
+ *
+ * <p>Site configuration:</p>
+ * <pre>
+ * html_minify: true
+ * </pre>
+ * or
+ * <pre>
+ * html_minify:
+ *   layouts: [post, page]        # only pages of these layouts, default all
+ *   exclude_layouts: [raw]
+ *   remove_comments: true
+ *   remove_optional_quotes: true
+ * </pre>
+ * A page can also be excluded by <code>html_minify: false</code> in its front-matter.
+ *
+ * <p>Pages are minified in the rendering tasks, in parallel if the site is built
+ * in multiple threads.</p>
+ *
+ * @author Alex Lin
+ */
+public class HtmlMinifyProcessor extends ProcessorAdapter{
+    private static final Logger log = LoggerFactory.getLogger(HtmlMinifyProcessor.class);
+
+    private HtmlMinifier minifier;
+    private List<String> layouts;
+    private List<String> excludeLayouts;
+
+    /**
+     * After all other processors.
+     */
+    @Override
+    public int getOrder() {
+        return DEFAULT_ORDER + 1000;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void preRender(Site site) {
+        minifier = null;
+        Object config = site.getConfig().get("html_minify");
+        if(config == null || Boolean.FALSE.equals(config)){
+            return;
+        }
+
+        if(config instanceof Map){
+            Map<String,Object> map = (Map<String, Object>) config;
+            layouts = (List<String>) map.get("layouts");
+            excludeLayouts = (List<String>) map.get("exclude_layouts");
+            minifier = new HtmlMinifier(!Boolean.FALSE.equals(map.get("remove_comments")),
+                    !Boolean.FALSE.equals(map.get("remove_optional_quotes")));
+        }else{
+            layouts = null;
+            excludeLayouts = null;
+            minifier = new HtmlMinifier();
+        }
+        log.debug("HTML minify enabled, layouts: {}, exclude layouts: {}", layouts, excludeLayouts);
+    }
+
+    @Override
+    public void postRender(Site site, Page page) {
+        if(minifier == null || !(page instanceof SimplePage)){
+            return;
+        }
+        SimplePage simplePage = (SimplePage) page;
+        if(!isMinifyRequired(simplePage)){
+            return;
+        }
+
+        String content = simplePage.getContent();
+        if(content != null){
+            simplePage.setContent(minifier.minify(content));
+        }
+    }
+
+    private boolean isMinifyRequired(SimplePage page){
+        if(page.isRenderSkip() || Boolean.FALSE.equals(page.get("html_minify"))){
+            return false;
+        }
+        String layout = page.getLayout();
+        if(layouts != null && !layouts.contains(layout)){
+            return false;
+        }
+        if(excludeLayouts != null && excludeLayouts.contains(layout)){
+            return false;
+        }
+        return page.isHtml();
+    }
+}
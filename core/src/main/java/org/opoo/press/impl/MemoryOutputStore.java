@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the site output in memory instead of destination directory, for preview.
+ *
+ * <p>Enabled by configuration <code>memory_output: true</code>. The rendered
+ * pages are kept as byte arrays with ETag computed on writing, the static files
+ * are not copied, the entries refer to the source files. Entries are keyed by the
+ * path of output file relative to destination directory, e.g.
+ * <code>/article/2015/01/hello.html</code>.</p>
+ *
+ * @author Alex Lin
+ */
+public class MemoryOutputStore {
+    private static final Logger log = LoggerFactory.getLogger(MemoryOutputStore.class);
+    public static final String KEY = "memoryOutputStore";
+    private static final int MAX_RECENT_REQUESTS = 20;
+
+    private final String destPath;
+    private final ConcurrentMap<String,Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private volatile Loader loader;
+    //path => time, least recently requested first
+    private final Map<String,Long> requests = new LinkedHashMap<String, Long>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_RECENT_REQUESTS;
+        }
+    };
+
+    public MemoryOutputStore(File dest) {
+        this.destPath = dest.getAbsolutePath();
+    }
+
+    /**
+     * @param target the output file
+     * @param content the content
+     */
+    public void put(File target, byte[] content){
+        String path = getPath(target);
+        String etag = "\"" + DigestUtils.md5Hex(content) + "\"";
+        Entry previous = entries.get(path);
+        if(previous != null && etag.equals(previous.etag)){
+            return;
+        }
+        log.trace("Put output in memory: {}", path);
+        entries.put(path, new Entry(content, null, etag, System.currentTimeMillis()));
+    }
+
+    /**
+     * @param target the output file
+     * @param file the file which content is the output, e.g. the source of static file
+     */
+    public void putFile(File target, File file){
+        entries.put(getPath(target), new Entry(null, file, null, 0));
+    }
+
+    public void remove(File target){
+        entries.remove(getPath(target));
+    }
+
+    /**
+     * Removes the entries of which output files are not in the collection.
+     *
+     * @param targets output files
+     */
+    public void retain(Collection<File> targets){
+        Set<String> paths = new HashSet<String>();
+        for(File target: targets){
+            paths.add(getPath(target));
+        }
+        if(entries.keySet().retainAll(paths)){
+            log.debug("Obsolete outputs removed from memory.");
+        }
+    }
+
+    /**
+     * @param path the path relative to destination directory, starts with '/'
+     * @return the entry, or null if not found
+     */
+    public Entry get(String path){
+        Entry entry = entries.get(path);
+        Loader loader = this.loader;
+        if(entry == null && loader != null && loader.load(path)){
+            entry = entries.get(path);
+        }
+        return entry;
+    }
+
+    /**
+     * @param loader the loader to create the missing outputs on demand, or null
+     */
+    public void setLoader(Loader loader){
+        this.loader = loader;
+    }
+
+    /**
+     * Records the path requested by browser, the recently requested pages are
+     * rendered first in rebuild.
+     *
+     * @param path the path relative to destination directory, starts with '/'
+     */
+    public void requested(String path){
+        synchronized (requests){
+            requests.put(path, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param maxAgeMillis max age of requests
+     * @return the recently requested paths, most recent first
+     */
+    List<String> getRecentRequests(long maxAgeMillis){
+        long since = System.currentTimeMillis() - maxAgeMillis;
+        List<String> paths = new ArrayList<String>();
+        synchronized (requests){
+            for(Map.Entry<String,Long> entry: requests.entrySet()){
+                if(entry.getValue() >= since){
+                    paths.add(entry.getKey());
+                }
+            }
+        }
+        Collections.reverse(paths);
+        return paths;
+    }
+
+    public boolean isEmpty(){
+        return entries.isEmpty();
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    String getPath(File target){
+        String path = target.getAbsolutePath();
+        if(!path.startsWith(destPath + File.separator)){
+            throw new IllegalArgumentException("Output file not in destination directory: " + target);
+        }
+        return path.substring(destPath.length()).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Creates the output of a path which is not in store, e.g. renders the page
+     * on first request.
+     */
+    public interface Loader{
+        /**
+         * @param path the path relative to destination directory, starts with '/'
+         * @return true if the output of path is put into store
+         */
+        boolean load(String path);
+    }
+
+    public static class Entry{
+        private final byte[] content;
+        private final File file;
+        private final String etag;
+        private final long lastModified;
+
+        Entry(byte[] content, File file, String etag, long lastModified) {
+            this.content = content;
+            this.file = file;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the content, or null if the content is in {@link #getFile()}
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * @return the file, or null if the content is in memory
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the ETag, of a file the ETag is computed by current size and
+         * modified time of the file
+         */
+        public String getETag() {
+            if(etag != null){
+                return etag;
+            }
+            return "\"" + Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length()) + "\"";
+        }
+
+        public long getLastModified() {
+            return file != null ? file.lastModified() : lastModified;
+        }
+
+        public long getLength(){
+            return content != null ? content.length : file.length();
+        }
+    }
+}
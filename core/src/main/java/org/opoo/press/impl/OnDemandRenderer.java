@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Page;
+import org.opoo.press.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders the pages of site on first request in preview, instead of rendering
+ * all pages in build.
+ *
+ * <p>Enabled by configuration <code>render_on_demand: true</code> with
+ * <code>memory_output: true</code>. The build reads the sources, generates pages
+ * and indexes them by output path; the page is converted, rendered and put into
+ * {@link MemoryOutputStore} when the store misses its path. The output is kept
+ * until the page is affected by changed files in a later build. With
+ * <code>render_on_demand_fill: true</code>, a low priority thread renders the
+ * pending pages in background after each build.</p>
+ *
+ * <p>Also schedules the rebuild of preview with <code>prioritized_rebuild: true</code>:
+ * the full build renders all pages as usual, an incremental build renders the
+ * recently requested pages and the pages of changed files first, before the
+ * browsers are notified, the rest of affected pages are rendered in background
+ * or on request.</p>
+ *
+ * <p>All operations lock the site, so a page is never rendered while site
+ * is building.</p>
+ *
+ * @author Alex Lin
+ */
+class OnDemandRenderer implements MemoryOutputStore.Loader {
+    private static final Logger log = LoggerFactory.getLogger(OnDemandRenderer.class);
+    private static final long RECENT_REQUEST_MILLIS = 10 * 60 * 1000L;
+
+    private final SiteImpl site;
+    private final MemoryOutputStore store;
+    private final boolean fill;
+
+    //output path => page of current build
+    private Map<String,SimplePage> pages = Collections.emptyMap();
+    //output paths of the pages not rendered since last change
+    private final Set<String> pending = new LinkedHashSet<String>();
+    private final Set<Page> converted = Collections.newSetFromMap(new IdentityHashMap<Page, Boolean>());
+    private Map<String,Object> rootMap;
+    private volatile int generation;
+
+    OnDemandRenderer(SiteImpl site, MemoryOutputStore store, boolean fill) {
+        this.site = site;
+        this.store = store;
+        this.fill = fill;
+    }
+
+    /**
+     * Indexes the pages of a build which rendered all pages.
+     *
+     * @param allPages all pages of site
+     */
+    void rendered(List<Page> allPages){
+        synchronized (site) {
+            pages = index(allPages);
+            pending.clear();
+            converted.clear();
+            rootMap = null;
+            generation++;
+        }
+    }
+
+    /**
+     * Indexes the pages of a new build, called by site after build, then renders
+     * the priority pages.
+     *
+     * @param allPages all pages of site
+     * @param changed the pages affected by the changed files, or null if all pages changed
+     * @param changedFiles the changed files
+     * @param rootMap the root map for rendering, prepared by site before writing static files
+     */
+    void reset(List<Page> allPages, Collection<Page> changed, Collection<File> changedFiles,
+               Map<String,Object> rootMap){
+        boolean remaining;
+        synchronized (site) {
+            File dest = site.getDestination();
+            Map<String, SimplePage> map = index(allPages);
+
+            if (changed == null) {
+                pending.clear();
+                pending.addAll(map.keySet());
+            } else {
+                pending.retainAll(map.keySet());
+                for (Page page : changed) {
+                    if (page instanceof SimplePage) {
+                        pending.add(store.getPath(((SimplePage) page).getOutputFile(dest)));
+                    }
+                }
+                for (String path : map.keySet()) {
+                    if (!pages.containsKey(path)) {
+                        pending.add(path);
+                    }
+                }
+            }
+
+            //drop the outdated outputs, they are rendered again on next request
+            for (String path : pending) {
+                store.remove(map.get(path).getOutputFile(dest));
+            }
+
+            pages = map;
+            converted.clear();
+            this.rootMap = rootMap;
+            generation++;
+            log.info("{} of {} pages will be rendered on demand.", pending.size(), map.size());
+
+            List<String> priority = getPriorityPaths(changedFiles);
+            for (String path : priority) {
+                load(path);
+            }
+            if (!priority.isEmpty()) {
+                log.info("Rendered {} priority page(s) first.", priority.size());
+            }
+            remaining = !pending.isEmpty();
+        }
+
+        if(fill && remaining){
+            startFilling();
+        }
+    }
+
+    private Map<String,SimplePage> index(List<Page> allPages){
+        File dest = site.getDestination();
+        Map<String, SimplePage> map = new LinkedHashMap<String, SimplePage>();
+        for (Page page : allPages) {
+            if (page instanceof SimplePage) {
+                SimplePage simplePage = (SimplePage) page;
+                map.put(store.getPath(simplePage.getOutputFile(dest)), simplePage);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * The pending pages recently requested by browsers, most recent first, then
+     * the pending pages of changed files.
+     */
+    private List<String> getPriorityPaths(Collection<File> changedFiles){
+        Set<String> paths = new LinkedHashSet<String>();
+        for(String path: store.getRecentRequests(RECENT_REQUEST_MILLIS)){
+            if(pending.contains(path)){
+                paths.add(path);
+            }
+        }
+
+        Set<File> files = new HashSet<File>();
+        for(File file: changedFiles){
+            files.add(file.getAbsoluteFile());
+        }
+        for(String path: pending){
+            SimplePage page = pages.get(path);
+            Source source = page.getSource();
+            if(source != null && source.getSourceEntry() != null
+                    && files.contains(source.getSourceEntry().getFile().getAbsoluteFile())){
+                paths.add(path);
+            }
+        }
+        return new ArrayList<String>(paths);
+    }
+
+    @Override
+    public boolean load(String path) {
+        synchronized (site) {
+            if (!pending.contains(path)) {
+                return false;
+            }
+            SimplePage page = pages.get(path);
+            //not rendered again if failed, until changed
+            pending.remove(path);
+            log.debug("Rendering page on demand: {}", page.getUrl());
+            render(page);
+            return true;
+        }
+    }
+
+    private void render(SimplePage page){
+        //templates may read the content of any page, e.g. site.posts in index,
+        //related posts or feeds, so all pages are converted before the first
+        //render of a build, each page once
+        for(Page input: pages.values()){
+            if(converted.add(input)){
+                site.convertPage(input);
+            }
+        }
+
+        site.renderPage(page, rootMap);
+        page.write(site.getDestination());
+    }
+
+    private void startFilling(){
+        final int current = generation;
+        Thread thread = new Thread("OnDemandRenderer-" + current){
+            @Override
+            public void run() {
+                List<String> paths;
+                synchronized (site){
+                    paths = new ArrayList<String>(pending);
+                }
+                int count = 0;
+                for(String path: paths){
+                    //stop if site rebuilt, the new build starts another thread
+                    if(generation != current){
+                        return;
+                    }
+                    try {
+                        if(load(path)){
+                            count++;
+                        }
+                    }catch (RuntimeException e){
+                        log.warn("Render page failed: " + path, e);
+                    }
+                    Thread.yield();
+                }
+                log.info("{} pages rendered in background.", count);
+            }
+        };
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+}
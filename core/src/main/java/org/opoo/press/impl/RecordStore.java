@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records of the files processed in previous builds, e.g. the published
+ * static files, persisted in the working directory. The records can be read
+ * and put by multiple threads.
+ *
+ * @author Alex Lin
+ */
+class RecordStore<R extends Serializable> {
+    private static final Logger log = LoggerFactory.getLogger(RecordStore.class);
+
+    private final File file;
+    private final Map<String,R> records = new ConcurrentHashMap<String, R>();
+    private volatile boolean changed = false;
+
+    /**
+     * @param file the file of records, loaded if exists
+     */
+    RecordStore(File file) {
+        this.file = file;
+        load();
+    }
+
+    R get(String key){
+        return records.get(key);
+    }
+
+    void put(String key, R record){
+        records.put(key, record);
+        changed = true;
+    }
+
+    /**
+     * Removes the records of which keys were not seen in the current build,
+     * e.g. the sources deleted.
+     *
+     * @param keys the keys of current build
+     */
+    void retain(Collection<String> keys){
+        if(records.keySet().retainAll(new HashSet<String>(keys))){
+            log.debug("Obsolete records removed from {}", file.getName());
+            changed = true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load(){
+        if(!file.exists()){
+            return;
+        }
+        ObjectInputStream ois = null;
+        try{
+            ois = new ObjectInputStream(new FileInputStream(file));
+            records.putAll((Map<String,R>) ois.readObject());
+        }catch (Exception e){
+            log.warn("Records not loaded from {}, all files will be checked: {}", file.getName(), e.getMessage());
+        }finally{
+            IOUtils.closeQuietly(ois);
+        }
+    }
+
+    /**
+     * Saves the records if changed.
+     */
+    void save(){
+        if(!changed){
+            return;
+        }
+        changed = false;
+
+        file.getParentFile().mkdirs();
+        ObjectOutputStream oos = null;
+        try {
+            oos = new ObjectOutputStream(new FileOutputStream(file));
+            oos.writeObject(new HashMap<String,R>(records));
+            oos.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }finally{
+            IOUtils.closeQuietly(oos);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Page;
+import org.opoo.press.ProcessorAdapter;
+import org.opoo.press.Site;
+import org.opoo.press.StaticFile;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the responsive image derivatives before rendering and adds them to
+ * the <code>&lt;img&gt;</code> tags of rendered HTML pages.
+ *
+ * @author Alex Lin
+ * @see ResponsiveImages
+ */
+public class ResponsiveImageProcessor extends ProcessorAdapter{
+    private ResponsiveImages responsiveImages;
+    /**
+     * The option the images built from, built again if the option changed on
+     * reconfiguration.
+     */
+    private Object responsiveImagesConfig;
+
+    /**
+     * Before asset fingerprint, derivatives are not fingerprinted.
+     */
+    @Override
+    public int getOrder() {
+        return DEFAULT_ORDER + 800;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void preRender(Site site) {
+        Object config = site.getConfig().get("responsive_images");
+        if(config == null || Boolean.FALSE.equals(config)){
+            responsiveImages = null;
+            return;
+        }
+
+        if(responsiveImages == null || !config.equals(responsiveImagesConfig)){
+            Map<String,Object> map = config instanceof Map ? (Map<String, Object>) config
+                    : Collections.<String,Object>emptyMap();
+            responsiveImages = new ResponsiveImages(site, map);
+            responsiveImagesConfig = config;
+        }
+
+        List<StaticFile> staticFiles = site.getStaticFiles();
+        List<StaticFile> derivatives = responsiveImages.build(staticFiles);
+        staticFiles.addAll(derivatives);
+    }
+
+    @Override
+    public void postRender(Site site, Page page) {
+        if(responsiveImages == null || !(page instanceof SimplePage)){
+            return;
+        }
+        SimplePage simplePage = (SimplePage) page;
+        if(!simplePage.isHtml()){
+            return;
+        }
+        String content = simplePage.getContent();
+        if(content != null){
+            simplePage.setContent(responsiveImages.rewrite(content, page.getUrl()));
+        }
+    }
+}
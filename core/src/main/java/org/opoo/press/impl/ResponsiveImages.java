@@ -0,0 +1,595 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FilenameUtils;
+import org.opoo.press.Site;
+import org.opoo.press.SourceEntry;
+import org.opoo.press.StaticFile;
+import org.opoo.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resized derivatives of the images in asset directories, and the
+ * <code>srcset</code>, <code>sizes</code>, <code>width</code> and <code>height</code>
+ * attributes of the <code>&lt;img&gt;</code> tags which reference them.
+ *
+ * <p>A derivative of image <code>/images/photo.jpg</code> at width 480 is published
+ * as <code>/images/photo-480w.jpg</code>. Derivatives are generated into the working
+ * directory, named by the digest of the source image and the quality, so they are
+ * generated again only if the source image or the quality changed.</p>
+ *
+ * <p>If the derivatives are in other format than the source image, e.g. WebP, the
+ * <code>&lt;img&gt;</code> tag is wrapped in a <code>&lt;picture&gt;</code> with
+ * a <code>&lt;source&gt;</code> of derivatives, which includes a derivative in
+ * the width of source image, browsers without the format load the source image.</p>
+ *
+ * <p>Site configuration:</p>
+ * <pre>
+ * responsive_images:
+ *   widths: [480, 960, 1440]
+ *   sizes: "(max-width: 960px) 100vw, 960px"
+ *   format: webp           # optional, requires an ImageIO WebP writer
+ *   quality: 0.85
+ *   threads: 2             # images decoded at the same time
+ * </pre>
+ *
+ * @author Alex Lin
+ */
+public class ResponsiveImages {
+    private static final Logger log = LoggerFactory.getLogger(ResponsiveImages.class);
+
+    public static final List<Integer> DEFAULT_WIDTHS = Arrays.asList(480, 960, 1440);
+    public static final List<String> EXTENSIONS = Arrays.asList("jpg", "jpeg", "png");
+
+    private static final Pattern IMG_TAG = Pattern.compile("<img\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile("\\s([a-zA-Z_:][-a-zA-Z0-9_:.]*)(?:\\s*=\\s*(\"[^\"]*\"|'[^']*'|[^\\s\"'>]+))?");
+
+    private final Site site;
+    private final String root;
+    private final List<Integer> widths;
+    private final String sizes;
+    private final String format;
+    private final float quality;
+    private final int threads;
+    private final File cacheDir;
+    private final RecordStore<Record> records;
+
+    private Map<String,Image> images = new HashMap<String, Image>();
+
+    @SuppressWarnings("unchecked")
+    public ResponsiveImages(Site site, Map<String,Object> config) {
+        this.site = site;
+        this.root = site.getRoot() == null ? "" : site.getRoot();
+
+        List<Integer> list = (List<Integer>) config.get("widths");
+        this.widths = new ArrayList<Integer>(list != null ? list : DEFAULT_WIDTHS);
+        Collections.sort(widths);
+        this.sizes = (String) config.get("sizes");
+        this.quality = config.containsKey("quality") ? ((Number) config.get("quality")).floatValue() : 0.85f;
+        int n = config.containsKey("threads") ? ((Number) config.get("threads")).intValue()
+                : Math.min(2, Runtime.getRuntime().availableProcessors());
+        this.threads = Math.max(1, n);
+
+        String f = (String) config.get("format");
+        if("jpg".equalsIgnoreCase(f)){
+            f = "jpeg";
+        }
+        if(f != null && !ImageIO.getImageWritersByFormatName(f).hasNext()){
+            log.warn("No ImageIO writer for image format '{}', derivatives keep the format of source.", f);
+            f = null;
+        }
+        this.format = f;
+
+        this.cacheDir = new File(site.getWorking(), "image-derivatives");
+        this.records = new RecordStore<Record>(new File(site.getWorking(), ".imageDerivatives"));
+    }
+
+    /**
+     * Generates missing derivatives of the images in asset directories.
+     *
+     * @param staticFiles static files of site
+     * @return static files of derivatives
+     */
+    public List<StaticFile> build(List<StaticFile> staticFiles){
+        List<SourceEntry> sourceEntries = new ArrayList<SourceEntry>();
+        List<File> assets = site.getAssets();
+        for(StaticFile staticFile: staticFiles){
+            if(!(staticFile instanceof StaticFileImpl)){
+                continue;
+            }
+            SourceEntry sourceEntry = ((StaticFileImpl) staticFile).getSourceEntry();
+            String ext = FilenameUtils.getExtension(sourceEntry.getName()).toLowerCase();
+            if(EXTENSIONS.contains(ext) && assets.contains(sourceEntry.getSourceDirectory())){
+                sourceEntries.add(sourceEntry);
+            }
+        }
+
+        List<String> keys = new ArrayList<String>();
+        for(SourceEntry sourceEntry: sourceEntries){
+            keys.add(sourceEntry.getFile().getAbsolutePath());
+        }
+        records.retain(keys);
+
+        final Map<String,Image> map = new ConcurrentHashMap<String, Image>();
+        List<StaticFile> derivatives = Collections.synchronizedList(new ArrayList<StaticFile>());
+        if(sourceEntries.isEmpty()){
+            this.images = map;
+            records.save();
+            return derivatives;
+        }
+
+        //bounded, each thread holds one decoded image
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try{
+            List<Future<Image>> futures = new ArrayList<Future<Image>>();
+            for(final SourceEntry sourceEntry: sourceEntries){
+                futures.add(executorService.submit(new Callable<Image>() {
+                    @Override
+                    public Image call() throws Exception {
+                        return process(sourceEntry);
+                    }
+                }));
+            }
+            for(Future<Image> future: futures){
+                Image image = future.get();
+                if(image != null){
+                    map.put(image.path, image);
+                    derivatives.addAll(image.derivatives);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+
+        this.images = map;
+        log.info("Responsive images: {}, derivatives: {}", map.size(), derivatives.size());
+        records.save();
+        return derivatives;
+    }
+
+    private Image process(SourceEntry sourceEntry) throws IOException{
+        File file = sourceEntry.getFile();
+        String key = file.getAbsolutePath();
+        Record record = records.get(key);
+        if(record == null || record.length != sourceEntry.getLength() || record.lastModified != sourceEntry.getLastModified()){
+            int[] size = readSize(file);
+            if(size == null){
+                log.warn("Unsupported image: {}", file);
+                return null;
+            }
+            record = new Record(sourceEntry, DigestUtils.md5Hex(file), size[0], size[1]);
+            records.put(key, record);
+        }
+
+        String ext = FilenameUtils.getExtension(sourceEntry.getName()).toLowerCase();
+        String sourceFormat = "png".equals(ext) ? "png" : "jpeg";
+        String outputFormat = format != null ? format : sourceFormat;
+        String outputExt = "jpeg".equals(outputFormat) ? ("jpeg".equals(ext) ? "jpeg" : "jpg") : outputFormat;
+        String baseName = FilenameUtils.getBaseName(sourceEntry.getName());
+
+        //browsers choose the source image if not in the same format
+        boolean converted = !outputFormat.equals(sourceFormat);
+        List<Integer> derivativeWidths = new ArrayList<Integer>();
+        for(Integer width: widths){
+            if(width < record.width){
+                derivativeWidths.add(width);
+            }
+        }
+        if(converted){
+            derivativeWidths.add(record.width);
+        }
+
+        Image image = new Image(sourceEntry.getPath() + "/" + sourceEntry.getName(), record.width, record.height,
+                converted ? "image/" + outputFormat : null);
+        List<Integer> missing = new ArrayList<Integer>();
+        for(Integer width: derivativeWidths){
+            File cacheFile = getCacheFile(record, width, outputFormat, outputExt);
+            if(!cacheFile.exists()){
+                missing.add(width);
+            }
+            String path = sourceEntry.getPath() + "/" + baseName + "-" + width + "w." + outputExt;
+            image.derivatives.add(new Derivative(path, width, cacheFile,
+                    site.<MemoryOutputStore>get(MemoryOutputStore.KEY)));
+        }
+
+        if(!missing.isEmpty()){
+            generate(file, record, missing, outputFormat, outputExt);
+        }
+        return image;
+    }
+
+    /**
+     * @return the cached derivative, named by the source digest, width and
+     * the quality of lossy formats
+     */
+    private File getCacheFile(Record record, int width, String outputFormat, String outputExt){
+        String encoding = "png".equals(outputFormat) ? "" : "-q" + Math.round(quality * 100);
+        return new File(cacheDir, record.digest + "-" + width + encoding + "." + outputExt);
+    }
+
+    private void generate(File file, Record record, List<Integer> missing, String outputFormat, String outputExt)
+            throws IOException{
+        log.debug("Generating derivatives {} of image {}", missing, file);
+        int maxWidth = Collections.max(missing);
+        //decode fewer pixels of large images
+        int subsampling = Math.max(1, record.width / (maxWidth * 2));
+        BufferedImage source = read(file, subsampling);
+        if(source == null){
+            log.warn("Unsupported image: {}", file);
+            return;
+        }
+
+        //JPEG has no alpha channel
+        boolean alpha = source.getColorModel().hasAlpha() && !"jpeg".equals(outputFormat);
+        cacheDir.mkdirs();
+        for(Integer width: missing){
+            int height = Math.max(1, Math.round((float) record.height * width / record.width));
+            BufferedImage scaled = scale(source, width, height, alpha);
+            File cacheFile = getCacheFile(record, width, outputFormat, outputExt);
+            File tmp = new File(cacheDir, cacheFile.getName() + ".tmp");
+            write(scaled, outputFormat, tmp);
+            if(!tmp.renameTo(cacheFile)){
+                tmp.delete();
+                throw new IOException("Cannot rename " + tmp + " to " + cacheFile);
+            }
+        }
+    }
+
+    private static int[] readSize(File file) throws IOException{
+        ImageInputStream iis = ImageIO.createImageInputStream(file);
+        if(iis == null){
+            return null;
+        }
+        try{
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if(!readers.hasNext()){
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try{
+                reader.setInput(iis, true, true);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            }finally{
+                reader.dispose();
+            }
+        }finally{
+            iis.close();
+        }
+    }
+
+    private static BufferedImage read(File file, int subsampling) throws IOException{
+        ImageInputStream iis = ImageIO.createImageInputStream(file);
+        if(iis == null){
+            return null;
+        }
+        try{
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if(!readers.hasNext()){
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try{
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if(subsampling > 1){
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            }finally{
+                reader.dispose();
+            }
+        }finally{
+            iis.close();
+        }
+    }
+
+    /**
+     * Scales down by halves, then to the target size, bilinear.
+     */
+    private static BufferedImage scale(BufferedImage image, int width, int height, boolean alpha){
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        do{
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try{
+                if(!alpha){
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, w, h);
+                }
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            }finally{
+                g.dispose();
+            }
+            current = next;
+        }while(w != width || h != height);
+        return current;
+    }
+
+    private void write(BufferedImage image, String outputFormat, File file) throws IOException{
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(outputFormat).next();
+        ImageOutputStream ios = null;
+        try{
+            ios = ImageIO.createImageOutputStream(file);
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if(param.canWriteCompressed() && !"png".equals(outputFormat)){
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if(param.getCompressionType() == null && param.getCompressionTypes() != null){
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        }finally{
+            writer.dispose();
+            if(ios != null){
+                ios.close();
+            }
+        }
+    }
+
+    /**
+     * Adds <code>srcset</code>, <code>sizes</code>, <code>width</code> and
+     * <code>height</code> to the <code>&lt;img&gt;</code> tags of images which
+     * have derivatives, the tags are wrapped in <code>&lt;picture&gt;</code> if
+     * the derivatives are in other format.
+     *
+     * @param content HTML content
+     * @param pageUrl url of page, without site root, relative references are resolved by it
+     * @return rewritten content
+     */
+    public String rewrite(String content, String pageUrl){
+        if(images.isEmpty() || content == null || content.indexOf("<img") == -1 && content.indexOf("<IMG") == -1){
+            return content;
+        }
+        Matcher m = IMG_TAG.matcher(content);
+        StringBuffer sb = null;
+        while(m.find()){
+            String tag = m.group();
+            String rewritten = rewriteTag(tag, pageUrl, content, m.start());
+            if(rewritten != null){
+                if(sb == null){
+                    sb = new StringBuffer(content.length() + 256);
+                }
+                m.appendReplacement(sb, Matcher.quoteReplacement(rewritten));
+            }
+        }
+        if(sb == null){
+            return content;
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static boolean isInPicture(String content, int index){
+        for(int i = content.lastIndexOf('<', index - 1) ; i != -1 ; i = content.lastIndexOf('<', i - 1)){
+            if(content.regionMatches(true, i, "</picture", 0, 9)){
+                return false;
+            }
+            if(content.regionMatches(true, i, "<picture", 0, 8)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String rewriteTag(String tag, String pageUrl, String content, int start){
+        Map<String,String> attributes = new HashMap<String, String>();
+        Matcher m = ATTRIBUTE.matcher(tag);
+        while(m.find()){
+            String value = m.group(2);
+            if(value != null && (value.startsWith("\"") || value.startsWith("'"))){
+                value = value.substring(1, value.length() - 1);
+            }
+            attributes.put(m.group(1).toLowerCase(), value);
+        }
+        String src = attributes.get("src");
+        if(src == null || attributes.containsKey("srcset")){
+            return null;
+        }
+        Image image = images.get(resolve(src, pageUrl));
+        //the sources of picture by author
+        if(image == null || (image.type != null && isInPicture(content, start))){
+            return null;
+        }
+
+        StringBuilder srcset = new StringBuilder();
+        if(!image.derivatives.isEmpty()){
+            srcset.append(" srcset=\"");
+            for(Derivative derivative: image.derivatives){
+                srcset.append(root).append(derivative.path).append(' ').append(derivative.width).append("w, ");
+            }
+            if(image.type != null){
+                //sizes of img is not used by source
+                srcset.setLength(srcset.length() - 2);
+                srcset.append('"');
+                String sourceSizes = attributes.containsKey("sizes") ? attributes.get("sizes") : sizes;
+                if(sourceSizes != null){
+                    srcset.append(" sizes=\"").append(sourceSizes).append('"');
+                }
+            }else{
+                srcset.append(src).append(' ').append(image.width).append("w\"");
+                if(sizes != null && !attributes.containsKey("sizes")){
+                    srcset.append(" sizes=\"").append(sizes).append('"');
+                }
+            }
+        }
+
+        StringBuilder attrs = new StringBuilder();
+        if(image.type == null){
+            attrs.append(srcset);
+        }
+        if(!attributes.containsKey("width") && !attributes.containsKey("height")){
+            attrs.append(" width=\"").append(image.width).append("\" height=\"").append(image.height).append('"');
+        }
+        if(attrs.length() == 0 && (image.type == null || srcset.length() == 0)){
+            return null;
+        }
+
+        int end = tag.endsWith("/>") ? tag.length() - 2 : tag.length() - 1;
+        while(end > 0 && Character.isWhitespace(tag.charAt(end - 1))){
+            end--;
+        }
+        String img = tag.substring(0, end) + attrs + (tag.endsWith("/>") ? " />" : ">");
+        if(image.type != null && srcset.length() > 0){
+            return "<picture><source type=\"" + image.type + "\"" + srcset + ">" + img + "</picture>";
+        }
+        return img;
+    }
+
+    private String resolve(String src, String pageUrl){
+        int i = src.indexOf('?');
+        if(i != -1){
+            src = src.substring(0, i);
+        }
+        if(src.indexOf("//") != -1 || src.startsWith("data:")){
+            return null;
+        }
+        if(src.startsWith("/")){
+            if(root.length() > 0){
+                return src.startsWith(root + "/") ? src.substring(root.length()) : null;
+            }
+            return src;
+        }
+        String dir = pageUrl == null ? "/" : pageUrl.substring(0, pageUrl.lastIndexOf('/') + 1);
+        return FilenameUtils.normalize(dir + src, true);
+    }
+
+    private static class Image{
+        private final String path;
+        private final int width;
+        private final int height;
+        private final String type;
+        private final List<Derivative> derivatives = new ArrayList<Derivative>();
+
+        /**
+         * @param type media type of derivatives if not the format of source image, otherwise null
+         */
+        Image(String path, int width, int height, String type) {
+            this.path = path;
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A derivative published from the cache directory.
+     */
+    private static class Derivative implements StaticFile{
+        private final String path;
+        private final int width;
+        private final File cacheFile;
+        private final MemoryOutputStore memoryOutputStore;
+
+        Derivative(String path, int width, File cacheFile, MemoryOutputStore memoryOutputStore) {
+            this.path = path;
+            this.width = width;
+            this.cacheFile = cacheFile;
+            this.memoryOutputStore = memoryOutputStore;
+        }
+
+        @Override
+        public File getOutputFile(File dest) {
+            return new File(dest, path);
+        }
+
+        @Override
+        public void write(File dest) {
+            File target = getOutputFile(dest);
+            if(memoryOutputStore != null){
+                memoryOutputStore.putFile(target, cacheFile);
+                return;
+            }
+            if(target.exists() && target.length() == cacheFile.length()
+                    && target.lastModified() == cacheFile.lastModified()){
+                return;
+            }
+            try {
+                target.getParentFile().mkdirs();
+                log.debug("Copying image derivative to {}", target);
+                StaticFilePublisher.copy(cacheFile, target);
+                target.setLastModified(cacheFile.lastModified());
+            } catch (IOException e) {
+                log.error("Copying image derivative error: " + target, e);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    static class Record implements Serializable{
+        private static final long serialVersionUID = -2875514095327701562L;
+
+        private final long length;
+        private final long lastModified;
+        private final String digest;
+        private final int width;
+        private final int height;
+
+        Record(SourceEntry sourceEntry, String digest, int width, int height) {
+            this.length = sourceEntry.getLength();
+            this.lastModified = sourceEntry.getLastModified();
+            this.digest = digest;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -16,7 +16,6 @@
 package org.opoo.press.impl;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.StringUtils;
 import org.opoo.press.Base;
 import org.opoo.press.Category;
@@ -34,7 +33,6 @@ import org.opoo.util.URLUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.cache.Cache;
 import java.io.File;
 import java.io.IOException;
 import java.util.Date;
@@ -84,7 +82,7 @@ public class SimplePage implements Page{
         this.urlEncode = site.getConfig().get("url_encode", false);
         this.urlDecode = site.getConfig().get("url_decode", false);
 
-        Cache<String,String> cache = site.get("contentCache");
+        ContentCache cache = site.get("contentCache");
         if(cache != null){
             contentHolder = new CachedContentHolder(this, cache);
         }else{
@@ -96,7 +94,6 @@ public class SimplePage implements Page{
         this(site);
         this.setTitle(page.getTitle());
         //this.setUrl(page.getUrl());
-        this.setContent(page.getContent());
         this.setDate(page.getDate());
         this.setLayout(page.getLayout());
         this.setCategoriesHolder(page.getCategoriesHolder());
@@ -117,6 +114,8 @@ public class SimplePage implements Page{
         }else{
             this.setUrl(page.getDecodedUrl());
         }
+        //set content after url, the url is a part of the content cache key
+        this.setContent(page.getContent());
     }
 
     public Site getSite(){
@@ -210,7 +209,7 @@ public class SimplePage implements Page{
     public void convert() {
         Converter c = getConverter();
         if(c != null){
-            setContent(c.convert(getContent()));
+            setContent(contentHolder.convert(c, getContent(), "converted"));
         }
     }
 
@@ -322,8 +321,20 @@ public class SimplePage implements Page{
         try {
             file.getParentFile().mkdirs();
 
+            byte[] bytes = getContent().getBytes("UTF-8");
+            MemoryOutputStore memoryOutputStore = site.get(MemoryOutputStore.KEY);
+            if(memoryOutputStore != null){
+                memoryOutputStore.put(file, bytes);
+                return;
+            }
+
             log.debug("Writing file to {} [{}]", file, getUrl());
-            FileUtils.write(file, getContent(), "UTF-8");
+            FileUtils.writeByteArrayToFile(file, bytes);
+
+            GzipSidecars gzipSidecars = site.get("gzipSidecars");
+            if(gzipSidecars != null){
+                gzipSidecars.write(file, bytes);
+            }
         } catch (IOException e) {
             log.error("Write file error: {}", file, e);
             throw new RuntimeException(e);
@@ -338,6 +349,14 @@ public class SimplePage implements Page{
         return new File(dest, url);
     }
 
+    /**
+     * @return true if the output file is a HTML file
+     */
+    public boolean isHtml(){
+        String name = getOutputFile(new File("/")).getName().toLowerCase();
+        return name.endsWith(".html") || name.endsWith(".htm");
+    }
+
     protected String getUrlForOutputFile(){
         String url = getUrl();
         if(urlDecode){
@@ -501,6 +520,16 @@ public class SimplePage implements Page{
         void setContent(String content);
         String getExcerpt();
         void setExcerpt(String excerpt);
+
+        /**
+         * Converts the content, the holder may return a converted result of the
+         * same input from previous build.
+         * @param converter the converter
+         * @param content content to convert
+         * @param stage name of the converting stage, e.g. 'converted'
+         * @return converted content
+         */
+        String convert(Converter converter, String content, String stage);
     }
 
     static class SimpleContentHolder implements ContentHolder{
@@ -526,38 +555,71 @@ public class SimplePage implements Page{
         public void setExcerpt(String excerpt) {
             this.excerpt = excerpt;
         }
+
+        @Override
+        public String convert(Converter converter, String content, String stage) {
+            return converter.convert(content);
+        }
     }
 
     static class CachedContentHolder implements ContentHolder{
-        private final String cacheKey;
-        private final Cache<String,String> contentCache;
+        private final Page page;
+        private final ContentCache contentCache;
+        private String contentKey;
+        private String excerptKey;
 
-        CachedContentHolder(Page page, Cache<String,String> contentCache){
+        CachedContentHolder(Page page, ContentCache contentCache){
+            this.page = page;
             this.contentCache = contentCache;
-            this.cacheKey = page.getClass().getName()
-                    + "-" + page.hashCode()
-                    + "-" + RandomStringUtils.randomAlphanumeric(13);
-            log.debug("Random cacheKey: {}", cacheKey);
         }
 
         @Override
         public String getContent() {
-            return contentCache.get(cacheKey);
+            return contentKey != null ? contentCache.get(contentKey) : null;
         }
 
         @Override
         public void setContent(String content) {
-            contentCache.put(cacheKey, content);
+            contentKey = put("content", content);
         }
 
         @Override
         public String getExcerpt() {
-            return contentCache.get(cacheKey + "-excerpt");
+            return excerptKey != null ? contentCache.get(excerptKey) : null;
         }
 
         @Override
         public void setExcerpt(String excerpt) {
-            contentCache.put(cacheKey + "-excerpt", excerpt);
+            excerptKey = put("excerpt", excerpt);
+        }
+
+        @Override
+        public String convert(Converter converter, String content, String stage) {
+            if(content == null){
+                return converter.convert(content);
+            }
+
+            String key = contentCache.buildKey(page.getUrl(), stage + "-" + converter.getClass().getName(), content);
+            String converted = contentCache.get(key);
+            if(converted != null){
+                log.debug("Using {} content from cache: {}", stage, key);
+                return converted;
+            }
+
+            converted = converter.convert(content);
+            if(converted != null){
+                contentCache.put(key, converted);
+            }
+            return converted;
+        }
+
+        private String put(String stage, String value){
+            if(value == null){
+                return null;
+            }
+            String key = contentCache.buildKey(page.getUrl(), stage, value);
+            contentCache.put(key, value);
+            return key;
         }
     }
 }
@@ -18,6 +18,7 @@ package org.opoo.press.impl;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.opoo.press.Post;
@@ -61,6 +62,8 @@ public class SiteConfigImpl extends HashMap<String,Object> implements SiteConfig
 	private File[] configFiles;
 	private final File base;
 	private boolean useDefaultConfigFiles = false;
+	//entries after loaded, to find the entries set at runtime
+	private transient Map<String,Object> loaded;
 	
 	/**
 	 * Construct configuration instance.
@@ -87,6 +90,50 @@ public class SiteConfigImpl extends HashMap<String,Object> implements SiteConfig
 		Arrays.sort(configFiles, new ConfigFileComparator());
 		loadConfigFromFiles(configFiles);
 		log.debug("Config files loaded in {} ms.", (System.currentTimeMillis() - start));
+		loaded = new HashMap<String,Object>(this);
+	}
+
+	/**
+	 * Loads the configuration files again.
+	 */
+	private SiteConfigImpl(SiteConfigImpl previous){
+		this.base = previous.base;
+		initDefaultConfig();
+		if(previous.overrideConfig != null){
+			putAll(previous.overrideConfig);
+			this.overrideConfig = previous.overrideConfig;
+		}
+
+		this.useDefaultConfigFiles = previous.useDefaultConfigFiles;
+		if(useDefaultConfigFiles){
+			//config files may be added or removed
+			this.configFiles = base.listFiles(DEFAULT_CONFIG_FILES_FILTER);
+		}else{
+			this.configFiles = previous.configFiles;
+		}
+		Arrays.sort(configFiles, new ConfigFileComparator());
+		loadConfigFromFiles(configFiles);
+		loaded = new HashMap<String,Object>(this);
+
+		//keep the options set at runtime, e.g. by maven plugin
+		for(Map.Entry<String,Object> en: previous.entrySet()){
+			String name = en.getKey();
+			if(previous.loaded == null || !previous.loaded.containsKey(name)
+					|| !ObjectUtils.equals(previous.loaded.get(name), en.getValue())){
+				put(name, en.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Creates a new configuration instance from the current content of
+	 * configuration files, with the same options override. The options set
+	 * at runtime are kept.
+	 *
+	 * @return the new configuration
+	 */
+	public SiteConfigImpl reload(){
+		return new SiteConfigImpl(this);
 	}
 	
 	private void initDefaultConfig(){
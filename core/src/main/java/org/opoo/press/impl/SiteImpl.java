@@ -15,7 +15,6 @@
  */
 package org.opoo.press.impl;
 
-import com.google.common.collect.Lists;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.LocaleUtils;
 import org.apache.commons.lang.StringUtils;
@@ -24,9 +23,11 @@ import org.opoo.press.Collection;
 import org.opoo.press.Converter;
 import org.opoo.press.Factory;
 import org.opoo.press.Generator;
+import org.opoo.press.MetaTag;
 import org.opoo.press.NoFrontMatterException;
 import org.opoo.press.Observer;
 import org.opoo.press.Page;
+import org.opoo.press.Pager;
 import org.opoo.press.Post;
 import org.opoo.press.ProcessorsProcessor;
 import org.opoo.press.Renderer;
@@ -42,10 +43,13 @@ import org.opoo.press.StaticFile;
 import org.opoo.press.Theme;
 import org.opoo.press.ThemeCompiler;
 import org.opoo.press.Writable;
+import org.opoo.press.file.Result;
+import org.opoo.press.file.SourceFileFilter;
 import org.opoo.press.source.CachedSourceParserWrapper;
 import org.opoo.press.task.RunnableTask;
 import org.opoo.press.task.TaskExecutor;
 import org.opoo.press.util.StaleUtils;
+import org.opoo.util.DigestUtils;
 import org.opoo.util.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,7 +59,6 @@ import javax.cache.CacheManager;
 import javax.cache.Caching;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -65,10 +68,13 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -78,7 +84,7 @@ import java.util.Map;
 public class SiteImpl implements Site, SiteBuilder{
 	private static final Logger log = LoggerFactory.getLogger(SiteImpl.class);
 
-	private SiteConfigImpl config;
+	private volatile SiteConfigImpl config;
 	private Map<String, Object> data;
 	private File dest;
 	private File templates;
@@ -105,7 +111,19 @@ public class SiteImpl implements Site, SiteBuilder{
     private CacheManager cacheManager;
     private Cache<String,Source> sourceCache;
     private Cache<String,SourceEntry> staticFileSourceEntryCache;
-    private Cache<String,String> contentCache;
+    private ContentCache contentCache;
+    private StaticFilePublisher staticFilePublisher;
+    private GzipSidecars gzipSidecars;
+    private MemoryOutputStore memoryOutputStore;
+    private OnDemandRenderer onDemandRenderer;
+    private boolean renderOnDemand;
+    private final SourcePool sourcePool = new SourcePool();
+    private BuildSnapshot snapshot;
+    private BuildSnapshot building;
+    private List<File> changedFiles = Collections.emptyList();
+    private List<Page> renderedPages = Collections.emptyList();
+    private volatile boolean cancelRequested;
+    private boolean renderAllRequested;
 
 
 	public SiteImpl(SiteConfigImpl siteConfig) {
@@ -161,6 +179,35 @@ public class SiteImpl implements Site, SiteBuilder{
 		String workingDir = config.get("work_dir");
 		this.working = PathUtils.appendBaseIfNotAbsolute(basedir, workingDir);
 		log.debug("Working directory: {}", working);
+
+		staticFilePublisher = new StaticFilePublisher(config, working);
+		data.put("staticFilePublisher", staticFilePublisher);
+
+		if(config.get("memory_output", false)){
+			memoryOutputStore = new MemoryOutputStore(dest);
+			data.put(MemoryOutputStore.KEY, memoryOutputStore);
+			log.info("+ Writing outputs to memory.");
+		}else if(config.get("gzip_sidecars", false)){
+			gzipSidecars = new GzipSidecars(config, working);
+			data.put("gzipSidecars", gzipSidecars);
+			log.info("+ Writing gzip sidecar files.");
+		}
+
+		renderOnDemand = config.get("render_on_demand", false);
+		boolean prioritized = config.get("prioritized_rebuild", false);
+		if(renderOnDemand || prioritized){
+			if(memoryOutputStore == null || config.get("cache", false)){
+				log.warn("'{}' requires 'memory_output' and no 'cache', option ignored.",
+						renderOnDemand ? "render_on_demand" : "prioritized_rebuild");
+				renderOnDemand = false;
+			}else{
+				//prioritized rebuild renders the rest of changed pages in background
+				boolean fill = config.get("render_on_demand_fill", false) || (prioritized && !renderOnDemand);
+				onDemandRenderer = new OnDemandRenderer(this, memoryOutputStore, fill);
+				memoryOutputStore.setLoader(onDemandRenderer);
+				log.info(renderOnDemand ? "+ Rendering pages on demand." : "+ Rendering changed pages by priority.");
+			}
+		}
 		
 		reset();
 		setup();
@@ -194,7 +241,13 @@ public class SiteImpl implements Site, SiteBuilder{
 		build(false);
 	}
 
-	public void build(boolean force){
+	public synchronized void build(boolean force){
+		if(memoryOutputStore != null && memoryOutputStore.isEmpty()){
+			log.info("Building site to memory.");
+			buildInternal();
+			return;
+		}
+
 		if(force){
 			log.info("force build.");
 			buildInternal();
@@ -208,18 +261,29 @@ public class SiteImpl implements Site, SiteBuilder{
 
 		// only asset file(s) changed.
 		List<File> staleAssets = StaleUtils.getStaleAssets(this);
+		if(staleAssets != null && isAssetsReferencedByPages()){
+			//the fingerprints and image derivatives are built before rendering
+			log.info("Assets changed, build all.");
+			buildInternal();
+			return;
+		}
 		if(staleAssets != null){
-			for(File staleAsset: staleAssets){
-				//copy asset directory to destination directory
-				log.info("Copying stale asset: {}...", staleAsset);
-				try {
-					FileUtils.copyDirectory(staleAsset, dest, buildFilter());
-					StaleUtils.saveLastBuildInfo(this);
-					return;
-				} catch (IOException e) {
-					throw new RuntimeException("Copy stale asset exception: " + staleAsset, e);
+			FileFilter fileFilter = buildFilter();
+			SourceEntryLoader sourceEntryLoader = factory.getSourceEntryLoader();
+			SourceEntryVisitor visitor = new SourceEntryVisitor() {
+				@Override
+				public void visit(SourceEntry sourceEntry) {
+					new StaticFileImpl(SiteImpl.this, sourceEntry).write(dest);
 				}
+			};
+			for(File staleAsset: staleAssets){
+				//publish changed files of asset directory to destination directory
+				log.info("Publishing stale asset: {}...", staleAsset);
+				sourceEntryLoader.walkSourceTree(staleAsset, fileFilter, visitor);
 			}
+			saveOutputRecords();
+			saveLastBuildInfo();
+			return;
 		}
 
 		log.info("Nothing to build - all site output files are up to date.");
@@ -240,26 +304,351 @@ public class SiteImpl implements Site, SiteBuilder{
 //			setup();
 //		}
 
-		reset();
-        prepare();
-        read();
-		generate();
-		convert();
-		render();
+		snapshot = null;
+		building = new BuildSnapshot();
+		cancelRequested = false;
+		try {
+			reset();
+			prepare();
+			read();
+			checkCancelled();
+			generate();
+			checkCancelled();
+			building.recordStructures(allPages, dest);
+			renderedPages = allPages;
+			if(renderOnDemand){
+				renderOnDemand(null);
+			}else{
+				convert(allPages);
+				checkCancelled();
+				render(allPages);
+				checkCancelled();
+				cleanup();
+				write(allPages);
+				close();
+				if(onDemandRenderer != null){
+					onDemandRenderer.rendered(allPages);
+				}
+			}
+
+			saveLastBuildInfo();
+			snapshot = building;
+			renderAllRequested = false;
+		} finally {
+			building = null;
+			discardCache();
+		}
+	}
+
+	/**
+	 * Builds the site incrementally by the changed files, all sources are read
+	 * but only the changed sources are parsed again.
+	 *
+	 * <p>If the front-matter of changed sources and the generated pages are the
+	 * same as last build, only the changed pages and the pages listing them (e.g.
+	 * paginated pages and tag pages) are rendered and written. Otherwise, e.g.
+	 * source added, deleted, or title changed, all pages are rendered. The
+	 * outputs of removed pages are deleted in cleanup.</p>
+	 *
+	 * @param result the changed files
+	 */
+	public synchronized void build(Result result){
+		BuildSnapshot previous = snapshot;
+		if(previous == null){
+			log.info("No previous build in memory, build all.");
+			buildInternal();
+			return;
+		}
+
+		List<File> changed = new ArrayList<File>(result.getCreatedFiles());
+		changed.addAll(result.getUpdatedFiles());
+		boolean renderAll = renderAllRequested;
+		for(File file: changed){
+			renderAll |= isPageAffectingFile(file);
+		}
+		for(File file: result.getDeletedFiles()){
+			renderAll |= isPageAffectingFile(file);
+		}
+
+		building = new BuildSnapshot();
+		changedFiles = changed;
+		cancelRequested = false;
+		try {
+			reset();
+			prepare();
+			read();
+			checkCancelled();
+			generate();
+			checkCancelled();
+			building.recordStructures(allPages, dest);
+
+			List<Page> pages = allPages;
+			List<Page> convertingPages = allPages;
+			if(renderAllRequested){
+				log.info("Configuration changed, rendering all pages.");
+			}else if(renderAll){
+				log.info("Templates or assets changed, rendering all pages.");
+			}else if(building.isStructureChanged(previous)){
+				log.info("Pages added, removed or front-matter changed, rendering all pages.");
+			}else{
+				pages = getAffectedPages(changed);
+				//the contents of listed pages are used in rendering, e.g. excerpts
+				Set<Page> set = new LinkedHashSet<Page>(pages);
+				for(Page page: pages){
+					set.addAll(getListedPages(page));
+				}
+				convertingPages = new ArrayList<Page>(set);
+			}
+
+			renderedPages = pages;
+			if(onDemandRenderer != null){
+				renderOnDemand(pages == allPages ? null : pages);
+			}else{
+				convert(convertingPages);
+				checkCancelled();
+				render(pages);
+				checkCancelled();
+				cleanup();
+				write(pages);
+				close();
+			}
+
+			saveLastBuildInfo();
+			snapshot = building;
+			renderAllRequested = false;
+		} finally {
+			building = null;
+			changedFiles = Collections.emptyList();
+			discardCache();
+		}
+	}
+
+	/**
+	 * Requests the running build to stop at the next phase boundary (after
+	 * reading, generating, converting or rendering), the build throws
+	 * {@link BuildCancelledException}. The outputs are not written, and the
+	 * next incremental build compares with the last completed build.
+	 */
+	public void cancelBuild(){
+		cancelRequested = true;
+	}
+
+	/**
+	 * Reads the configuration files of site and theme again.
+	 *
+	 * @return the changes compared with the current configuration
+	 */
+	ConfigDiff diffConfig(){
+		ThemeImpl themeImpl = (ThemeImpl) theme;
+		return new ConfigDiff(config, config.reload(), themeImpl.getConfig(), themeImpl.loadConfig());
+	}
+
+	/**
+	 * Applies the reloaded configuration without creating a new site, the objects
+	 * depend on the changed options are set up again, then all pages are
+	 * rendered in next build. The current configuration is kept if the set up
+	 * failed, and the theme resource builders are created again if the theme
+	 * options changed.
+	 *
+	 * @param diff the configuration changes, must not require restart
+	 */
+	synchronized void reconfigure(ConfigDiff diff){
+		if(diff.getScope() == ConfigDiff.Scope.RESTART){
+			throw new IllegalArgumentException("Site must be created again: " + diff);
+		}
+		log.info("Applying configuration, {}", diff);
+
+		ThemeImpl themeImpl = (ThemeImpl) theme;
+		SiteConfigImpl oldConfig = config;
+		Map<String,Object> oldThemeConfig = themeImpl.getConfig();
+		config = diff.getConfig();
+		themeImpl.setConfig(diff.getThemeConfig());
+		try{
+			if(diff.getScope() == ConfigDiff.Scope.SETUP){
+				setupPlugins();
+			}else if(diff.getScope() == ConfigDiff.Scope.RENDERER){
+				renderer = factory.getRenderer();
+			}
+		}catch(RuntimeException e){
+			config = oldConfig;
+			themeImpl.setConfig(oldThemeConfig);
+			throw e;
+		}
+
+		showDrafts = config.get("show_drafts", false);
+		if(diff.isThemeChanged()){
+			themeImpl.close();
+		}
+		renderAllRequested = true;
+	}
+
+	private void checkCancelled(){
+		if(cancelRequested){
+			cancelRequested = false;
+			log.info("Build cancelled.");
+			throw new BuildCancelledException();
+		}
+	}
+
+	/**
+	 * Writes the static files only, the pages are rendered by {@link OnDemandRenderer},
+	 * the recently requested pages and the pages of changed files first.
+	 *
+	 * <p>The processors prepare rendering before cleanup and writing, as in
+	 * a full build, so the static files they add (e.g. image derivatives) are
+	 * kept and written, and the assets are written with their fingerprints.</p>
+	 *
+	 * @param changed the changed pages, or null if all pages changed
+	 */
+	private void renderOnDemand(List<Page> changed){
+		Map<String,Object> rootMap = prepareRender();
+		checkCancelled();
 		cleanup();
-		write();
-        close();
+		write(Collections.<Page>emptyList());
+		close();
+		onDemandRenderer.reset(allPages, changed, changedFiles, rootMap);
+	}
+
+	/**
+	 * Changed file in templates, or in assets if the page outputs depend on assets.
+	 */
+	private boolean isPageAffectingFile(File file){
+		if(isInDirectory(file, templates)){
+			return true;
+		}
+		for(File source: sources){
+			if(isInDirectory(file, source)){
+				return false;
+			}
+		}
+		return isAssetsReferencedByPages();
+	}
+
+	/**
+	 * The page outputs depend on the content of assets: fingerprinted urls or
+	 * image sizes in pages. The changed assets must be published by a build
+	 * which renders the pages, not copied directly.
+	 */
+	boolean isAssetsReferencedByPages(){
+		return isEnabled("asset_fingerprint") || isEnabled("responsive_images");
+	}
+
+	private boolean isEnabled(String option){
+		Object value = config.get(option);
+		return value != null && !Boolean.FALSE.equals(value);
+	}
+
+	private static boolean isInDirectory(File file, File dir){
+		String dirPath = dir.getAbsolutePath() + File.separator;
+		return file.getAbsolutePath().startsWith(dirPath);
+	}
+
+	/**
+	 * The pages of changed sources, and the pages list them.
+	 */
+	private List<Page> getAffectedPages(List<File> changed){
+		Set<File> changedSet = new HashSet<File>();
+		for(File file: changed){
+			changedSet.add(file.getAbsoluteFile());
+		}
+
+		Set<Page> changedPages = new HashSet<Page>();
+		for(Page page: allPages){
+			Source source = page.getSource();
+			if(source != null && source.getSourceEntry() != null
+					&& changedSet.contains(source.getSourceEntry().getFile().getAbsoluteFile())){
+				changedPages.add(page);
+			}
+		}
+
+		List<Page> pages = new ArrayList<Page>();
+		for(Page page: allPages){
+			if(changedPages.contains(page)){
+				pages.add(page);
+				continue;
+			}
+			for(Object listed: getListedPages(page)){
+				if(changedPages.contains(listed)){
+					pages.add(page);
+					break;
+				}
+			}
+		}
+		log.info("{} changed source(s), {} page(s) affected.", changedPages.size(), pages.size());
+		return pages;
+	}
 
-		StaleUtils.saveLastBuildInfo(this);
+	/**
+	 * The items of pager and the pages of meta tag.
+	 */
+	List<Page> getListedPages(Page page){
+		List<Page> list = new ArrayList<Page>();
+		Pager pager = page.getPager();
+		if(pager != null && pager.getItems() != null){
+			for(Object item: pager.getItems()){
+				if(item instanceof Page){
+					list.add((Page) item);
+				}
+			}
+		}
+		Object metaTag = page.get("metaTag");
+		if(metaTag instanceof MetaTag){
+			list.addAll(((MetaTag) metaTag).getPages());
+		}
+		return list;
 	}
 
+    /**
+     * Builds the site model only: reads the front-matter of all sources, creates
+     * collections, tags, categories and generated pages. Page contents are not
+     * loaded (except the pages copied by generators), converted, rendered or written.
+     * <p>For planning operations, e.g. dry run.</p>
+     */
+    public void scan(){
+        log.info("Scanning site...");
+        try {
+            reset();
+            prepare();
+            read();
+            generate();
+        } finally {
+            discardCache();
+        }
+    }
+
+    /**
+     * Estimates the total length of outputs of the scanned site: the last output
+     * of each page, or its source if not built before, and the static files.
+     * Generated pages never built before are not counted.
+     *
+     * @return the estimated length in bytes
+     * @see #scan()
+     */
+    public long estimateOutputLength(){
+        long length = 0;
+        for(Page page: allPages){
+            File output = page instanceof SimplePage ? ((SimplePage) page).getOutputFile(dest) : null;
+            if(output != null && output.isFile()){
+                length += output.length();
+            }else if(page.getSource() != null){
+                length += page.getSource().getSourceEntry().getLength();
+            }
+        }
+        for(StaticFile staticFile: staticFiles){
+            if(staticFile instanceof StaticFileImpl){
+                length += ((StaticFileImpl) staticFile).getSourceEntry().getLength();
+            }
+        }
+        return length;
+    }
+
     void prepare() {
         boolean cache = config.get("cache", false);
         if(cache){
             cacheManager = Caching.getCachingProvider().getCacheManager();
             sourceCache = cacheManager.getCache("sources");
             staticFileSourceEntryCache = cacheManager.getCache("static-file-source-entries");
-            contentCache = cacheManager.getCache("contents");
+            Cache<String,String> contents = cacheManager.getCache("contents");
 
             if(sourceCache == null){
                 throw new IllegalArgumentException("'sources' cache not defined");
@@ -267,17 +656,47 @@ public class SiteImpl implements Site, SiteBuilder{
             if(staticFileSourceEntryCache == null){
                 throw new IllegalArgumentException("'static-file-source-entries' cache not defined");
             }
-            if(contentCache == null){
+            if(contents == null){
                 throw new IllegalArgumentException("'contents' cache not defined");
             }
+            contentCache = new ContentCache(contents, buildContentCacheNamespace());
             data.put("contentCache", contentCache);
         }
     }
 
+    /**
+     * The namespace of content cache keys, changes when any configuration file changed.
+     * @return namespace
+     */
+    private String buildContentCacheNamespace(){
+        StringBuilder sb = new StringBuilder();
+        for(File file: config.getConfigFiles()){
+            sb.append(file.getPath()).append(':').append(file.lastModified()).append(';');
+        }
+        File themeConfigFile = theme.getConfigFile();
+        sb.append(themeConfigFile.getPath()).append(':').append(themeConfigFile.lastModified());
+        return DigestUtils.md5Hex(sb.toString()).substring(0, 8);
+    }
+
+    /**
+     * Closes the cache manager of a cancelled or failed build, the cache
+     * entries are not evicted.
+     */
+    private void discardCache(){
+        if(cacheManager != null){
+            data.remove("contentCache");
+            contentCache = null;
+            cacheManager.close();
+            cacheManager = null;
+        }
+    }
+
     void close() {
         if(cacheManager != null){
             data.remove("contentCache");
-            contentCache.clear();
+            //keep the entries of this build for next build
+            contentCache.evictStale();
+            contentCache = null;
 
             cacheManager.close();
             cacheManager = null;
@@ -305,8 +724,18 @@ public class SiteImpl implements Site, SiteBuilder{
 			}
 		}
 
+		taskExecutor = new TaskExecutor(config);
+		setupPlugins();
+	}
+
+	/**
+	 * Sets up the options and objects which depend on configuration, set up
+	 * again when configuration reloaded.
+	 */
+	private void setupPlugins(){
 		//locale
 		String localeString = config.get("locale");
+		locale = null;
 		if(localeString != null){
 			locale = LocaleUtils.toLocale(localeString);
 			log.debug("Set locale: " + locale);
@@ -322,7 +751,6 @@ public class SiteImpl implements Site, SiteBuilder{
 
 		//object instances
 		classLoader = createClassLoader(config, theme);
-		taskExecutor = new TaskExecutor(config);
 		factory = FactoryImpl.createInstance(this);
 
 		processors = new ProcessorsProcessor(factory.getPluginManager().getProcessors());
@@ -418,30 +846,18 @@ public class SiteImpl implements Site, SiteBuilder{
             }
         };
 
-        List<Runnable> tasks = Lists.newArrayList();
-
-        for(final File src: sources){
-            tasks.add(new Runnable() {
-                @Override
-                public void run() {
-                    log.debug("Walk source: {}", src);
-                    sourceEntryLoader.walkSourceTree(src, fileFilter, sourceVisitor);
-                }
-            });
+        //the loader walks each tree in parallel on its own pool, not nested in task executor
+        for(File src: sources){
+            log.debug("Walk source: {}", src);
+            sourceEntryLoader.walkSourceTree(src, fileFilter, sourceVisitor);
         }
-
-
-        for(final File assetDir: assets){
-            tasks.add(new Runnable() {
-                @Override
-                public void run() {
-                    log.debug("Walk asset: {}", assetDir);
-                    sourceEntryLoader.walkSourceTree(assetDir, fileFilter, staticFileVisitor);
-                }
-            });
+        for(File assetDir: assets){
+            log.debug("Walk asset: {}", assetDir);
+            sourceEntryLoader.walkSourceTree(assetDir, fileFilter, staticFileVisitor);
+        }
+        if(cacheManager == null){
+            sourcePool.evictUnseen();
         }
-
-        taskExecutor.run(tasks);
 
 		processors.postRead(this);
 
@@ -460,6 +876,9 @@ public class SiteImpl implements Site, SiteBuilder{
         if(cacheManager != null){
             log.debug("Use {} as SourceParser.", CachedSourceParserWrapper.class.getName());
             sourceParser = new CachedSourceParserWrapper(sourceParser, sourceCache, staticFileSourceEntryCache);
+        }else{
+            //sources of cache are not available after cache manager closed
+            sourceParser = sourcePool.createSourceParser(sourceParser, changedFiles);
         }
         return sourceParser;
     }
@@ -495,32 +914,7 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 	
 	FileFilter buildFilter(){
-		final List<String> includes = config.get("includes");
-		final List<String> excludes = config.get("excludes");
-		return new FileFilter(){
-			@Override
-			public boolean accept(File file) {
-				String name = file.getName();
-				if(includes != null && includes.contains(name)){
-					return true;
-				}
-				if(excludes != null && excludes.contains(name)){
-					return false;
-				}
-				char firstChar = name.charAt(0);
-				if(firstChar == '.' || firstChar == '_' || firstChar == '#'){
-					return false;
-				}
-				char lastChar = name.charAt(name.length() - 1);
-				if(lastChar == '~'){
-					return false;
-				}
-				if(file.isHidden()){
-					return false;
-				}
-				return true;
-			}
-		};
+		return SourceFileFilter.createSiteFilter(this);
 	}
 	
 	
@@ -533,9 +927,10 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 
 
-	void convert(){
-		log.info("Converting {} pages...", allPages.size());
-		taskExecutor.run(allPages, new RunnableTask<Page>() {
+	void convert(List<Page> pages){
+		//page content is loaded from source right before converting
+		log.info("Converting {} pages...", pages.size());
+		taskExecutor.run(pages, new RunnableTask<Page>() {
 			public void run(Page page) {
 				log.debug("Converting page: {}", page.getUrl());
 				page.convert();
@@ -545,13 +940,13 @@ public class SiteImpl implements Site, SiteBuilder{
 		processors.postConvert(this);
 	}
 
-	void render(){
+	void render(List<Page> pages){
 		processors.preRender(this);
 		final Map<String, Object> rootMap = buildRootMap();
 		renderer.prepare();
 
-		log.info("Rendering {} pages...", allPages.size());
-		taskExecutor.run(allPages, new RunnableTask<Page>() {
+		log.info("Rendering {} pages...", pages.size());
+		taskExecutor.run(pages, new RunnableTask<Page>() {
             public void run(Page page) {
                 log.debug("Rendering page: {}", page.getUrl());
 
@@ -563,6 +958,26 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 
 
+	/**
+	 * Prepares rendering of the pages on demand.
+	 * @return the root map for rendering
+	 */
+	Map<String,Object> prepareRender(){
+		processors.preRender(this);
+		renderer.prepare();
+		return buildRootMap();
+	}
+
+	void convertPage(Page page){
+		page.convert();
+		processors.postConvert(this, page);
+	}
+
+	void renderPage(Page page, Map<String,Object> rootMap){
+		page.render(rootMap);
+		processors.postRender(this, page);
+	}
+
 	Map<String,Object> buildRootMap(){
 		Map<String, Object> map = new HashMap<String,Object>();
 		map.put("site", this);
@@ -579,22 +994,43 @@ public class SiteImpl implements Site, SiteBuilder{
 	 */
 	void cleanup() {
 		log.info("cleanup...");
-		final List<File> destFiles = getAllDestFiles(dest);
 		List<File> files = new ArrayList<File>();
 
 		for(StaticFile staticFile: staticFiles){
 			files.add(staticFile.getOutputFile(dest));
 		}
-		
-		log.debug("Files in target: {}", destFiles.size());
-		log.debug("Assets file in src: {}", files.size());
 
+		//keep page outputs, they are overwritten or not changed in incremental build
+		for(Page page: allPages){
+			if(page instanceof SimplePage){
+				files.add(((SimplePage) page).getOutputFile(dest));
+			}
+		}
+
+		if(memoryOutputStore != null){
+			memoryOutputStore.retain(files);
+			processors.postCleanup(this);
+			return;
+		}
+
+		final List<File> destFiles = getAllDestFiles(dest);
+		log.debug("Files in target: {}", destFiles.size());
+		log.debug("Output files of site: {}", files.size());
+
+		staticFilePublisher.retain(files);
+		if(gzipSidecars != null){
+			gzipSidecars.retain(files);
+			//keep sidecars, sidecars of unchanged outputs are not compressed again
+			for(File file: new ArrayList<File>(files)){
+				files.add(GzipSidecars.getSidecarFile(file));
+			}
+		}
 		
 		//find obsolete files
-		for(File file: files){
-			destFiles.remove(file);
-		}
-//		destFiles.removeAll(files);
+//		for(File file: files){
+//			destFiles.remove(file);
+//		}
+		destFiles.removeAll(new HashSet<File>(files));
 		
 		log.debug("Files in target will be deleted: {}", destFiles.size());
 
@@ -643,11 +1079,28 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 
 
-	void write(){
+	/**
+	 * The outputs in memory are not in destination directory, site is stale
+	 * for next build.
+	 */
+	private void saveLastBuildInfo(){
+		if(memoryOutputStore == null){
+			StaleUtils.saveLastBuildInfo(this);
+		}
+	}
+
+	private void saveOutputRecords(){
+		staticFilePublisher.save();
+		if(gzipSidecars != null){
+			gzipSidecars.save();
+		}
+	}
+
+	void write(List<Page> pages){
 		dest.mkdirs();
 		
 		List<Writable> list = new ArrayList<Writable>();
-		list.addAll(allPages);
+		list.addAll(pages);
 		if(!staticFiles.isEmpty()){
 			list.addAll(staticFiles);
 		}
@@ -659,11 +1112,19 @@ public class SiteImpl implements Site, SiteBuilder{
 				o.write(dest);
 			}
 		});
+		saveOutputRecords();
 
 		processors.postWrite(this);
 	}
 
 
+    /**
+     * @return the pages rendered and written in last build
+     */
+    public List<Page> getRenderedPages(){
+        return renderedPages;
+    }
+
     /**
 	 * @return the pages
 	 */
@@ -869,6 +1330,17 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 
 
+	/**
+	 * Thrown by the build cancelled by {@link #cancelBuild()}.
+	 */
+	public static class BuildCancelledException extends RuntimeException{
+		private static final long serialVersionUID = -1524283726423453427L;
+
+		public BuildCancelledException() {
+			super("Build cancelled.");
+		}
+	}
+
 	static class ValidDirList extends ArrayList<File>{
 		private static final long serialVersionUID = 6306507738477638252L;
 		public ValidDirList addDir(File dir){
@@ -16,12 +16,14 @@
 package org.opoo.press.impl;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.monitor.FileAlterationObserver;
 import org.opoo.press.Observer;
+import org.opoo.press.Page;
 import org.opoo.press.SiteConfig;
 import org.opoo.press.SourceEntry;
 import org.opoo.press.SourceEntryLoader;
+import org.opoo.press.file.NioWatchableDirectory;
 import org.opoo.press.file.Result;
+import org.opoo.press.file.SourceFileFilter;
 import org.opoo.press.file.Watchable;
 import org.opoo.press.file.WatchableDirectory;
 import org.opoo.press.file.WatchableFiles;
@@ -31,7 +33,12 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileFilter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Alex Lin
@@ -44,6 +51,8 @@ public class SiteObserver implements Observer{
     private Observer themeObserver;
     private List<Watchable> configWatchers = new ArrayList<Watchable>();
     private List<Watchable> otherWatchers = new ArrayList<Watchable>();
+    private List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final BuildScheduler scheduler;
 
 
     SiteObserver(SiteImpl site){
@@ -58,17 +67,25 @@ public class SiteObserver implements Observer{
         Watchable themeConfigWatcher = new WatchableFiles(site.getTheme().getConfigFile());
         configWatchers.add(themeConfigWatcher);
 
+        FileFilter sourceFileFilter = SourceFileFilter.createSiteFilter(site);
         List<File> sources = site.getSources();
         for(File source: sources){
-            otherWatchers.add(new WatchableDirectory(source));
+            otherWatchers.add(NioWatchableDirectory.create(source, sourceFileFilter));
         }
 
-        otherWatchers.add(new WatchableDirectory(site.getTemplates()));
+        otherWatchers.add(NioWatchableDirectory.create(site.getTemplates(), SourceFileFilter.createTemplatesFilter(site)));
 
         List<File> assets = site.getAssets();
         for(File asset: assets){
-            otherWatchers.add(new StaticFilesWatcher(asset));
+            otherWatchers.add(new StaticFilesWatcher(asset, sourceFileFilter));
         }
+
+        scheduler = new BuildScheduler(site, new BuildScheduler.Callback() {
+            @Override
+            public void built(Result result) {
+                fireSiteChanged(result);
+            }
+        });
     }
 
     /**
@@ -110,21 +127,39 @@ public class SiteObserver implements Observer{
         for(Watchable watcher: otherWatchers){
             watcher.initialize();
         }
+
+        scheduler.start();
     }
 
     @Override
     public void check() throws Exception {
+        //the resource builders are created again if theme options changed
+        Observer observer = site.getTheme().getObserver();
+        if(observer != themeObserver){
+            log.debug("Theme resource builders changed, observing the new builders.");
+            if(themeObserver != null){
+                themeObserver.destroy();
+            }
+            themeObserver = observer;
+            if(themeObserver != null){
+                themeObserver.initialize();
+            }
+        }
         if(themeObserver != null){
             themeObserver.check();
         }
 
+        Result configResult = Result.newResult();
         for(Watchable watcher: configWatchers){
-            Result result = watcher.check();
-            if(!result.isEmpty()) {
-                log.info("Configuration file changed: \n{}", result.toString());
-                throw new ConfigChangedException(result);
+            Result check = watcher.check();
+            if(!check.isEmpty()) {
+                configResult.addResult(check);
             }
         }
+        if(!configResult.isEmpty()){
+            log.info("Configuration file changed: \n{}", configResult.toString());
+            reloadConfig(configResult);
+        }
 
         Result result = Result.newResult();
         for(Watchable watcher: otherWatchers){
@@ -135,17 +170,100 @@ public class SiteObserver implements Observer{
         }
         if(!result.isEmpty()){
             log.info("Source file(s) changed: \n{}", result.toString());
-            long start = System.currentTimeMillis();
-            //force build
-            site.build(true);
-            log.info("Build time: {}ms", System.currentTimeMillis() - start);
+            //built on the builder thread, only changed sources are parsed, affected pages are rendered
+            scheduler.submit(result);
         }else{
             log.debug("Nothing to build - all site output files are up to date.");
         }
     }
 
+    /**
+     * Applies the changed options to site on the builder thread, or throws
+     * {@link ConfigChangedException} if the site must be created again, e.g.
+     * directories or theme changed.
+     */
+    private void reloadConfig(Result result) throws ConfigChangedException {
+        ConfigDiff diff;
+        try {
+            diff = site.diffConfig();
+        } catch (RuntimeException e) {
+            //e.g. saved in the middle of editing, reloaded when saved again
+            log.error("Invalid configuration file, ignored: " + e.getMessage(), e);
+            return;
+        }
+
+        if(diff.getScope() == ConfigDiff.Scope.RESTART){
+            log.info("Site must be created again, {}", diff);
+            throw new ConfigChangedException(result);
+        }else{
+            scheduler.submit(diff);
+        }
+    }
+
+    /**
+     * @param listener the listener to be notified after each rebuild
+     */
+    public void addListener(Listener listener){
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener){
+        listeners.remove(listener);
+    }
+
+    private void fireSiteChanged(Result result){
+        if(listeners.isEmpty()){
+            return;
+        }
+
+        List<Page> renderedPages = site.getRenderedPages();
+        boolean all = renderedPages.size() >= site.getAllPages().size();
+        String root = site.getRoot();
+
+        Set<String> urls = new LinkedHashSet<String>();
+        Set<File> pageSources = new HashSet<File>();
+        for(Page page: renderedPages){
+            if(page.getSource() != null && page.getSource().getSourceEntry() != null){
+                pageSources.add(page.getSource().getSourceEntry().getFile());
+            }
+            if(!all){
+                urls.add(root + page.getUrl());
+            }
+        }
+
+        //static files
+        List<File> files = new ArrayList<File>(result.getCreatedFiles());
+        files.addAll(result.getUpdatedFiles());
+        files.addAll(result.getDeletedFiles());
+        List<File> dirs = new ArrayList<File>(site.getSources());
+        dirs.addAll(site.getAssets());
+        for(File file: files){
+            if(pageSources.contains(file)){
+                continue;
+            }
+            for(File dir: dirs){
+                String dirPath = dir.getAbsolutePath() + File.separator;
+                String filePath = file.getAbsolutePath();
+                if(filePath.startsWith(dirPath)){
+                    urls.add(root + "/" + filePath.substring(dirPath.length()).replace(File.separatorChar, '/'));
+                    break;
+                }
+            }
+        }
+
+        for(Listener listener: listeners){
+            try {
+                listener.siteChanged(urls, all);
+            } catch (RuntimeException e) {
+                log.warn("Notify listener failed: " + listener, e);
+            }
+        }
+    }
+
     @Override
     public void destroy() throws Exception {
+        scheduler.shutdown();
+
         if(themeObserver != null){
             themeObserver.destroy();
         }
@@ -160,6 +278,19 @@ public class SiteObserver implements Observer{
     }
 
 
+    /**
+     * Listener of site changes, e.g. the live reload channel of preview server.
+     */
+    public static interface Listener{
+        /**
+         * Called after the site rebuilt by file changes.
+         *
+         * @param urls the urls (with site root) of rendered pages and changed static files
+         * @param all true if all pages rendered, urls contains the changed static files only
+         */
+        void siteChanged(Collection<String> urls, boolean all);
+    }
+
     public static class ConfigChangedException extends Exception{
         private Result result;
 
@@ -172,25 +303,49 @@ public class SiteObserver implements Observer{
         }
     }
 
-    private class StaticFilesWatcher extends WatchableDirectory{
-        private File dir;
+    /**
+     * Copies or deletes the changed static files directly, without building site,
+     * unless the pages reference the assets by fingerprints or derivatives.
+     */
+    private class StaticFilesWatcher implements Watchable{
+        private final File dir;
+        private final Watchable watchable;
 
-        public StaticFilesWatcher(File directory) {
-            super(directory);
+        public StaticFilesWatcher(File directory, FileFilter fileFilter) {
+            this.dir = directory;
+            this.watchable = NioWatchableDirectory.create(directory, fileFilter);
         }
 
         @Override
-        public void onStart(FileAlterationObserver observer) {
-            this.dir = observer.getDirectory();
+        public void initialize() {
+            watchable.initialize();
         }
 
         @Override
-        public void onFileCreate(File file) {
-            onFileChange(file);
+        public Result check() {
+            Result result = watchable.check();
+            if(site.isAssetsReferencedByPages()){
+                //fingerprinted or derived outputs, published by the build
+                return result;
+            }
+            for(File file: result.getCreatedFiles()){
+                onFileChange(file);
+            }
+            for(File file: result.getUpdatedFiles()){
+                onFileChange(file);
+            }
+            for(File file: result.getDeletedFiles()){
+                onFileDelete(file);
+            }
+            return result;
         }
 
         @Override
-        public void onFileChange(File file) {
+        public void destroy() {
+            watchable.destroy();
+        }
+
+        private void onFileChange(File file) {
             SourceEntryLoader loader = site.getFactory().getSourceEntryLoader();
             SourceEntry sourceEntry = loader.buildSourceEntry(dir, file);
             StaticFileImpl staticFile = new StaticFileImpl(site, sourceEntry);
@@ -198,8 +353,7 @@ public class SiteObserver implements Observer{
             log.info("Copy static file: {} => {}", file, site.getDestination());
         }
 
-        @Override
-        public void onFileDelete(File file) {
+        private void onFileDelete(File file) {
             log.info("Static file deleted: {}", file);
             String filePath = file.getAbsolutePath();
             String dirPath = dir.getAbsolutePath();
@@ -208,7 +362,11 @@ public class SiteObserver implements Observer{
                 string = string.substring(1);
             }
             File destFile = new File(site.getDestination(), string);
-            if(destFile.exists()){
+            MemoryOutputStore memoryOutputStore = (MemoryOutputStore) site.get(MemoryOutputStore.KEY);
+            if(memoryOutputStore != null){
+                memoryOutputStore.remove(destFile);
+                log.info("Remove static file from memory: {}", destFile);
+            }else if(destFile.exists()){
                 FileUtils.deleteQuietly(destFile);
                 log.info("Delete static file: {}", destFile);
             }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.NoFrontMatterException;
+import org.opoo.press.Source;
+import org.opoo.press.SourceEntry;
+import org.opoo.press.SourceParser;
+import org.opoo.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The parsed sources of site kept in heap for the lifetime of site, so the
+ * rebuilds of preview parse the changed files only.
+ *
+ * <p>An entry is keyed by the absolute path of file and validated by the
+ * size and modified time of file. The files modified recently (being edited)
+ * also have the MD5 digest recorded on parsing: the entry is reused if the
+ * content is the same although the file is touched or saved again, and the
+ * file modified within the same timestamp granularity after parsing is not
+ * reused by mistake.</p>
+ *
+ * <p>The files without front-matter are pooled too, they are not parsed again
+ * to find out they are static files.</p>
+ *
+ * @author Alex Lin
+ */
+class SourcePool {
+    private static final Logger log = LoggerFactory.getLogger(SourcePool.class);
+    /**
+     * Modified times in this range before parsing may be not distinguishable
+     * from a later change, on file systems with coarse timestamps.
+     */
+    private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+    /**
+     * The digests are computed for the files modified in this period before parsing.
+     */
+    private static final long RECENT_MILLIS = 60 * 60 * 1000L;
+
+    //absolute path => entry
+    private final ConcurrentMap<String,Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private Set<String> seen = Collections.emptySet();
+
+    /**
+     * Creates a source parser which reuses the pooled sources of which files
+     * are not changed, and pools the parsed sources.
+     *
+     * @param parser the source parser
+     * @param changedFiles the files reported changed, validated by digest if recorded
+     * @return source parser
+     */
+    SourceParser createSourceParser(final SourceParser parser, Collection<File> changedFiles){
+        final Set<String> changedPaths = new HashSet<String>();
+        for(File file: changedFiles){
+            changedPaths.add(file.getAbsolutePath());
+        }
+        final Set<String> seen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.seen = seen;
+
+        return new SourceParser() {
+            @Override
+            public Source parse(SourceEntry sourceEntry) throws NoFrontMatterException {
+                String path = sourceEntry.getFile().getAbsolutePath();
+                seen.add(path);
+
+                Entry entry = entries.get(path);
+                if(entry != null && entry.isValid(sourceEntry, changedPaths.contains(path))){
+                    if(entry.source == null){
+                        throw new NoFrontMatterException(sourceEntry);
+                    }
+                    return entry.source;
+                }
+
+                log.debug("Parsing source: {}", path);
+                try {
+                    Source source = parser.parse(sourceEntry);
+                    entries.put(path, new Entry(sourceEntry, source));
+                    return source;
+                } catch (NoFrontMatterException e) {
+                    entries.put(path, new Entry(sourceEntry, null));
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Removes the entries of files not read by the last created parser, e.g.
+     * deleted files. Called after all sources read.
+     */
+    void evictUnseen(){
+        int size = entries.size();
+        entries.keySet().retainAll(seen);
+        log.debug("Source pool: {} entries, {} evicted.", entries.size(), size - entries.size());
+    }
+
+    void clear(){
+        entries.clear();
+    }
+
+    private static class Entry{
+        private final Source source;
+        private final long length;
+        private volatile long lastModified;
+        private final long parsedTime;
+        private final String digest;
+
+        Entry(SourceEntry sourceEntry, Source source) {
+            this.source = source;
+            this.length = sourceEntry.getLength();
+            this.lastModified = sourceEntry.getLastModified();
+            this.parsedTime = System.currentTimeMillis();
+            this.digest = parsedTime - lastModified < RECENT_MILLIS
+                    ? DigestUtils.md5Hex(sourceEntry.getFile()) : null;
+        }
+
+        boolean isValid(SourceEntry sourceEntry, boolean reported){
+            if(length != sourceEntry.getLength()){
+                return false;
+            }
+            boolean racy = lastModified + TIMESTAMP_GRANULARITY_MILLIS > parsedTime;
+            if(lastModified == sourceEntry.getLastModified() && !reported && !racy){
+                return true;
+            }
+            if(digest != null && digest.equals(DigestUtils.md5Hex(sourceEntry.getFile()))){
+                lastModified = sourceEntry.getLastModified();
+                return true;
+            }
+            return false;
+        }
+    }
+}
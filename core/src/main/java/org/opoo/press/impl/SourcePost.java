@@ -66,10 +66,17 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
         if (StringUtils.isNotBlank(excerpt)) {
             excerpted = true;
             setExcerpt(excerpt);
+        }
+        //otherwise extract excerpt from content after the content loaded.
+    }
+
+    @Override
+    protected void onContentLoaded(String content) {
+        if(!excerptable || excerpted){
             return;
         }
 
-        String content = getContent();
+        String excerpt;
         if (StringUtils.isBlank(content)) {
             log.debug("Content is empty, can not extract excerpt.");
             excerpt = "";
@@ -102,7 +109,7 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
     public void convert() {
         super.convert();
         if (excerptable) {
-            setExcerpt(getConverter().convert(getExcerpt()));
+            setExcerpt(getContentHolder().convert(getConverter(), getExcerpt(), "excerpt-converted"));
         }
     }
 
@@ -144,6 +151,7 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
      */
     @Override
     public String getExcerpt() {
+        loadContentIfExcerptRequired();
         return getContentHolder().getExcerpt();
     }
 
@@ -152,14 +160,25 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
     }
 
     public boolean isExcerptExtracted() {
+        loadContentIfExcerptRequired();
         return excerptExtracted;
     }
 
     @Override
     public boolean isExcerpted() {
+        loadContentIfExcerptRequired();
         return excerpted;
     }
 
+    /**
+     * The excerpt is extracted from content if not defined in front-matter.
+     */
+    private void loadContentIfExcerptRequired(){
+        if(excerptable && !excerpted){
+            loadContent();
+        }
+    }
+
     public boolean isExcerptable() {
         return excerptable;
     }
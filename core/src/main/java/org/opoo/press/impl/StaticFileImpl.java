@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 
 /**
  * @author Alex Lin
@@ -73,6 +74,13 @@ public class StaticFileImpl implements StaticFile {
 	 */
 	@Override
 	public File getOutputFile(File dest) {
+		AssetFingerprints fingerprints = site.get(AssetFingerprintProcessor.KEY);
+		if(fingerprints != null){
+			String path = fingerprints.getOutputPath(sourceEntry);
+			if(path != null){
+				return new File(dest, path);
+			}
+		}
 		String file = sourceEntry.getPath() + "/" + sourceEntry.getName(); 
 		return new File(dest, file);
 	}
@@ -83,6 +91,34 @@ public class StaticFileImpl implements StaticFile {
 	@Override
 	public void write(File dest) {
 		File target = getOutputFile(dest);
+		AssetFingerprints fingerprints = site.get(AssetFingerprintProcessor.KEY);
+		String content = fingerprints != null ? fingerprints.getRewrittenContent(sourceEntry) : null;
+
+		MemoryOutputStore memoryOutputStore = site.get(MemoryOutputStore.KEY);
+		if(memoryOutputStore != null){
+			if(content != null){
+				try {
+					memoryOutputStore.put(target, content.getBytes("UTF-8"));
+				} catch (UnsupportedEncodingException e) {
+					throw new RuntimeException(e);
+				}
+			}else{
+				memoryOutputStore.putFile(target, sourceEntry.getFile());
+			}
+			return;
+		}
+
+		if(content != null){
+			writeRewrittenContent(target, content);
+			return;
+		}
+
+		StaticFilePublisher publisher = site.get("staticFilePublisher");
+		if(publisher != null){
+			publisher.publish(sourceEntry, target);
+			writeGzipSidecar(target);
+			return;
+		}
 
 		if(target.exists() && target.length() == sourceEntry.getLength() 
 				&& target.lastModified() >= sourceEntry.getLastModified()){
@@ -102,5 +138,32 @@ public class StaticFileImpl implements StaticFile {
 			log.error("Copying static file error: " + target, e);
 			throw new RuntimeException(e);
 		}
+		writeGzipSidecar(target);
+	}
+
+	/**
+	 * Writes the stylesheet which references were rewritten to fingerprinted paths.
+	 */
+	private void writeRewrittenContent(File target, String content){
+		//fingerprinted by content, an existing target is up to date
+		if(target.exists() && target.lastModified() >= sourceEntry.getLastModified()){
+			writeGzipSidecar(target);
+			return;
+		}
+		try {
+			log.debug("Writing fingerprinted static file to " + target);
+			FileUtils.writeStringToFile(target, content, "UTF-8");
+		} catch (IOException e) {
+			log.error("Writing static file error: " + target, e);
+			throw new RuntimeException(e);
+		}
+		writeGzipSidecar(target);
+	}
+
+	private void writeGzipSidecar(File target){
+		GzipSidecars gzipSidecars = site.get("gzipSidecars");
+		if(gzipSidecars != null){
+			gzipSidecars.write(target, null);
+		}
 	}
 }
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.SiteConfig;
+import org.opoo.press.SourceEntry;
+import org.opoo.util.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes static files to the destination directory.
+ *
+ * <p>The publish mode is configured by <code>static_files_publish</code>:</p>
+ * <ul>
+ *     <li><code>copy</code> (default) - copy with <code>FileChannel.transferTo</code>.</li>
+ *     <li><code>link</code> - create a hard link to the source file, never modify the
+ *     published files in place in this mode.</li>
+ *     <li><code>reflink</code> - copy-on-write clone by <code>cp --reflink=always</code>,
+ *     e.g. on btrfs or XFS.</li>
+ * </ul>
+ * If the file system does not support the configured mode, files are copied.
+ * Cloning is probed by the first published file, all files are copied if it
+ * failed.
+ *
+ * <p>A record of each published file is persisted in the working directory. A
+ * file is published again only if the source changed, a source whose modified
+ * time changed but content not is detected by digest.</p>
+ *
+ * @author Alex Lin
+ */
+public class StaticFilePublisher {
+    private static final Logger log = LoggerFactory.getLogger(StaticFilePublisher.class);
+
+    public static enum Mode{
+        COPY, LINK, REFLINK
+    }
+
+    private final Mode mode;
+    private final RecordStore<Record> records;
+    private volatile boolean fallbackToCopy = false;
+    private volatile Boolean reflinkSupported;
+
+    public StaticFilePublisher(SiteConfig config, File working) {
+        String value = config.get("static_files_publish", "copy");
+        this.mode = parseMode(value);
+        this.records = new RecordStore<Record>(new File(working, ".staticFiles"));
+        if(mode != Mode.COPY){
+            log.info("Publishing static files by {}.", value);
+        }
+    }
+
+    static Mode parseMode(String value){
+        List<String> names = new ArrayList<String>();
+        for(Mode m: Mode.values()){
+            if(m.name().equalsIgnoreCase(value)){
+                return m;
+            }
+            names.add(m.name().toLowerCase());
+        }
+        throw new IllegalArgumentException("Invalid static_files_publish: '" + value + "', must be one of " + names);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Publishes the source file to target if changed.
+     *
+     * @param sourceEntry the source
+     * @param target the target file
+     * @return true if published, false if the target is up to date
+     */
+    public boolean publish(SourceEntry sourceEntry, File target){
+        String key = target.getPath();
+        Record record = records.get(key);
+
+        String digest = getDigestIfUnchanged(sourceEntry, target, record);
+        if(digest != null){
+            if(record == null || record.sourceLastModified != sourceEntry.getLastModified()
+                    || (digest.length() > 0 && !digest.equals(record.digest))){
+                records.put(key, new Record(sourceEntry, target.lastModified(), digest));
+            }
+            return false;
+        }
+
+        try {
+            File parentFile = target.getParentFile();
+            if(!parentFile.exists()){
+                parentFile.mkdirs();
+            }
+            //never write into an existing file, it may be a link of source
+            Files.deleteIfExists(target.toPath());
+
+            log.debug("Publishing static file to {}", target);
+            publish(sourceEntry.getFile(), target);
+        } catch (IOException e) {
+            log.error("Publishing static file error: " + target, e);
+            throw new RuntimeException(e);
+        }
+
+        records.put(key, new Record(sourceEntry, target.lastModified(), null));
+        return true;
+    }
+
+    /**
+     * @return digest (empty string if not computed) if the target is up to date, otherwise null.
+     */
+    private String getDigestIfUnchanged(SourceEntry sourceEntry, File target, Record record){
+        if(!target.exists() || target.length() != sourceEntry.getLength()){
+            return null;
+        }
+
+        //no record, e.g. the first build of this version
+        if(record == null){
+            return target.lastModified() >= sourceEntry.getLastModified() ? "" : null;
+        }
+
+        File source = sourceEntry.getFile();
+        //a link of source, the same content
+        if(mode == Mode.LINK && isSameFile(source, target)){
+            return "";
+        }
+
+        //target modified by others
+        if(target.lastModified() != record.targetLastModified){
+            return null;
+        }
+
+        if(record.sourceLastModified == sourceEntry.getLastModified() && record.sourceLength == sourceEntry.getLength()){
+            return record.digest == null ? "" : record.digest;
+        }
+
+        //source touched, compare contents
+        String digest = DigestUtils.md5Hex(source);
+        String previous = record.digest != null ? record.digest : DigestUtils.md5Hex(target);
+        if(digest.equals(previous)){
+            log.debug("Static file touched but not changed: {}", source);
+            return digest;
+        }
+        return null;
+    }
+
+    private static boolean isSameFile(File source, File target){
+        try {
+            return Files.isSameFile(source.toPath(), target.toPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void publish(File source, File target) throws IOException{
+        if(!fallbackToCopy){
+            if(mode == Mode.LINK){
+                try {
+                    Files.createLink(target.toPath(), source.toPath());
+                    return;
+                } catch (IOException e) {
+                    disableMode(e.getMessage());
+                } catch (UnsupportedOperationException e) {
+                    disableMode(e.getMessage());
+                }
+            }else if(mode == Mode.REFLINK){
+                if(clone(source, target)){
+                    target.setLastModified(source.lastModified());
+                    return;
+                }
+                Files.deleteIfExists(target.toPath());
+            }
+        }
+
+        copy(source, target);
+        target.setLastModified(source.lastModified());
+    }
+
+    /**
+     * Clones the file, cloning is probed by the first file and not tried any
+     * more if failed, <code>cp</code> is forked only once on the file systems
+     * without it.
+     */
+    private boolean clone(File source, File target) throws IOException{
+        if(reflinkSupported == null){
+            synchronized (this){
+                if(reflinkSupported == null){
+                    String error = reflink(source, target);
+                    reflinkSupported = error == null;
+                    if(error != null){
+                        disableMode(error);
+                    }
+                    return error == null;
+                }
+            }
+        }
+        return reflinkSupported && reflink(source, target) == null;
+    }
+
+    /**
+     * @return null if cloned, otherwise the error message
+     */
+    private String reflink(File source, File target) throws IOException{
+        Process process = new ProcessBuilder("cp", "--reflink=always", source.getAbsolutePath(), target.getAbsolutePath())
+                .redirectErrorStream(true).start();
+        try{
+            String output = IOUtils.toString(process.getInputStream());
+            if(process.waitFor() == 0){
+                return null;
+            }
+            log.debug("Cloning {} failed, copy instead: {}", source, output.trim());
+            return output.trim();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cloning " + source, e);
+        }finally{
+            IOUtils.closeQuietly(process.getInputStream());
+            IOUtils.closeQuietly(process.getOutputStream());
+            IOUtils.closeQuietly(process.getErrorStream());
+        }
+    }
+
+    private void disableMode(String reason){
+        if(!fallbackToCopy){
+            fallbackToCopy = true;
+            log.warn("Publishing static files by {} not supported ({}), copy instead.", mode, reason);
+        }
+    }
+
+    static void copy(File source, File target) throws IOException{
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try{
+            in = new FileInputStream(source);
+            out = new FileOutputStream(target);
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            long size = inChannel.size();
+            long position = 0;
+            while(position < size){
+                position += inChannel.transferTo(position, size - position, outChannel);
+            }
+        }finally{
+            IOUtils.closeQuietly(out);
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Removes the records of files which are not outputs of site any more.
+     *
+     * @param targets output files of current build
+     */
+    public void retain(Collection<File> targets){
+        List<String> keys = new ArrayList<String>();
+        for(File target: targets){
+            keys.add(target.getPath());
+        }
+        records.retain(keys);
+    }
+
+    /**
+     * Saves records of published files if changed.
+     */
+    public void save(){
+        records.save();
+    }
+
+    static class Record implements Serializable{
+        private static final long serialVersionUID = 2634120458093514876L;
+
+        private final long sourceLength;
+        private final long sourceLastModified;
+        private final long targetLastModified;
+        private final String digest;
+
+        Record(SourceEntry sourceEntry, long targetLastModified, String digest) {
+            this.sourceLength = sourceEntry.getLength();
+            this.sourceLastModified = sourceEntry.getLastModified();
+            this.targetLastModified = targetLastModified;
+            this.digest = (digest == null || digest.length() == 0) ? null : digest;
+        }
+    }
+}
@@ -26,10 +26,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -37,7 +39,7 @@ import java.util.Map;
  * @author Alex Lin
  * @since 1.2
  */
-public class ThemeImpl implements Theme{
+public class ThemeImpl implements Theme, Closeable{
 	public static final String THEME_CONFIGURATION_FILENAME = "theme.yml";
 	public static final String RESOURCE_BUILDERS_CONFIGURATION_FILENAME = "resource-builders.yml";
 	private static final Logger log = LoggerFactory.getLogger(ThemeImpl.class);
@@ -53,6 +55,7 @@ public class ThemeImpl implements Theme{
 	
 	private final SiteImpl site;
 	private List<ResourceBuilder> builders;
+	private Observer observer;
 
 	@SuppressWarnings("unchecked")
 	ThemeImpl(File path, SiteImpl site){
@@ -60,15 +63,7 @@ public class ThemeImpl implements Theme{
 		this.path = PathUtils.canonical(path);
 		
 		configFile = new File(path, THEME_CONFIGURATION_FILENAME);
-		FileInputStream stream = null;
-		try {
-			stream = new FileInputStream(configFile);
-			config = new Yaml().loadAs(stream, Map.class);
-		} catch (FileNotFoundException e) {
-			throw new IllegalArgumentException("Theme configuration file not found: " + configFile);
-		}finally{
-			IOUtils.closeQuietly(stream);
-		}
+		config = loadConfig();
 		
 		//
 		String sourceConfig = (String) config.get("source_dir");
@@ -95,7 +90,41 @@ public class ThemeImpl implements Theme{
 	public File getConfigFile(){
 		return configFile;
 	}
+
+	/**
+	 * Reads the theme configuration file.
+	 * @return the configuration in file, not applied to this theme
+	 */
+	@SuppressWarnings("unchecked")
+	Map<String,Object> loadConfig(){
+		FileInputStream stream = null;
+		try {
+			stream = new FileInputStream(configFile);
+			Map<String,Object> map = new Yaml().loadAs(stream, Map.class);
+			return map != null ? map : new HashMap<String,Object>();
+		} catch (FileNotFoundException e) {
+			throw new IllegalArgumentException("Theme configuration file not found: " + configFile);
+		}finally{
+			IOUtils.closeQuietly(stream);
+		}
+	}
+
+	Map<String,Object> getConfig(){
+		return config;
+	}
+
+	/**
+	 * @param config the reloaded configuration, the directories of theme are not changed
+	 */
+	void setConfig(Map<String,Object> config){
+		this.config = config;
+	}
 	
+	private synchronized List<ResourceBuilder> getResourceBuilders(){
+		initializeResourceBuilders();
+		return builders;
+	}
+
 	private void initializeResourceBuilders(){
 		if(builders == null){
 			builders = new ArrayList<ResourceBuilder>();
@@ -179,10 +208,10 @@ public class ThemeImpl implements Theme{
 			site.getProcessors().beforeBuildTheme(this);
 		}
 
-		initializeResourceBuilders();
-		if(!builders.isEmpty()){
+		List<ResourceBuilder> list = getResourceBuilders();
+		if(!list.isEmpty()){
 			try {
-				for (ResourceBuilder builder : builders) {
+				for (ResourceBuilder builder : list) {
 					builder.build();
 				}
 			}catch(RuntimeException e){
@@ -206,30 +235,50 @@ public class ThemeImpl implements Theme{
 	}
 
 
+	/**
+	 * The observer of current resource builders, a new observer is returned
+	 * after the builders closed and created again.
+	 */
 	@Override
-	public Observer getObserver() {
+	public synchronized Observer getObserver() {
 		initializeResourceBuilders();
 		if(builders.isEmpty()){
 			return null;
 		}
 
-		List<Observer> list = new ArrayList<Observer>();
-		for(ResourceBuilder builder: builders){
-			if(builder instanceof Observer){
-				list.add((Observer) builder);
+		if(observer == null){
+			List<Observer> list = new ArrayList<Observer>();
+			for(ResourceBuilder builder: builders){
+				if(builder instanceof Observer){
+					list.add((Observer) builder);
+				}
 			}
+			observer = new ObserversObserver(list);
 		}
+		return observer;
+	}
 
-		return new ObserversObserver(list);
+	/**
+	 * Closes the resource builders which hold resources, e.g. the compass runtime,
+	 * the builders are created again if used later.
+	 */
+	@Override
+	public synchronized void close() {
+		if(builders != null){
+			for(ResourceBuilder builder: builders){
+				if(builder instanceof Closeable){
+					IOUtils.closeQuietly((Closeable) builder);
+				}
+			}
+			builders = null;
+			observer = null;
+		}
 	}
 
 	@Override
 	public void clean() throws Exception {
-		initializeResourceBuilders();
-		if(!builders.isEmpty()){
-			for (ResourceBuilder builder : builders) {
-				builder.clean();
-			}
+		for (ResourceBuilder builder : getResourceBuilders()) {
+			builder.clean();
 		}
 	}
 }
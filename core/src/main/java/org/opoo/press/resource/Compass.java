@@ -16,6 +16,7 @@
 package org.opoo.press.resource;
 
 import org.apache.commons.io.FilenameUtils;
+import org.jruby.embed.LocalContextScope;
 import org.jruby.embed.ScriptingContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,46 +24,113 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Map;
 
 /**
+ * Compass compiler in a long-lived JRuby runtime.
+ *
+ * <p>One instance is kept by the compass builder of a theme, the runtime loads
+ * compass and the project configuration once, later compilations only run the
+ * compiler. The configuration is loaded again if the configuration file changed.
+ * The runtime must be terminated when the builder closed.</p>
+ *
  * @author Alex Lin
  *
  */
 class Compass{
 	private static final Logger log = LoggerFactory.getLogger(Compass.class);
+
 	private String path;
 	private String config;
-//	private ScriptingContainer container;
+	private File configFile;
+	private ScriptingContainer container;
+	private long configLastModified;
 	
 	Compass(File path, File configFile) {
 		this.path = FilenameUtils.separatorsToUnix(path.getAbsolutePath());
 		this.config = FilenameUtils.separatorsToUnix(configFile.getAbsolutePath());
+		this.configFile = configFile;
 	}
 
-	public void compile() {
-		runScriptlet(buildCompileScript());
+	public synchronized void compile() {
+		long start = System.currentTimeMillis();
+		String script = "Dir.chdir('" + path + "') do\n  Compass.compiler.run\nend";
+		log.debug(script);
+		getContainer().runScriptlet(script);
+		log.debug("Compass compiled in {} ms", System.currentTimeMillis() - start);
 	}
 
 	/**
-	 * Blocking method.
+	 * Compiles the specified sass files only.
+	 *
+	 * @param files sass files and their css files
 	 */
-	public void watch() {
-		runScriptlet(buildWatchScript());
+	public synchronized void compile(Map<File,File> files) {
+		long start = System.currentTimeMillis();
+		StringBuilder script = new StringBuilder();
+		script.append("Dir.chdir('").append(path).append("') do\n");
+		script.append("  compiler = Compass.compiler\n");
+		for(Map.Entry<File,File> entry: files.entrySet()){
+			entry.getValue().getParentFile().mkdirs();
+			script.append("  compiler.compile('").append(FilenameUtils.separatorsToUnix(entry.getKey().getAbsolutePath()))
+					.append("', '").append(FilenameUtils.separatorsToUnix(entry.getValue().getAbsolutePath())).append("')\n");
+		}
+		script.append("end");
+		log.debug(script.toString());
+		getContainer().runScriptlet(script.toString());
+		log.info("Compass compiled {} file(s) in {} ms", files.size(), System.currentTimeMillis() - start);
 	}
 
-	private void runScriptlet(String script) {
+	/**
+	 * Blocking method, runs in a new runtime.
+	 */
+	public void watch() {
+		String script = buildWatchScript();
 		log.debug(script);
-		new ScriptingContainer().runScriptlet(script);
+		new ScriptingContainer(LocalContextScope.SINGLETHREAD).runScriptlet(script);
 	}
 
-	/*
-	public void close(){
+	/**
+	 * @param name property name of compass configuration, e.g. <code>sass_dir</code>
+	 * @return the value as string, or null if not set
+	 */
+	public synchronized String getConfigurationProperty(String name){
+		Object value = getContainer().runScriptlet("v = Compass.configuration." + name + "; v.nil? ? nil : v.to_s");
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Terminates the runtime, it is created again if used later.
+	 */
+	public synchronized void terminate(){
 		if(container != null){
-			Ruby runtime = container.getProvider().getRuntime();
-			runtime.tearDown(false);
-			log.debug("Tear down JRuby runtime: {}", runtime);
+			container.terminate();
+			container = null;
+			log.debug("Compass runtime terminated: {}", config);
 		}
-	}*/
+	}
+
+	private ScriptingContainer getContainer(){
+		if(container == null){
+			long start = System.currentTimeMillis();
+			container = new ScriptingContainer(LocalContextScope.SINGLETHREAD);
+			StringWriter raw = new StringWriter();
+			PrintWriter script = new PrintWriter(raw);
+			buildBasicScript(script);
+			script.flush();
+			log.debug(raw.toString());
+			container.runScriptlet(raw.toString());
+			configLastModified = configFile.lastModified();
+			log.info("Compass runtime initialized in {} ms", System.currentTimeMillis() - start);
+		}else if(configFile.lastModified() != configLastModified){
+			log.debug("Compass configuration file changed, reload: {}", configFile);
+			container.runScriptlet("Compass.reset_configuration!\n"
+					+ "Compass.add_project_configuration '" + config + "'\n"
+					+ "Compass.configure_sass_plugin!");
+			configLastModified = configFile.lastModified();
+		}
+		return container;
+	}
 	
 	private void buildBasicScript(PrintWriter script) {
 		//script.println("require 'rubygems'");
@@ -74,21 +142,6 @@ class Compass{
 		script.println("Compass.configure_sass_plugin!");
 	}
 
-	private String buildCompileScript() {
-		StringWriter raw = new StringWriter();
-		PrintWriter script = new PrintWriter(raw);
-
-		buildBasicScript(script);
-
-		script.println("Dir.chdir('" + path + "') do ");
-		// script.println("Dir.chdir(File.dirname('" + config + "')) do ");
-		script.println("  Compass.compiler.run");
-		script.println("end");
-		script.flush();
-
-		return raw.toString();
-	}
-
 	private String buildWatchScript() {
 		StringWriter raw = new StringWriter();
 		PrintWriter script = new PrintWriter(raw);
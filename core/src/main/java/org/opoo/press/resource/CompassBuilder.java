@@ -19,47 +19,50 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.monitor.FileEntry;
-import org.jruby.embed.LocalVariableBehavior;
-import org.jruby.embed.PathType;
-import org.jruby.embed.ScriptingContainer;
-import org.jruby.embed.internal.BiVariableMap;
 import org.opoo.press.Observer;
 import org.opoo.press.ResourceBuilder;
+import org.opoo.press.file.NioWatchableDirectory;
 import org.opoo.press.file.Result;
 import org.opoo.press.file.Watchable;
-import org.opoo.press.file.WatchableDirectory;
 import org.opoo.util.MapUtils;
 import org.opoo.util.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 
 /**
  * @author Alex Lin
  *
  */
-public class CompassBuilder implements ResourceBuilder, Observer {
+public class CompassBuilder implements ResourceBuilder, Observer, Closeable {
 	private static final Logger log = LoggerFactory.getLogger(CompassBuilder.class);
 	public static final String DEFAULT_CONFIG_FILE_NAME = "config.rb";
 	public static final String CACHE_FILE_SUFFIX = ".cache";
+	private static final String[] CACHED_PROPERTIES = {"sass_dir", "css_dir", "images_dir",
+			"javascripts_dir", "fonts_dir", "http_path"};
 	
 	private File themePath;
 	private File configFile;
+	private Properties cache;
+	private SassDependencies dependencies;
 
 	private File sassPath;
 	private File cssPath;
 	private Watchable sassWatchable;
 	private FileEntry configFileEntry;
+	private Compass compass;
 
 	@Override
 	public void init(File resourceBaseDirectory, Map<String,Object> config){
@@ -74,62 +77,65 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 	}
 
 	protected boolean shouldBuild(){
+		return !getStaleMainSassFiles().isEmpty();
+	}
+
+	/**
+	 * @return main sass files which css file not exists or older than the configuration
+	 * file, the sass file or any file it imports.
+	 */
+	private List<File> getStaleMainSassFiles(){
 		prepareSassAndCssPaths();
+		updateDependencies();
 
 		long configFileLastModified = configFile.lastModified();
-
-		List<File> partialSassFiles = PathUtils.listFiles(sassPath, new PartialSassFilenameFilter(), true);
-		File lastModifiedPartialSassFile = getLastModifiedFile(partialSassFiles);
-		long partialSassFileLastModified = lastModifiedPartialSassFile.lastModified();
-//		log.debug("Partial sass file last modified: {}", new Date(partialSassFileLastModified));
-
-		int sassPathLength = sassPath.getPath().length() + 1;
-		List<File> mainSassFiles = PathUtils.listFiles(sassPath, new MainSassFilenameFilter(), true);
-		for(File sassFile: mainSassFiles){
-			String relativeSassFilePath = sassFile.getPath().substring(sassPathLength);
-//			log.debug("Checking sass file: {}", relativeSassFilePath);
-
-			String cssFilePath = FilenameUtils.removeExtension(relativeSassFilePath) + ".css";
-			File cssFile = new File(cssPath, cssFilePath);
+		List<File> staleFiles = new ArrayList<File>();
+		for(File sassFile: listMainSassFiles()){
+			File cssFile = getCssFile(sassFile);
 			log.debug("Checking {} => {}", sassFile, cssFile);
 			
 			if(!cssFile.exists()){
 				log.debug("css file '{}' not eixsts, need compile.", cssFile);
-				return true;
+				staleFiles.add(sassFile);
+				continue;
 			}
 			
 			long cssFileLastModified = cssFile.lastModified();
 			
 			if(configFileLastModified > cssFileLastModified){
 				log.debug("css file '{}' is older than compass configuration file, need compile.", cssFile);
-				return true;
-			}
-			
-			if(sassFile.lastModified() > cssFileLastModified){
-				log.debug("css file '{}' is older than sass file '{}', need compile.", cssFile, sassFile);
-				return true;
+				staleFiles.add(sassFile);
+				continue;
 			}
 
-			if(partialSassFileLastModified > cssFileLastModified){
-				log.debug("css file '{}' is older than sass partial '{}', need compile.", cssFile, lastModifiedPartialSassFile);
-				return true;
+			for(File dependency: dependencies.getDependencies(sassFile)){
+				if(dependency.lastModified() > cssFileLastModified){
+					log.debug("css file '{}' is older than sass file '{}', need compile.", cssFile, dependency);
+					staleFiles.add(sassFile);
+					break;
+				}
 			}
 		}
 		
-		return false;
+		return staleFiles;
 	}
 
+	private List<File> listMainSassFiles(){
+		return PathUtils.listFiles(sassPath, new MainSassFilenameFilter(), true);
+	}
 
-	private File getLastModifiedFile(List<File> files) {
-		File lastModifiedFile = null;
-		for(File f: files){
-			if(lastModifiedFile == null){
-				lastModifiedFile = f;
-			}else if(f.lastModified() > lastModifiedFile.lastModified()){
-				lastModifiedFile = f;
-			}
+	private File getCssFile(File sassFile){
+		String relativeSassFilePath = sassFile.getPath().substring(sassPath.getPath().length() + 1);
+		String cssFilePath = FilenameUtils.removeExtension(relativeSassFilePath) + ".css";
+		return new File(cssPath, cssFilePath);
+	}
+
+	private void updateDependencies(){
+		dependencies.update();
+		if(dependencies.isChanged()){
+			dependencies.store(cache);
+			saveCache(cache, getCacheFile());
 		}
-		return lastModifiedFile;
 	}
 
 	private void prepareSassAndCssPaths(){
@@ -138,7 +144,6 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 		}
 
 		File cacheFile = getCacheFile();//new File(themePath, configFile.getName() + CACHE_FILE_SUFFIX);
-		Properties cache = null;
 		if(!cacheFile.exists() || configFile.lastModified() > cacheFile.lastModified()){
 			log.debug("Cache file not exists or older than configuration file, create cache now: {}", cacheFile);
 			cache = createCache(configFile, cacheFile);
@@ -151,6 +156,9 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 
 		sassPath = new File(themePath, sassDir);
 		cssPath = new File(themePath, cssDir);
+
+		dependencies = new SassDependencies(sassPath);
+		dependencies.load(cache);
 	}
 
 	private File getCacheFile(){
@@ -162,22 +170,21 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 	}
 
 	private Properties createCache(File configFile, File cacheFile) {
-		ScriptingContainer container = new ScriptingContainer(LocalVariableBehavior.PERSISTENT);
-		container.runScriptlet(PathType.ABSOLUTE, configFile.getAbsolutePath());
-		
-		@SuppressWarnings("unchecked") 
-		BiVariableMap<String, Object> varMap = container.getVarMap();
-		@SuppressWarnings("unchecked") 
-		Set<Map.Entry<String,Object>> entrySet = varMap.entrySet();
-
+		//read from the warm runtime, which is used to compile later
+		Compass compass = getCompass();
 		Properties props = new Properties();
-		for(Map.Entry<String, Object> en: entrySet){
-			if(en.getValue() instanceof String){
-				props.setProperty(en.getKey(), (String)en.getValue());
+		for(String name: CACHED_PROPERTIES){
+			String value = compass.getConfigurationProperty(name);
+			if(value != null){
+				props.setProperty(name, value);
 			}
 		}
 		
-		//save
+		saveCache(props, cacheFile);
+		return props;
+	}
+
+	private void saveCache(Properties props, File cacheFile){
 		FileOutputStream outputStream = null;
 		try {
 			outputStream = new FileOutputStream(cacheFile);
@@ -187,8 +194,6 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 		}finally{
 			IOUtils.closeQuietly(outputStream);
 		}
-		
-		return props;
 	}
 
 	private Properties loadCache(File cacheFile) {
@@ -217,7 +222,7 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 		configFileEntry.refresh(configFile);
 
 		prepareSassAndCssPaths();
-		sassWatchable = new WatchableDirectory(sassPath, new SassFileFilter());
+		sassWatchable = NioWatchableDirectory.create(sassPath, new SassFileFilter());
 		sassWatchable.initialize();
 	}
 
@@ -235,7 +240,23 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 		Result result = sassWatchable.check();
 		if(!result.isEmpty()){
 			log.debug("File(s) changed:\n{}", result.toString());
-			buildInternal();
+			List<File> changedFiles = new ArrayList<File>();
+			changedFiles.addAll(result.getUpdatedFiles());
+			changedFiles.addAll(result.getCreatedFiles());
+			changedFiles.addAll(result.getDeletedFiles());
+			if(!result.getCreatedFiles().isEmpty()){
+				//a new file may resolve an import of unchanged files
+				dependencies.clear();
+			}
+			updateDependencies();
+
+			List<File> mainSassFiles = listMainSassFiles();
+			List<File> affectedFiles = dependencies.getAffectedFiles(mainSassFiles, changedFiles);
+			if(!affectedFiles.isEmpty()){
+				compile(affectedFiles);
+			}else{
+				log.debug("No main sass file affected by changed file(s).");
+			}
 		}else{
 			log.debug("Nothing to compile - all css files are up to date");
 		}
@@ -247,6 +268,18 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 	@Override
 	public void destroy() throws Exception {
 		sassWatchable.destroy();
+		close();
+	}
+
+	/**
+	 * Terminates the compass runtime.
+	 */
+	@Override
+	public synchronized void close() {
+		if(compass != null){
+			compass.terminate();
+			compass = null;
+		}
 	}
 
 	/* (non-Javadoc)
@@ -254,8 +287,9 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 	 */
 	@Override
 	public void build() throws Exception {
-		if(shouldBuild()){
-			buildInternal();
+		List<File> staleFiles = getStaleMainSassFiles();
+		if(!staleFiles.isEmpty()){
+			compile(staleFiles);
 		}else{
 			log.debug("Nothing to compile - all css files are up to date");
 		}
@@ -284,8 +318,26 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 		}
 	}
 
+	/**
+	 * @return the warm compass runtime of this builder
+	 */
+	private synchronized Compass getCompass(){
+		if(compass == null){
+			compass = new Compass(themePath, configFile);
+		}
+		return compass;
+	}
+
 	private void buildInternal(){
-		new Compass(themePath, configFile).compile();
+		getCompass().compile();
+	}
+
+	private void compile(List<File> mainSassFiles){
+		Map<File,File> files = new LinkedHashMap<File, File>();
+		for(File sassFile: mainSassFiles){
+			files.put(sassFile, getCssFile(sassFile));
+		}
+		getCompass().compile(files);
 	}
 
 	public static class MainSassFilenameFilter implements FilenameFilter{
@@ -314,6 +366,15 @@ public class CompassBuilder implements ResourceBuilder, Observer {
 		}
 	}
 
+	public static class SassFilenameFilter implements FilenameFilter{
+		@Override
+		public boolean accept(File dir, String name) {
+			char firstChar = name.charAt(0);
+			return firstChar != '.' && firstChar != '#'
+					&& (name.endsWith(".scss") || name.endsWith(".sass"));
+		}
+	}
+
 	public static class SassFileFilter implements FileFilter{
 		@Override
 		public boolean accept(File file) {
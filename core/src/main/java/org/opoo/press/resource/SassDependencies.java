@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.resource;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.opoo.util.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The <code>@import</code> graph of the sass files in a sass directory.
+ *
+ * <p>Each file is parsed again only if its modified time changed. The graph is
+ * stored in the compass configuration cache of theme, as properties like
+ * <code>sass.import.screen.scss=1420070400000;_base.scss,partials/_layout.scss</code>.</p>
+ *
+ * @author Alex Lin
+ */
+class SassDependencies {
+	private static final Logger log = LoggerFactory.getLogger(SassDependencies.class);
+	static final String PROPERTY_PREFIX = "sass.import.";
+
+	private static final Pattern IMPORT = Pattern.compile("@import\\s+([^;\\n]+)");
+
+	private final File sassPath;
+	private final Map<String,Node> nodes = new HashMap<String, Node>();
+	private boolean changed = false;
+
+	SassDependencies(File sassPath) {
+		this.sassPath = sassPath;
+	}
+
+	/**
+	 * Loads the graph from the cache properties.
+	 */
+	void load(Properties cache){
+		for(String name: cache.stringPropertyNames()){
+			if(!name.startsWith(PROPERTY_PREFIX)){
+				continue;
+			}
+			String value = cache.getProperty(name);
+			int i = value.indexOf(';');
+			if(i == -1){
+				continue;
+			}
+			Node node = new Node(Long.parseLong(value.substring(0, i)));
+			String imports = value.substring(i + 1);
+			if(imports.length() > 0){
+				for(String path: StringUtils.split(imports, ',')){
+					node.imports.add(path);
+				}
+			}
+			nodes.put(name.substring(PROPERTY_PREFIX.length()), node);
+		}
+	}
+
+	/**
+	 * Stores the graph to the cache properties.
+	 */
+	void store(Properties cache){
+		for(String name: new ArrayList<String>(cache.stringPropertyNames())){
+			if(name.startsWith(PROPERTY_PREFIX)){
+				cache.remove(name);
+			}
+		}
+		for(Map.Entry<String,Node> entry: nodes.entrySet()){
+			Node node = entry.getValue();
+			cache.setProperty(PROPERTY_PREFIX + entry.getKey(),
+					node.lastModified + ";" + StringUtils.join(node.imports, ','));
+		}
+		changed = false;
+	}
+
+	/**
+	 * @return true if the graph changed since loaded or stored
+	 */
+	boolean isChanged(){
+		return changed;
+	}
+
+	/**
+	 * Clears the graph, all files will be parsed in next update.
+	 */
+	void clear(){
+		nodes.clear();
+		changed = true;
+	}
+
+	/**
+	 * Parses the new and modified sass files, removes the deleted.
+	 */
+	void update(){
+		Set<String> existing = new HashSet<String>();
+		for(File file: PathUtils.listFiles(sassPath, new CompassBuilder.SassFilenameFilter(), true)){
+			String path = relativize(file);
+			existing.add(path);
+			Node node = nodes.get(path);
+			if(node == null || node.lastModified != file.lastModified()){
+				nodes.put(path, parse(file));
+				changed = true;
+			}
+		}
+		if(nodes.keySet().retainAll(existing)){
+			changed = true;
+		}
+	}
+
+	/**
+	 * @param file sass file
+	 * @return the file and all files it imports directly or indirectly
+	 */
+	Set<File> getDependencies(File file){
+		Set<File> result = new LinkedHashSet<File>();
+		Deque<String> queue = new ArrayDeque<String>();
+		Set<String> visited = new HashSet<String>();
+		queue.add(relativize(file));
+		while(!queue.isEmpty()){
+			String path = queue.remove();
+			if(!visited.add(path)){
+				continue;
+			}
+			result.add(new File(sassPath, path));
+			Node node = nodes.get(path);
+			if(node != null){
+				queue.addAll(node.imports);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param mainFiles main sass files
+	 * @param changedFiles changed sass files
+	 * @return the main files which are changed or import any changed file
+	 */
+	List<File> getAffectedFiles(Collection<File> mainFiles, Collection<File> changedFiles){
+		Set<File> changed = new HashSet<File>();
+		for(File file: changedFiles){
+			changed.add(new File(sassPath, relativize(file)));
+		}
+		List<File> result = new ArrayList<File>();
+		for(File mainFile: mainFiles){
+			for(File dependency: getDependencies(mainFile)){
+				if(changed.contains(dependency)){
+					result.add(mainFile);
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	private Node parse(File file){
+		Node node = new Node(file.lastModified());
+		String content;
+		try {
+			content = FileUtils.readFileToString(file, "UTF-8");
+		} catch (IOException e) {
+			log.warn("Read sass file error: {}", file);
+			return node;
+		}
+
+		File dir = file.getParentFile();
+		Matcher m = IMPORT.matcher(stripComments(content));
+		while(m.find()){
+			for(String name: m.group(1).split(",")){
+				name = name.trim();
+				if(name.length() > 1 && (name.charAt(0) == '"' || name.charAt(0) == '\'')){
+					name = name.substring(1, name.length() - 1);
+				}
+				//css imports, imports with media queries
+				if(name.length() == 0 || name.endsWith(".css") || name.contains("url(") || name.contains("://")
+						|| name.contains(" ")){
+					continue;
+				}
+				File imported = resolve(dir, name);
+				if(imported == null){
+					imported = resolve(sassPath, name);
+				}
+				//imports of compass frameworks are not in the graph
+				if(imported != null){
+					node.imports.add(relativize(imported));
+				}
+			}
+		}
+		return node;
+	}
+
+	private static String stripComments(String content){
+		return content.replaceAll("(?s)/\\*.*?\\*/", "").replaceAll("(?m)^\\s*//.*$", "");
+	}
+
+	private static File resolve(File dir, String name){
+		String parent = FilenameUtils.getPath(name);
+		String baseName = FilenameUtils.getName(name);
+		String[] candidates;
+		if(baseName.endsWith(".scss") || baseName.endsWith(".sass")){
+			candidates = new String[]{baseName, "_" + baseName};
+		}else{
+			candidates = new String[]{baseName + ".scss", "_" + baseName + ".scss",
+					baseName + ".sass", "_" + baseName + ".sass"};
+		}
+		for(String candidate: candidates){
+			File file = new File(dir, parent + candidate);
+			if(file.isFile()){
+				return file;
+			}
+		}
+		return null;
+	}
+
+	private String relativize(File file){
+		String base = FilenameUtils.normalize(sassPath.getAbsolutePath(), true);
+		String path = FilenameUtils.normalize(file.getAbsolutePath(), true);
+		if(path != null && path.startsWith(base + "/")){
+			return path.substring(base.length() + 1);
+		}
+		return path;
+	}
+
+	private static class Node{
+		private final long lastModified;
+		private final Set<String> imports = new LinkedHashSet<String>();
+
+		Node(long lastModified) {
+			this.lastModified = lastModified;
+		}
+	}
+}
@@ -15,11 +15,18 @@
  */
 package org.opoo.press.resource;
 
-import com.yahoo.platform.yui.compressor.YUICompressor;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.yahoo.platform.yui.compressor.CssCompressor;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.opoo.press.Observer;
 import org.opoo.press.ResourceBuilder;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+import org.opoo.util.DigestUtils;
 import org.opoo.util.MapUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,10 +34,21 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Alex Lin
@@ -47,6 +65,19 @@ public class YUIBuilder implements ResourceBuilder, Observer{
     public boolean disableOptimizations = false;
     public boolean mergeOnly = false;
 
+    /**
+     * Minified contents shared by all builders, keyed by content digest and options.
+     */
+    private static final Cache<String,String> FRAGMENTS = CacheBuilder.newBuilder()
+    		.maximumWeight(16 * 1024 * 1024)
+    		.weigher(new Weigher<String, String>() {
+    			@Override
+    			public int weigh(String key, String value) {
+    				return value.length();
+    			}
+    		}).build();
+    private static ExecutorService executorService;
+
     private String type;
     private List<File> inputFiles;
     private File outputFile;
@@ -113,45 +144,52 @@ public class YUIBuilder implements ResourceBuilder, Observer{
     }
     
     protected void compress(File inputFile, File outputFile) throws Exception{
-    	compress(inputFile.toString(), outputFile.toString());
+		log.info("Compressing file '{}' to '{}'", inputFile, outputFile);
+		String fragment = minify(inputFile);
+		FileUtils.writeStringToFile(outputFile, fragment, charset);
     }
     
-	protected void compress(String input, String output) throws Exception{
-		log.info("Compressing file '{}' to '{}'", input, output);
-		Args args = createCompressArgs().add(input).add("-o").add(output);
+	/**
+	 * Minifies the input file in process, the result is cached by the digest of
+	 * the content and the options.
+	 *
+	 * @param inputFile input file
+	 * @return minified content
+	 */
+	protected String minify(File inputFile) throws Exception{
+		String content = FileUtils.readFileToString(inputFile, charset);
+		//for min.css or min.js, copy only
+		if(inputFile.getName().endsWith(".min." + type)){
+			return content;
+		}
 
-		log.debug("args: {}", args);
-		YUICompressor.main(args.toArray());
-		//Bootstrap.main(args.toArray());
+		String key = DigestUtils.md5Hex(content) + getOptionsKey();
+		String fragment = FRAGMENTS.getIfPresent(key);
+		if(fragment != null){
+			log.debug("Minified content of '{}' found in cache.", inputFile);
+			return fragment;
+		}
+
+		log.debug("Compressing file '{}'", inputFile);
+		StringWriter out = new StringWriter(content.length());
+		if(type.equalsIgnoreCase("js")){
+			ErrorReporter reporter = new LoggingErrorReporter(inputFile);
+			JavaScriptCompressor compressor = new JavaScriptCompressor(new StringReader(content), reporter);
+			compressor.compress(out, lineBreak, !nomunge, verbose, preserveSemi, disableOptimizations);
+		}else{
+			CssCompressor compressor = new CssCompressor(new StringReader(content));
+			compressor.compress(out, lineBreak);
+		}
+		fragment = out.toString();
+		FRAGMENTS.put(key, fragment);
+		return fragment;
 	}
-	
-	private Args createCompressArgs(){
-    	Args args = new Args();
-    	args.add("--type");
-    	args.add(type);
-    	args.add("--line-break");
-    	args.add(String.valueOf(lineBreak));
-    	args.add("--charset");
-    	args.add(charset);
-    	
-    	if(verbose){
-    		args.add("--verbose");
-    	}
-    	if(type.equalsIgnoreCase("js")) {
-    		if(nomunge){
-    			args.add("--nomunge");
-	    	}
-	    	if(preserveSemi){
-	    		args.add("--preserve-semi");
-	    	}
-	    	if(disableOptimizations){
-	    		args.add("--disable-optimizations");
-	    	}
-    	}
-    	
-    	return args;
-    }
-	
+
+	private String getOptionsKey(){
+		return "-" + type + "-" + lineBreak + (nomunge ? "n" : "") + (preserveSemi ? "s" : "")
+				+ (disableOptimizations ? "d" : "");
+	}
+
 	protected boolean shouldBuild(){
 		//if output file not exists
 		if(!outputFile.exists()){
@@ -170,76 +208,92 @@ public class YUIBuilder implements ResourceBuilder, Observer{
 	}
 	
 	protected void buildInternal() throws Exception{
-		if(outputFile.exists()){
-    		FileUtils.deleteQuietly(outputFile);
-    	}else{
-			outputFile.getParentFile().mkdirs();
-		}
-		
-		if(inputFiles.size() == 1){
-			if(mergeOnly){
+		if(mergeOnly){
+			if(outputFile.exists()){
+				FileUtils.deleteQuietly(outputFile);
+			}else{
+				outputFile.getParentFile().mkdirs();
+			}
+			if(inputFiles.size() == 1){
 				//copy input file to output file only
 				FileUtils.copyFile(inputFiles.get(0), outputFile);
 			}else{
-//				compress(inputFiles.get(0), outputFile);
-				compressIfRequired(inputFiles.get(0), outputFile);
+				mergeFiles(inputFiles, outputFile);
 			}
 			return;
 		}
-		
-		if(mergeOnly){
-			mergeFiles(inputFiles, outputFile, false);
-		}else{
-			//multiple files， compress and merge
-	    	List<File> tempOutputFiles = new ArrayList<File>();
-	    	for(File inputFile: inputFiles){
-	    		File tempOutputFile = File.createTempFile("op-YUIBuilder-", "." + type);
-	    		tempOutputFiles.add(tempOutputFile);
 
-				compressIfRequired(inputFile, tempOutputFile);
-	    	}
-	    	
-//	    	for(File tempOutputFile: tempOutputFiles){
-//	    		List<String> lines = FileUtils.readLines(tempOutputFile, charset);
-//	    		FileUtils.deleteQuietly(tempOutputFile);
-//	    		FileUtils.writeLines(outputFile, charset, lines, true);
-//	    		log.debug("Merge file '{}' to '{}'", tempOutputFile, outputFile);
-//	    	}
-	    	
-	    	mergeFiles(tempOutputFiles, outputFile, true);
+		if(inputFiles.size() == 1){
+			compress(inputFiles.get(0), outputFile);
+			return;
 		}
-	}
 
-	private void compressIfRequired(File inputFile, File outputFile) throws Exception{
-		//for min.css or min.js, copy only
-		if(inputFile.getName().endsWith(".min." + type)){
-			FileUtils.copyFile(inputFile, outputFile);
-		}else {
-			try {
-				compress(inputFile, outputFile);
-			} catch (Exception e) {
-				FileUtils.deleteQuietly(outputFile);
-				throw e;
+		//compress inputs in parallel, then write fragments in order
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for(final File inputFile: inputFiles){
+			futures.add(getExecutorService().submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return minify(inputFile);
+				}
+			}));
+		}
+
+		List<String> fragments = new ArrayList<String>();
+		try{
+			for(Future<String> future: futures){
+				fragments.add(future.get());
 			}
+		}catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		}
+
+		log.info("Compressing {} file(s) to '{}'", inputFiles.size(), outputFile);
+		outputFile.getParentFile().mkdirs();
+		Writer writer = null;
+		try{
+			writer = new OutputStreamWriter(new FileOutputStream(outputFile), charset);
+			for(String fragment: fragments){
+				writer.write(fragment);
+			}
+			writer.flush();
+		}catch(IOException e){
+			IOUtils.closeQuietly(writer);
+			FileUtils.deleteQuietly(outputFile);
+			throw e;
+		}finally{
+			IOUtils.closeQuietly(writer);
 		}
 	}
-	
-	private static void mergeFiles(List<File> inputFiles, File outputFile, boolean deleleInputFiles) throws IOException{
+
+	private static void mergeFiles(List<File> inputFiles, File outputFile) throws IOException{
 		FileOutputStream out = new FileOutputStream(outputFile, true);
 		try{
 			for(File inputFile: inputFiles){
 				FileUtils.copyFile(inputFile, out);
 	    		log.debug("Merge file '{}' to '{}'", inputFile, outputFile);
-	    		if(deleleInputFiles){
-	    			FileUtils.deleteQuietly(inputFile);
-	    			log.debug("Delete file '{}'", inputFile);
-	    		}
 	    	}
 		}finally{
 			IOUtils.closeQuietly(out);
 		}
 	}
 
+	private static synchronized ExecutorService getExecutorService(){
+		if(executorService == null){
+			executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "yui-compressor-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executorService;
+	}
+
 	@Override
 	public void build() throws Exception{
 		if(shouldBuild()){
@@ -256,27 +310,6 @@ public class YUIBuilder implements ResourceBuilder, Observer{
 		}
 	}
 
-	public static class Args{
-		private List<String> list = new ArrayList<String>();
-		public Args add(String arg){
-			list.add(arg);
-			return this;
-		}
-		
-		public Args add(Object o){
-			list.add(o.toString());
-			return this;
-		}
-		
-		public String[] toArray(){
-			return list.toArray(new String[list.size()]);
-		}
-		
-		public String toString(){
-			return list.toString();
-		}
-	}
-
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Observer#initialize()
 	 */
@@ -292,6 +325,30 @@ public class YUIBuilder implements ResourceBuilder, Observer{
 		build();
 	}
 
+	private static class LoggingErrorReporter implements ErrorReporter{
+		private final File inputFile;
+
+		LoggingErrorReporter(File inputFile) {
+			this.inputFile = inputFile;
+		}
+
+		@Override
+		public void warning(String message, String sourceName, int line, String lineSource, int lineOffset) {
+			log.warn("{}:{}:{} {}", inputFile, line, lineOffset, message);
+		}
+
+		@Override
+		public void error(String message, String sourceName, int line, String lineSource, int lineOffset) {
+			log.error("{}:{}:{} {}", inputFile, line, lineOffset, message);
+		}
+
+		@Override
+		public EvaluatorException runtimeError(String message, String sourceName, int line, String lineSource, int lineOffset) {
+			error(message, sourceName, line, lineSource, lineOffset);
+			return new EvaluatorException(inputFile + ": " + message, sourceName, line, lineSource, lineOffset);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Observer#destroy()
 	 */
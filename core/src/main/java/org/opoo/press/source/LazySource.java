@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.source;
+
+import org.opoo.press.Source;
+import org.opoo.press.SourceEntry;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A source which only holds the front-matter, the content is read and
+ * decoded on first {@link #getContent()}.
+ *
+ * @author Alex Lin
+ */
+public class LazySource implements Source, Serializable {
+	private static final long serialVersionUID = 6052918406236437312L;
+
+	private final SourceEntry sourceEntry;
+	private final Map<String, Object> frontMatter;
+	private transient volatile String content;
+
+	public LazySource(SourceEntry sourceEntry, Map<String, Object> frontMatter) {
+		this.sourceEntry = sourceEntry;
+		this.frontMatter = frontMatter;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opoo.press.Source#getSourceEntry()
+	 */
+	@Override
+	public SourceEntry getSourceEntry() {
+		return sourceEntry;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opoo.press.Source#getMeta()
+	 */
+	@Override
+	public Map<String, Object> getMeta() {
+		return frontMatter;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opoo.press.Source#getContent()
+	 */
+	@Override
+	public String getContent() {
+		String c = content;
+		if(c == null){
+			synchronized (this){
+				c = content;
+				if(c == null){
+					c = SourceParserImpl.readContent(sourceEntry.getFile());
+					content = c;
+				}
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * @return true if the content has been read.
+	 */
+	public boolean isContentLoaded(){
+		return content != null;
+	}
+}
@@ -15,24 +15,65 @@
  */
 package org.opoo.press.source;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.monitor.FileEntry;
+import org.opoo.press.Config;
+import org.opoo.press.ConfigAware;
 import org.opoo.press.SourceEntry;
 import org.opoo.press.SourceEntryLoader;
 import org.opoo.press.SourceEntryVisitor;
+import org.opoo.press.task.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * @author Alex Lin
  *
  */
-public class SourceEntryLoaderImpl implements SourceEntryLoader {
+public class SourceEntryLoaderImpl implements SourceEntryLoader, ConfigAware {
+	private static final Logger log = LoggerFactory.getLogger(SourceEntryLoaderImpl.class);
+
+	/**
+	 * Files of a directory are visited in batches of this size.
+	 */
+	private static final int BATCH_SIZE = 64;
+
+	private int threads = TaskExecutor.DEFAULT_THREADS;
+	/**
+	 * Shared by all walks of the site, created on first parallel walk. The idle
+	 * workers of fork/join pool are daemon threads and terminate themselves.
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * Uses the same thread count as the build, see {@link TaskExecutor#getThreads(Config)}.
+	 */
+	@Override
+	public void setConfig(Config config) {
+		this.threads = TaskExecutor.getThreads(config);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.opoo.press.SourceEntryLoader#loadSourceEntries(java.io.File, java.io.FileFilter)
 	 */
@@ -56,20 +97,170 @@ public class SourceEntryLoaderImpl implements SourceEntryLoader {
 		}
 	}
 
+	/**
+	 * Walks the source tree with NIO, the attributes of each file are read in one
+	 * call. If more than one thread configured, directories and large batches of
+	 * files are visited in separated fork/join tasks, so the visitor MUST be thread
+	 * safe in that case.
+	 *
+	 * @see org.opoo.press.SourceEntryLoader#walkSourceTree(java.io.File, java.io.FileFilter, org.opoo.press.SourceEntryVisitor)
+	 */
 	@Override
 	public void walkSourceTree(File sourceDirectory, FileFilter fileFilter, SourceEntryVisitor sourceEntryVisitor){
-		walkSourceTree(sourceDirectory, fileFilter, sourceEntryVisitor, sourceDirectory, "");
+		if(!sourceDirectory.isDirectory()){
+			log.debug("Source directory not exists: {}", sourceDirectory);
+			return;
+		}
+
+		if(threads <= 1){
+			walkSourceTreeInCurrentThread(sourceDirectory, fileFilter, sourceEntryVisitor);
+			return;
+		}
+
+		getPool().invoke(new DirectoryTask(sourceDirectory, fileFilter, sourceEntryVisitor,
+				sourceDirectory.toPath(), ""));
 	}
 
-	private void walkSourceTree(File sourceDirectory, FileFilter fileFilter,
-								SourceEntryVisitor sourceEntryVisitor, File parent, String path){
-		File[] files = parent.listFiles(fileFilter);
-		for(File file: files){
-			if(file.isFile()){
-				SourceEntryImpl sourceEntry = new SourceEntryImpl(file, sourceDirectory, path);
-				sourceEntryVisitor.visit(sourceEntry);
-			}else if(file.isDirectory()){
-				walkSourceTree(sourceDirectory, fileFilter, sourceEntryVisitor, file, "/" + file.getName());
+	private synchronized ForkJoinPool getPool(){
+		if(pool == null){
+			pool = new ForkJoinPool(threads);
+		}
+		return pool;
+	}
+
+	private void walkSourceTreeInCurrentThread(final File sourceDirectory, final FileFilter fileFilter,
+								final SourceEntryVisitor sourceEntryVisitor){
+		final Path root = sourceDirectory.toPath();
+		try {
+			Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+					new SimpleFileVisitor<Path>(){
+				private final Deque<String> paths = new ArrayDeque<String>();
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					if(paths.isEmpty()){
+						paths.push("");
+						return FileVisitResult.CONTINUE;
+					}
+					if(!fileFilter.accept(dir.toFile())){
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					paths.push(paths.peek() + "/" + dir.getFileName());
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if(attrs.isRegularFile()){
+						File f = file.toFile();
+						if(fileFilter.accept(f)){
+							sourceEntryVisitor.visit(new SourceEntryImpl(f, sourceDirectory, paths.peek(), attrs));
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+					paths.pop();
+					return super.postVisitDirectory(dir, exc);
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException("Walk source tree error: " + sourceDirectory, e);
+		}
+	}
+
+	/**
+	 * Lists a directory, visits its files in batches and forks a task for each
+	 * sub directory.
+	 */
+	private static class DirectoryTask extends RecursiveAction{
+		private static final long serialVersionUID = 8475137437402958571L;
+
+		private final File sourceDirectory;
+		private final FileFilter fileFilter;
+		private final SourceEntryVisitor visitor;
+		private final Path dir;
+		private final String path;
+
+		DirectoryTask(File sourceDirectory, FileFilter fileFilter, SourceEntryVisitor visitor, Path dir, String path) {
+			this.sourceDirectory = sourceDirectory;
+			this.fileFilter = fileFilter;
+			this.visitor = visitor;
+			this.dir = dir;
+			this.path = path;
+		}
+
+		@Override
+		protected void compute() {
+			List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+			List<SourceEntry> batch = new ArrayList<SourceEntry>();
+
+			DirectoryStream<Path> stream = null;
+			try {
+				stream = Files.newDirectoryStream(dir);
+				for(Path child: stream){
+					File file = child.toFile();
+					if(!fileFilter.accept(file)){
+						continue;
+					}
+					BasicFileAttributes attrs;
+					try{
+						attrs = Files.readAttributes(child, BasicFileAttributes.class);
+					}catch(NoSuchFileException e){
+						log.debug("File deleted while walking: {}", child);
+						continue;
+					}
+
+					if(attrs.isRegularFile()){
+						batch.add(new SourceEntryImpl(file, sourceDirectory, path, attrs));
+						if(batch.size() >= BATCH_SIZE){
+							tasks.add(fork(new FilesTask(batch, visitor)));
+							batch = new ArrayList<SourceEntry>();
+						}
+					}else if(attrs.isDirectory()){
+						tasks.add(fork(new DirectoryTask(sourceDirectory, fileFilter, visitor,
+								child, path + "/" + file.getName())));
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Walk source tree error: " + dir, e);
+			} finally {
+				IOUtils.closeQuietly(stream);
+			}
+
+			//visit the last batch in current thread
+			for(SourceEntry sourceEntry: batch){
+				visitor.visit(sourceEntry);
+			}
+
+			for(RecursiveAction task: tasks){
+				task.join();
+			}
+		}
+
+		private static RecursiveAction fork(RecursiveAction task){
+			task.fork();
+			return task;
+		}
+	}
+
+	private static class FilesTask extends RecursiveAction{
+		private static final long serialVersionUID = -2049728135906170283L;
+
+		private final List<SourceEntry> sourceEntries;
+		private final SourceEntryVisitor visitor;
+
+		FilesTask(List<SourceEntry> sourceEntries, SourceEntryVisitor visitor) {
+			this.sourceEntries = sourceEntries;
+			this.visitor = visitor;
+		}
+
+		@Override
+		protected void compute() {
+			for(SourceEntry sourceEntry: sourceEntries){
+				visitor.visit(sourceEntry);
 			}
 		}
 	}
@@ -145,6 +336,14 @@ public class SourceEntryLoaderImpl implements SourceEntryLoader {
 			this(file, sourceDirectory, (parent == null) ? "" : parent.getPath() + "/" + parent.getName());
 		}
 
+		private SourceEntryImpl(File file, File sourceDirectory, String path, BasicFileAttributes attrs){
+			this.file = file;
+			this.sourceDirectory = sourceDirectory;
+			this.path = (path == null) ? "" : path;
+			this.lastModified = attrs.lastModifiedTime().toMillis();
+			this.length = attrs.size();
+		}
+
 		private SourceEntryImpl(File file, File sourceDirectory, String path){
 			if(!file.isFile() || !file.exists()){
 				throw new IllegalArgumentException("It's not a file or not exists: " + file);
@@ -16,7 +16,6 @@
 package org.opoo.press.source;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.LineIterator;
 import org.opoo.press.NoFrontMatterException;
 import org.opoo.press.Source;
 import org.opoo.press.SourceEntry;
@@ -25,103 +24,301 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
+ * Parses the YAML front-matter header only, the content is decoded lazily
+ * by {@link LazySource#getContent()}.
+ *
+ * <p>The header is read into a reusable per-thread buffer and the
+ * <code>---</code> delimiter lines are located by scanning bytes, so the
+ * content of the file is never read while parsing. The header is scanned
+ * again when the content is read, the file may have changed since.</p>
+ *
  * @author Alex Lin
  *
  */
 public class SourceParserImpl implements SourceParser {
 	private static final Logger log = LoggerFactory.getLogger(SourceParserImpl.class);
-//	private Yaml yaml = new Yaml();
-	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] TRIPLE_DASHED_LINE = Source.TRIPLE_DASHED_LINE.getBytes(UTF_8);
+
+	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+	/**
+	 * Buffers larger than this size are not kept for reusing.
+	 */
+	private static final int MAX_REUSABLE_BUFFER_SIZE = 256 * 1024;
+
+	//yaml is not thread safe, so one instance per thread
+	private static final ThreadLocal<Yaml> YAML = new ThreadLocal<Yaml>(){
+		@Override
+		protected Yaml initialValue() {
+			return new Yaml();
+		}
+	};
+
+	private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>(){
+		@Override
+		protected byte[] initialValue() {
+			return new byte[INITIAL_BUFFER_SIZE];
+		}
+	};
+
 	/* (non-Javadoc)
 	 * @see org.opoo.press.SourceParser#parse(org.opoo.press.SourceEntry)
 	 */
 	@Override
 	public Source parse(SourceEntry sourceEntry) throws NoFrontMatterException {
-		List<String> metaLines = new ArrayList<String>();
-		List<String> contentLines = new ArrayList<String>();
-		InputStream stream = null;
-		List<String> currentList = metaLines;
+		File file = sourceEntry.getFile();
+		Header header;
 		try {
-			stream = new FileInputStream(sourceEntry.getFile());
-			LineIterator iterator = IOUtils.lineIterator(stream, "UTF-8");
-
-			if(!iterator.hasNext()){
-				throw new RuntimeException("File not content: " + sourceEntry.getFile());
-			}
-			
-			String line = iterator.next();
-			if(!isFrontMatterStartLine(line, sourceEntry)){
-				log.debug("Maybe a static file: " + sourceEntry.getFile());
-				throw new NoFrontMatterException(sourceEntry);
-			}
-			
-			boolean hasFrontMatterEndLine = false;
-			//process headers
-			while(iterator.hasNext()){
-				line = iterator.next();
-				if(isFrontMatterEndLine(line)){
-					hasFrontMatterEndLine = true;
-					currentList = contentLines;
-					continue;
-				}
-				currentList.add(line);
-			}
-			
-			if(!hasFrontMatterEndLine){
-				log.debug("Maybe a static file: " + sourceEntry.getFile());
-				throw new NoFrontMatterException(sourceEntry);
-			}
+			header = readHeader(file);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
+		}
+
+		if(header == null){
+			log.debug("Maybe a static file: " + file);
+			throw new NoFrontMatterException(sourceEntry);
+		}
+
+		@SuppressWarnings("unchecked")
+		Map<String, Object> map = (Map<String, Object>) YAML.get().load(header.frontMatter);
+		if(map == null){
+			map = new LinkedHashMap<String, Object>();
+		}
+
+		return createSource(sourceEntry, map);
+	}
+
+	protected Source createSource(SourceEntry sourceEntry, Map<String,Object> map){
+		return new LazySource(sourceEntry, map);
+	}
+
+	/**
+	 * Reads the front-matter header of the file.
+	 *
+	 * @param file the source file
+	 * @return header, or null if the file has no front-matter header.
+	 * @throws IOException
+	 */
+	static Header readHeader(File file) throws IOException{
+		FileInputStream stream = null;
+		try{
+			stream = new FileInputStream(file);
+			FileChannel channel = stream.getChannel();
+			long fileLength = channel.size();
+			if(fileLength == 0){
+				throw new RuntimeException("File not content: " + file);
+			}
+
+			HeaderScanner scanner = new HeaderScanner(channel);
+			try {
+				return scanner.scan(file, fileLength);
+			}finally{
+				scanner.release();
+			}
 		}finally{
 			IOUtils.closeQuietly(stream);
 		}
-		
-		StringWriter metaWriter = new StringWriter();
-		StringWriter contentWriter = new StringWriter();
-		try {
-			IOUtils.writeLines(metaLines, null, metaWriter);
-			IOUtils.writeLines(contentLines, null, contentWriter);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+	}
+
+	/**
+	 * Reads and decodes the content of the source file. The lines of content
+	 * are joined by the line separator of system.
+	 *
+	 * @param file the source file
+	 * @return the content
+	 */
+	static String readContent(File file){
+		FileInputStream stream = null;
+		try{
+			stream = new FileInputStream(file);
+			FileChannel channel = stream.getChannel();
+			HeaderScanner scanner = new HeaderScanner(channel);
+			try {
+				Header header = scanner.scan(file, channel.size());
+				if(header == null){
+					throw new IllegalStateException("Front-matter header removed since parsed: " + file);
+				}
+				return normalizeLineEndings(scanner.readContent(header));
+			}finally{
+				scanner.release();
+			}
+		}catch (IOException e){
+			throw new RuntimeException("Read content error: " + file, e);
 		}finally{
-			IOUtils.closeQuietly(contentWriter);
-			IOUtils.closeQuietly(metaWriter);
+			IOUtils.closeQuietly(stream);
 		}
-		
-		@SuppressWarnings("unchecked")
-		Map<String, Object> map = (Map<String, Object>) new Yaml().load(metaWriter.toString());
-		String content = contentWriter.toString();
-		
-		return new SimpleSource(sourceEntry, map, content);
 	}
 
-	protected Source createSource(SourceEntry sourceEntry, Map<String,Object> map, String content){
-		return new SimpleSource(sourceEntry, map, content);
+	/**
+	 * Ends each line with the line separator of system, '\r\n', '\r' and the
+	 * missing line end of last line included.
+	 */
+	static String normalizeLineEndings(String content){
+		int length = content.length();
+		StringBuilder sb = new StringBuilder(length + IOUtils.LINE_SEPARATOR.length());
+		int start = 0;
+		while(start < length){
+			int end = start;
+			char c = 0;
+			for(; end < length; end++){
+				c = content.charAt(end);
+				if(c == '\n' || c == '\r'){
+					break;
+				}
+			}
+			sb.append(content, start, end).append(IOUtils.LINE_SEPARATOR);
+			if(c == '\r' && end + 1 < length && content.charAt(end + 1) == '\n'){
+				end++;
+			}
+			start = end + 1;
+		}
+		return sb.toString();
 	}
-	
-	private static boolean isFrontMatterStartLine(String line, SourceEntry sourceEntry){
-		if( Source.TRIPLE_DASHED_LINE.equals(line)){
+
+	static class Header{
+		final String frontMatter;
+		final long contentOffset;
+		final long contentLength;
+
+		Header(String frontMatter, long contentOffset, long contentLength) {
+			this.frontMatter = frontMatter;
+			this.contentOffset = contentOffset;
+			this.contentLength = contentLength;
+		}
+	}
+
+	/**
+	 * Scans the head of file for the front-matter delimiter lines, reads more
+	 * bytes only when the end delimiter line is not found yet.
+	 */
+	private static class HeaderScanner{
+		private final FileChannel channel;
+		private byte[] buf;
+		private int count;
+		private boolean eof;
+
+		HeaderScanner(FileChannel channel) {
+			this.channel = channel;
+			this.buf = BUFFER.get();
+		}
+
+		Header scan(File file, long fileLength) throws IOException{
+			fill();
+
+			int pos = 0;
+			//UTF-8 BOM
+			if(count >= 3 && buf[0] == (byte) 0xEF && buf[1] == (byte) 0xBB && buf[2] == (byte) 0xBF){
+				log.debug("UTF-8 with BOM file: " + file);
+				pos = 3;
+			}
+
+			int lineEnd = findLineEnd(pos);
+			if(!isTripleDashedLine(pos, lineEnd)){
+				return null;
+			}
+
+			int frontMatterStart = next(lineEnd);
+			int lineStart = frontMatterStart;
+			while(lineStart < count){
+				lineEnd = findLineEnd(lineStart);
+				if(isTripleDashedLine(lineStart, lineEnd)){
+					String frontMatter = new String(buf, frontMatterStart, lineStart - frontMatterStart, UTF_8);
+					long contentOffset = next(lineEnd);
+					return new Header(frontMatter, contentOffset, fileLength - contentOffset);
+				}
+				lineStart = next(lineEnd);
+			}
+			return null;
+		}
+
+		/**
+		 * @return index of the '\n' ending the line, or <code>count</code> if end of file reached.
+		 */
+		private int findLineEnd(int from) throws IOException{
+			int i = from;
+			while(true){
+				for(; i < count; i++){
+					if(buf[i] == '\n'){
+						return i;
+					}
+				}
+				if(eof){
+					return count;
+				}
+				fill();
+			}
+		}
+
+		/**
+		 * Reads the content located by the scanned header, the bytes already
+		 * in buffer are not read again.
+		 */
+		String readContent(Header header) throws IOException{
+			if(header.contentLength <= 0){
+				return "";
+			}
+			byte[] bytes = new byte[(int) header.contentLength];
+			int buffered = Math.min(bytes.length, Math.max(0, count - (int) header.contentOffset));
+			System.arraycopy(buf, (int) header.contentOffset, bytes, 0, buffered);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, buffered, bytes.length - buffered);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer) < 0){
+					break;
+				}
+			}
+			return new String(bytes, 0, buffer.position(), UTF_8);
+		}
+
+		private int next(int lineEnd){
+			return lineEnd < count ? lineEnd + 1 : count;
+		}
+
+		private boolean isTripleDashedLine(int start, int end){
+			if(end > start && buf[end - 1] == '\r'){
+				end--;
+			}
+			if(end - start != TRIPLE_DASHED_LINE.length){
+				return false;
+			}
+			for(int i = 0 ; i < TRIPLE_DASHED_LINE.length ; i++){
+				if(buf[start + i] != TRIPLE_DASHED_LINE[i]){
+					return false;
+				}
+			}
 			return true;
 		}
-		if(line.length() == 4){
-			if(65279 == line.charAt(0) && Source.TRIPLE_DASHED_LINE.equals(line.substring(1))){
-				log.debug("UTF-8 with BOM file: " + sourceEntry.getFile());
-				return true; 
+
+		private void fill() throws IOException{
+			if(eof){
+				return;
+			}
+			if(count == buf.length){
+				byte[] bigger = new byte[buf.length * 2];
+				System.arraycopy(buf, 0, bigger, 0, count);
+				buf = bigger;
+			}
+			int n = channel.read(ByteBuffer.wrap(buf, count, buf.length - count));
+			if(n < 0){
+				eof = true;
+			}else{
+				count += n;
+			}
+		}
+
+		void release(){
+			if(buf.length <= MAX_REUSABLE_BUFFER_SIZE){
+				BUFFER.set(buf);
 			}
 		}
-		return false;
-	}
-	private static boolean isFrontMatterEndLine(String line){
-		return Source.TRIPLE_DASHED_LINE.equals(line);
 	}
 }
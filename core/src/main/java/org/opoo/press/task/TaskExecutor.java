@@ -15,6 +15,7 @@
  */
 package org.opoo.press.task;
 
+import org.opoo.press.Config;
 import org.opoo.press.SiteConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,14 +45,7 @@ public class TaskExecutor {
 	private ExecutorService executorService;
 	
 	public TaskExecutor(SiteConfig config) {
-		//thread count
-		int threadsCount = Integer.parseInt(System.getProperty("threads", "-1"));
-		if(threadsCount <= 0){
-			threadsCount = config.get("threads", DEFAULT_THREADS);
-		}
-		if(threadsCount <= 0){
-			threadsCount = DEFAULT_THREADS;
-		}
+		int threadsCount = getThreads(config);
 		if(threadsCount > 1){
 			executorService = Executors.newFixedThreadPool(threadsCount);
 			log.info("Executing build in threads: " + threadsCount);
@@ -60,6 +54,24 @@ public class TaskExecutor {
 		}
 	}
 	
+	/**
+	 * The thread count of build, from system property <code>threads</code> or
+	 * the <code>threads</code> option.
+	 *
+	 * @param config the site configuration
+	 * @return the thread count, at least 1
+	 */
+	public static int getThreads(Config config){
+		int threadsCount = Integer.parseInt(System.getProperty("threads", "-1"));
+		if(threadsCount <= 0){
+			threadsCount = config.get("threads", DEFAULT_THREADS);
+		}
+		if(threadsCount <= 0){
+			threadsCount = DEFAULT_THREADS;
+		}
+		return threadsCount;
+	}
+
 	public void run(Runnable task){
 		if(executorService == null){
 			task.run();
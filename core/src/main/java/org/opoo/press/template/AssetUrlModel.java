@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.template;
+
+import freemarker.template.TemplateMethodModel;
+import freemarker.template.TemplateModelException;
+import org.opoo.press.Named;
+import org.opoo.press.Site;
+import org.opoo.press.SiteAware;
+import org.opoo.press.impl.AssetFingerprintProcessor;
+import org.opoo.press.impl.AssetFingerprints;
+
+import java.util.List;
+
+/**
+ * Usage: ${asset_url('/stylesheets/screen.css')}
+ *
+ * <p>Returns the url of the fingerprinted asset with site root, or the url of
+ * the original path if asset fingerprint is not enabled.</p>
+ *
+ * @author Alex Lin
+ */
+public class AssetUrlModel implements TemplateMethodModel, Named, SiteAware {
+	private Site site;
+
+	@Override
+	public Object exec(@SuppressWarnings("rawtypes") List arguments) throws TemplateModelException {
+		if(arguments == null || arguments.isEmpty()){
+			return "";
+		}
+		String path = (String) arguments.get(0);
+		if(!path.startsWith("/")){
+			path = "/" + path;
+		}
+		AssetFingerprints fingerprints = site.get(AssetFingerprintProcessor.KEY);
+		if(fingerprints != null){
+			path = fingerprints.getPath(path);
+		}
+		String root = site.getRoot();
+		return root != null ? root + path : path;
+	}
+
+	@Override
+	public String getName() {
+		return "asset_url";
+	}
+
+	@Override
+	public void setSite(Site site) {
+		this.site = site;
+	}
+}
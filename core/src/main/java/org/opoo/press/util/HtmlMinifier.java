@@ -0,0 +1,418 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A single pass HTML minifier.
+ *
+ * <p>Collapses whitespace in text, drops whitespace between block level tags,
+ * strips comments (except conditional comments) and removes quotes of attribute
+ * values where HTML allows. The content of <code>pre</code>, <code>textarea</code>,
+ * <code>script</code> and <code>style</code> elements and of any element with a
+ * SyntaxHighlighter <code>brush:</code> class is copied unchanged.</p>
+ *
+ * <p>Instances are immutable and thread safe.</p>
+ *
+ * @author Alex Lin
+ */
+public class HtmlMinifier {
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<String>(Arrays.asList("script", "style"));
+    private static final Set<String> PRESERVED_ELEMENTS = new HashSet<String>(Arrays.asList("pre", "textarea"));
+    private static final Set<String> BLOCK_ELEMENTS = new HashSet<String>(Arrays.asList(
+            "html", "head", "body", "title", "meta", "link", "base", "script", "style", "noscript",
+            "div", "p", "ul", "ol", "li", "dl", "dt", "dd", "table", "thead", "tbody", "tfoot", "tr", "td", "th",
+            "caption", "colgroup", "col", "section", "article", "aside", "header", "footer", "nav", "main",
+            "figure", "figcaption", "blockquote", "pre", "form", "fieldset", "legend", "hr", "br",
+            "h1", "h2", "h3", "h4", "h5", "h6", "address", "details", "summary", "optgroup", "source",
+            "!doctype"));
+
+    private final boolean removeComments;
+    private final boolean removeOptionalQuotes;
+
+    public HtmlMinifier() {
+        this(true, true);
+    }
+
+    public HtmlMinifier(boolean removeComments, boolean removeOptionalQuotes) {
+        this.removeComments = removeComments;
+        this.removeOptionalQuotes = removeOptionalQuotes;
+    }
+
+    public String minify(String html){
+        if(html == null || html.length() == 0){
+            return html;
+        }
+        return new Tokenizer(html).run();
+    }
+
+    private class Tokenizer{
+        private final String in;
+        private final int length;
+        private final StringBuilder out;
+        private int pos = 0;
+        //name of last tag written, lower case, with '/' prefix for end tag
+        private String lastTag = null;
+
+        Tokenizer(String in) {
+            this.in = in;
+            this.length = in.length();
+            this.out = new StringBuilder(length);
+        }
+
+        String run(){
+            while(pos < length){
+                char c = in.charAt(pos);
+                if(c == '<'){
+                    if(in.startsWith("<!--", pos)){
+                        comment();
+                    }else if(isTagStart(pos)){
+                        tag();
+                    }else if(pos + 1 < length && (in.charAt(pos + 1) == '!' || in.charAt(pos + 1) == '?')){
+                        //doctype, CDATA or processing instruction
+                        int end = in.indexOf('>', pos);
+                        end = end == -1 ? length : end + 1;
+                        out.append(in, pos, end);
+                        lastTag = "!doctype";
+                        pos = end;
+                    }else{
+                        out.append(c);
+                        pos++;
+                        lastTag = null;
+                    }
+                }else{
+                    text();
+                }
+            }
+            return out.toString();
+        }
+
+        private void text(){
+            int start = pos;
+            boolean whitespaceOnly = true;
+            boolean pendingSpace = false;
+            StringBuilder sb = new StringBuilder();
+            while(pos < length && in.charAt(pos) != '<'){
+                char c = in.charAt(pos++);
+                if(isWhitespace(c)){
+                    pendingSpace = true;
+                }else{
+                    if(pendingSpace){
+                        sb.append(' ');
+                        pendingSpace = false;
+                    }
+                    whitespaceOnly = false;
+                    sb.append(c);
+                }
+            }
+            if(pendingSpace){
+                sb.append(' ');
+            }
+
+            if(whitespaceOnly){
+                //whitespace between tags
+                if(isBlock(lastTag) || isBlock(peekTagName()) || start == 0 || pos >= length){
+                    return;
+                }
+                out.append(' ');
+                return;
+            }
+
+            //leading or trailing space next to a block tag is not rendered
+            int from = 0;
+            int to = sb.length();
+            if(sb.charAt(0) == ' ' && (isBlock(lastTag) || start == 0)){
+                from = 1;
+            }
+            if(to > from && sb.charAt(to - 1) == ' ' && (isBlock(peekTagName()) || pos >= length)){
+                to--;
+            }
+            out.append(sb, from, to);
+            lastTag = null;
+        }
+
+        private void comment(){
+            int end = in.indexOf("-->", pos + 4);
+            end = end == -1 ? length : end + 3;
+            //keep conditional comments and comments starting with '!'
+            if(!removeComments || in.startsWith("<!--[if", pos) || in.startsWith("<!--<![endif]", pos)
+                    || in.startsWith("<!--!", pos)){
+                out.append(in, pos, end);
+                pos = end;
+                return;
+            }
+            pos = end;
+            //the whitespace on both sides of removed comment collapses into one space
+            if(out.length() > 0 && out.charAt(out.length() - 1) == ' '){
+                skipWhitespace();
+            }
+        }
+
+        private void tag(){
+            int start = pos;
+            pos++;
+            boolean endTag = false;
+            if(in.charAt(pos) == '/'){
+                endTag = true;
+                pos++;
+            }
+            int nameStart = pos;
+            while(pos < length && isNameChar(in.charAt(pos))){
+                pos++;
+            }
+            String name = in.substring(nameStart, pos).toLowerCase();
+
+            out.append('<');
+            if(endTag){
+                out.append('/');
+            }
+            out.append(in, nameStart, pos);
+
+            boolean brush = false;
+            boolean lastValueUnquoted = false;
+            //attributes
+            while(pos < length){
+                skipWhitespace();
+                if(pos >= length){
+                    break;
+                }
+                char c = in.charAt(pos);
+                if(c == '>'){
+                    out.append('>');
+                    pos++;
+                    break;
+                }
+                if(c == '/' && pos + 1 < length && in.charAt(pos + 1) == '>'){
+                    //'/' after an unquoted value is a part of the value
+                    out.append(lastValueUnquoted ? " />" : "/>");
+                    pos += 2;
+                    break;
+                }
+
+                int attrStart = pos;
+                while(pos < length && !isWhitespace(in.charAt(pos)) && "=>".indexOf(in.charAt(pos)) == -1
+                        && !(in.charAt(pos) == '/' && pos + 1 < length && in.charAt(pos + 1) == '>')){
+                    pos++;
+                }
+                if(pos == attrStart){
+                    //stray character
+                    out.append(' ').append(in.charAt(pos++));
+                    continue;
+                }
+                String attrName = in.substring(attrStart, pos);
+                out.append(' ').append(attrName);
+
+                int save = pos;
+                skipWhitespace();
+                if(pos < length && in.charAt(pos) == '='){
+                    pos++;
+                    skipWhitespace();
+                    String value = attributeValue();
+                    if(value == null){
+                        break;
+                    }
+                    if("class".equalsIgnoreCase(attrName) && value.contains("brush:")){
+                        brush = true;
+                    }
+                    out.append('=');
+                    lastValueUnquoted = appendAttributeValue(value);
+                }else{
+                    pos = save;
+                    lastValueUnquoted = false;
+                }
+            }
+
+            if(pos > length){
+                pos = length;
+            }
+
+            lastTag = endTag ? "/" + name : name;
+
+            if(!endTag){
+                if(RAW_TEXT_ELEMENTS.contains(name)){
+                    copyUntilEndTag(name, false);
+                }else if(PRESERVED_ELEMENTS.contains(name) || brush){
+                    copyUntilEndTag(name, true);
+                }
+            }
+            if(start == pos){
+                pos++;
+            }
+        }
+
+        /**
+         * @return the unquoted value, or null if the tag is not closed.
+         */
+        private String attributeValue(){
+            if(pos >= length){
+                return null;
+            }
+            char quote = in.charAt(pos);
+            if(quote == '"' || quote == '\''){
+                int end = in.indexOf(quote, pos + 1);
+                if(end == -1){
+                    pos = length;
+                    return null;
+                }
+                String value = in.substring(pos + 1, end);
+                pos = end + 1;
+                return value;
+            }
+            int start = pos;
+            while(pos < length && !isWhitespace(in.charAt(pos)) && in.charAt(pos) != '>'){
+                pos++;
+            }
+            return in.substring(start, pos);
+        }
+
+        /**
+         * @return true if the value is written without quotes
+         */
+        private boolean appendAttributeValue(String value){
+            if(removeOptionalQuotes && canUnquote(value)){
+                out.append(value);
+                return true;
+            }else if(value.indexOf('"') == -1){
+                out.append('"').append(value).append('"');
+            }else{
+                out.append('\'').append(value).append('\'');
+            }
+            return false;
+        }
+
+        /**
+         * Copies the content and the end tag of the element unchanged.
+         *
+         * @param name element name
+         * @param nested count nested elements of the same name
+         */
+        private void copyUntilEndTag(String name, boolean nested){
+            int depth = 1;
+            int i = pos;
+            while(i < length){
+                int lt = in.indexOf('<', i);
+                if(lt == -1){
+                    i = length;
+                    break;
+                }
+                if(startsWithTag(lt + 1, "/" + name)){
+                    depth--;
+                    if(depth == 0){
+                        int end = in.indexOf('>', lt);
+                        i = end == -1 ? length : end + 1;
+                        break;
+                    }
+                }else if(nested && startsWithTag(lt + 1, name)){
+                    depth++;
+                }
+                i = lt + 1;
+            }
+            out.append(in, pos, i);
+            pos = i;
+            lastTag = "/" + name;
+        }
+
+        private boolean startsWithTag(int index, String name){
+            int end = index + name.length();
+            if(end > length || !in.regionMatches(true, index, name, 0, name.length())){
+                return false;
+            }
+            return end == length || !isNameChar(in.charAt(end));
+        }
+
+        /**
+         * @return true if a start tag or an end tag begins at index, otherwise
+         * the '&lt;' is text, e.g. <code>1 &lt; 2</code>
+         */
+        private boolean isTagStart(int index){
+            if(index + 1 < length && isNameStart(in.charAt(index + 1))){
+                return true;
+            }
+            return index + 2 < length && in.charAt(index + 1) == '/' && isNameStart(in.charAt(index + 2));
+        }
+
+        /**
+         * @return the name of next tag, with '/' prefix for end tag, or null if
+         * no tag follows.
+         */
+        private String peekTagName(){
+            if(pos >= length || in.charAt(pos) != '<'){
+                return null;
+            }
+            int i = pos + 1;
+            boolean endTag = false;
+            if(i < length && in.charAt(i) == '/'){
+                endTag = true;
+                i++;
+            }
+            if(i < length && in.charAt(i) == '!'){
+                return in.startsWith("<!--", pos) ? null : "!doctype";
+            }
+            if(!isTagStart(pos)){
+                return null;
+            }
+            int start = i;
+            while(i < length && isNameChar(in.charAt(i))){
+                i++;
+            }
+            String name = in.substring(start, i).toLowerCase();
+            return endTag ? "/" + name : name;
+        }
+
+        private void skipWhitespace(){
+            while(pos < length && isWhitespace(in.charAt(pos))){
+                pos++;
+            }
+        }
+    }
+
+    private static boolean isBlock(String tag){
+        if(tag == null || tag.length() == 0){
+            return false;
+        }
+        return BLOCK_ELEMENTS.contains(tag.charAt(0) == '/' ? tag.substring(1) : tag);
+    }
+
+    private static boolean canUnquote(String value){
+        int length = value.length();
+        if(length == 0 || value.charAt(length - 1) == '/'){
+            return false;
+        }
+        for(int i = 0 ; i < length ; i++){
+            char c = value.charAt(i);
+            if(!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == ':' || c == '/' || c == '#')){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c){
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isNameStart(char c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isNameChar(char c){
+        return isNameStart(c) || (c >= '0' && c <= '9') || c == '-' || c == ':' || c == '_';
+    }
+}
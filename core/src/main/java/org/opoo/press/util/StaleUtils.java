@@ -17,6 +17,7 @@ package org.opoo.press.util;
 
 import org.apache.commons.io.IOUtils;
 import org.opoo.press.Site;
+import org.opoo.press.file.SourceFileFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -123,7 +124,7 @@ public class StaleUtils {
 			}
 		}
 
-		FileFilter filter = new ValidFileFilter();
+		FileFilter filter = SourceFileFilter.createSiteFilter(site);
 
 		//source file
 		List<File> sources = site.getSources();
@@ -136,7 +137,7 @@ public class StaleUtils {
 
 		//templates
 		File templates = site.getTemplates();
-		if(isNewer(templates, lastBuildTime, filter)){
+		if(isNewer(templates, lastBuildTime, SourceFileFilter.createTemplatesFilter(site))){
 			log.info("Template file changed.");
 			return true;
 		}
@@ -160,7 +161,7 @@ public class StaleUtils {
 	public static List<File> getStaleAssets(Site site){
 		BuildInfo info = getLastBuildInfo(site);
 		long lastBuildTime = info.time;
-		FileFilter filter = new ValidFileFilter();
+		FileFilter filter = SourceFileFilter.createSiteFilter(site);
 
 		List<File> list = new ArrayList<File>();
 		List<File> assets = site.getAssets();
@@ -180,10 +181,6 @@ public class StaleUtils {
     public static boolean isNewer(File dir, long compareTime, FileFilter filter){
     	File[] listFiles = dir.listFiles(filter);
     	for(File file: listFiles){
-    		if(file.isHidden()){
-    			log.debug("Skip check hidden file: " + file);
-    			continue;
-    		}
     		if(file.isFile()){
     			if(file.lastModified() > compareTime){
 					log.info("File {} changed.", file);
@@ -202,22 +199,6 @@ public class StaleUtils {
     	return SDF.format(new Date(millis));
     }
 
-	private static class ValidFileFilter implements FileFilter{
-		@Override
-		public boolean accept(File file) {
-			String name = file.getName();
-			char firstChar = name.charAt(0);
-			if(firstChar == '.' || firstChar == '#'){
-				return false;
-			}
-			char lastChar = name.charAt(name.length() - 1);
-			if(lastChar == '~'){
-				return false;
-			}
-			return true;
-		}
-	}
-
 	public static class BuildInfo implements Externalizable{
 		private long time;
 		private boolean showDrafts;
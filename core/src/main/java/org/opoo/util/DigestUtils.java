@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Content digest helpers, hex encoded.
+ *
+ * @author Alex Lin
+ */
+public abstract class DigestUtils {
+
+	public static String md5Hex(String content){
+		return Hashing.md5().hashString(content, Charsets.UTF_8).toString();
+	}
+
+	public static String md5Hex(byte[] bytes){
+		return Hashing.md5().hashBytes(bytes).toString();
+	}
+
+	public static String md5Hex(File file){
+		try {
+			return Files.hash(file, Hashing.md5()).toString();
+		} catch (IOException e) {
+			throw new RuntimeException("Digest file exception: " + file, e);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.util;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick string matcher, finds all occurrences of a set of literal
+ * patterns in one pass over the text.
+ *
+ * <p>Instances are immutable after construction and thread safe.</p>
+ *
+ * @author Alex Lin
+ */
+public class MultiPatternMatcher {
+    private final Node root = new Node();
+    private final boolean empty;
+
+    public MultiPatternMatcher(Collection<String> patterns) {
+        boolean added = false;
+        for(String pattern: patterns){
+            if(pattern != null && pattern.length() > 0){
+                add(pattern);
+                added = true;
+            }
+        }
+        this.empty = !added;
+        buildFailureLinks();
+    }
+
+    public boolean isEmpty(){
+        return empty;
+    }
+
+    private void add(String pattern){
+        Node node = root;
+        for(int i = 0 ; i < pattern.length() ; i++){
+            char c = pattern.charAt(i);
+            Node child = node.children.get(c);
+            if(child == null){
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        node.pattern = pattern;
+    }
+
+    private void buildFailureLinks(){
+        Queue<Node> queue = new ArrayDeque<Node>();
+        for(Node child: root.children.values()){
+            child.failure = root;
+            child.output = child.pattern != null ? child : null;
+            queue.add(child);
+        }
+        while(!queue.isEmpty()){
+            Node node = queue.remove();
+            for(Map.Entry<Character,Node> entry: node.children.entrySet()){
+                char c = entry.getKey();
+                Node child = entry.getValue();
+                Node f = node.failure;
+                while(f != null && !f.children.containsKey(c)){
+                    f = f.failure;
+                }
+                child.failure = (f == null) ? root : f.children.get(c);
+                //the longest pattern ending here via failure links
+                child.output = child.pattern != null ? child : child.failure.output;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Finds occurrences, reports the longest pattern ending at each position
+     * and continues after the accepted match.
+     *
+     * @param text the text
+     * @param listener match listener
+     */
+    public void find(CharSequence text, MatchListener listener){
+        if(empty){
+            return;
+        }
+        Node node = root;
+        int length = text.length();
+        for(int i = 0 ; i < length ; i++){
+            char c = text.charAt(i);
+            while(node != root && !node.children.containsKey(c)){
+                node = node.failure;
+            }
+            Node next = node.children.get(c);
+            node = next == null ? root : next;
+
+            for(Node out = node.output; out != null; out = out.failure.output){
+                int start = i + 1 - out.pattern.length();
+                if(listener.onMatch(start, i + 1, out.pattern)){
+                    node = root;
+                    break;
+                }
+            }
+        }
+    }
+
+    public interface MatchListener{
+        /**
+         * @param start start index, inclusive
+         * @param end end index, exclusive
+         * @param pattern the matched pattern
+         * @return true if the match accepted, matching restarts after it
+         */
+        boolean onMatch(int start, int end, String pattern);
+    }
+
+    private static class Node{
+        private final Map<Character,Node> children = new HashMap<Character, Node>(4);
+        private Node failure;
+        private Node output;
+        private String pattern;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.file;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Lin
+ */
+public class NioWatchableDirectoryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private NioWatchableDirectory watchable;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.newFolder("watched");
+        FileUtils.writeStringToFile(new File(dir, "a/old.txt"), "old");
+        watchable = new NioWatchableDirectory(dir, null);
+        watchable.initialize();
+    }
+
+    @After
+    public void tearDown(){
+        watchable.destroy();
+    }
+
+    @Test
+    public void filesOfNewDirectoryReported() throws Exception {
+        File file = new File(dir, "b/c/new.txt");
+        FileUtils.writeStringToFile(file, "new");
+
+        Result result = awaitChanges();
+        assertEquals(Arrays.asList(file), result.getCreatedFiles());
+        assertTrue(result.getUpdatedFiles().isEmpty());
+
+        //registered when scanned
+        File next = new File(dir, "b/c/next.txt");
+        FileUtils.writeStringToFile(next, "next");
+        assertEquals(Arrays.asList(next), awaitChanges().getCreatedFiles());
+    }
+
+    @Test
+    public void onlyChangedFilesReported() throws Exception {
+        File old = new File(dir, "a/old.txt");
+        File file = new File(dir, "a/new.txt");
+        FileUtils.writeStringToFile(file, "new");
+        assertEquals(Arrays.asList(file), awaitChanges().getCreatedFiles());
+
+        FileUtils.writeStringToFile(old, "changed");
+        Result result = awaitChanges();
+        assertEquals(Arrays.asList(old), result.getUpdatedFiles());
+        assertTrue(result.getCreatedFiles().isEmpty());
+    }
+
+    @Test
+    public void filesOfDeletedDirectoryReported() throws Exception {
+        FileUtils.deleteDirectory(new File(dir, "a"));
+        assertEquals(Arrays.asList(new File(dir, "a/old.txt")), awaitChanges().getDeletedFiles());
+    }
+
+    private Result awaitChanges() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(System.currentTimeMillis() < deadline){
+            Thread.sleep(100);
+            Result result = watchable.check();
+            if(!result.isEmpty()){
+                return result;
+            }
+        }
+        throw new AssertionError("No changes");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.file;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Lin
+ */
+public class WatchSignalTest {
+
+    @Before
+    public void consumeSignals() throws Exception {
+        // e.g. the events of other tests
+        WatchSignal.await(1, 0, 0);
+    }
+
+    @Test
+    public void signalWakesWaiter() throws Exception {
+        Thread thread = new Thread(){
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                WatchSignal.signal();
+            }
+        };
+        thread.start();
+        long start = System.currentTimeMillis();
+        assertTrue(WatchSignal.await(5000, 10, 100));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        thread.join();
+    }
+
+    @Test
+    public void timeoutWithoutSignal() throws Exception {
+        long start = System.currentTimeMillis();
+        assertFalse(WatchSignal.await(100, 10, 100));
+        assertTrue(System.currentTimeMillis() - start >= 90);
+    }
+
+    @Test
+    public void signalBeforeAwaitNotMissed() throws Exception {
+        // e.g. a file saved while the last change was being built
+        WatchSignal.signal();
+        long start = System.currentTimeMillis();
+        assertTrue(WatchSignal.await(5000, 10, 100));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+
+        // consumed
+        assertFalse(WatchSignal.await(50, 10, 100));
+    }
+
+    @Test
+    public void burstOfSignalsAwaitedOnce() throws Exception {
+        Thread thread = new Thread(){
+            @Override
+            public void run() {
+                for(int i = 0 ; i < 5 ; i++){
+                    WatchSignal.signal();
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        thread.start();
+        assertTrue(WatchSignal.await(5000, 100, 1000));
+        thread.join();
+        assertFalse(WatchSignal.await(50, 10, 100));
+    }
+}
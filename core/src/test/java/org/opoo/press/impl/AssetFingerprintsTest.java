@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.file.Result;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Lin
+ */
+public class AssetFingerprintsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PreviewSite preview;
+
+    @Before
+    public void setUp() throws Exception {
+        preview = new PreviewSite(folder.newFolder("site")).option("asset_fingerprint", true);
+    }
+
+    @Test
+    public void fingerprintedAssetsWritten() throws Exception {
+        File dest = preview.option("memory_output", false).build().getDestination();
+
+        String html = FileUtils.readFileToString(new File(dest, "index.html"));
+        String image = getReference(html, "/images/photo.");
+        String stylesheet = getReference(html, "/stylesheets/screen.");
+        assertTrue(image, new File(dest, image).isFile());
+        assertFalse(new File(dest, "images/photo.png").exists());
+        String css = FileUtils.readFileToString(new File(dest, stylesheet));
+        assertTrue(css, css.contains("url(../images/" + image.substring("/images/".length()) + ")"));
+    }
+
+    @Test
+    public void stylesheetReferencesFingerprintedStylesheet() throws Exception {
+        // sorted before screen.css, hashed after it
+        FileUtils.writeStringToFile(preview.getFile("assets/stylesheets/all.css"), "@import url(screen.css);\n");
+        preview.build();
+
+        String screen = getStylesheet();
+        AssetFingerprints fingerprints = (AssetFingerprints) preview.getSite().get(AssetFingerprintProcessor.KEY);
+        String all = preview.getOutput(fingerprints.getPath("/stylesheets/all.css"));
+        assertNotNull(all);
+        assertTrue(all, all.contains("url(" + screen.substring(screen.lastIndexOf('/') + 1) + ")"));
+    }
+
+    @Test
+    public void importWithoutUrlFingerprinted() throws Exception {
+        FileUtils.writeStringToFile(preview.getFile("assets/stylesheets/all.css"), "@import \"screen.css\";\n");
+        preview.build();
+
+        String screen = getStylesheet();
+        AssetFingerprints fingerprints = (AssetFingerprints) preview.getSite().get(AssetFingerprintProcessor.KEY);
+        String all = preview.getOutput(fingerprints.getPath("/stylesheets/all.css"));
+        assertEquals("@import \"" + screen.substring(screen.lastIndexOf('/') + 1) + "\";\n", all);
+    }
+
+    @Test
+    public void onlyAbsoluteUrlsOfSiteRewritten() throws Exception {
+        preview.option("url", "http://example.com").build();
+        preview.editPage("<img src=\"//cdn.example.org/images/photo.png\">\n"
+                + "<img src=\"https://example.org/images/photo.png\">\n"
+                + "<img src=\"https://example.com/images/photo.png\">\n"
+                + "<img src=\"//example.com/images/photo.png\">");
+
+        String image = getImage();
+        List<String> urls = preview.getReferences("/index.html");
+        assertTrue(urls.toString(), urls.contains("//cdn.example.org/images/photo.png"));
+        assertTrue(urls.toString(), urls.contains("https://example.org/images/photo.png"));
+        assertTrue(urls.toString(), urls.contains("https://example.com" + image));
+        assertTrue(urls.toString(), urls.contains("//example.com" + image));
+    }
+
+    @Test
+    public void changedAssetPublishedFingerprinted() throws Exception {
+        preview.build();
+        String image = getImage();
+        String screen = getStylesheet();
+
+        File photo = preview.getFile("assets/images/photo.png");
+        PreviewSite.writeImage(photo, 600, 400);
+        Result result = Result.newResult();
+        result.getUpdatedFiles().add(photo);
+        preview.getSite().build(result);
+
+        assertFalse(image.equals(getImage()));
+        assertFalse(screen.equals(getStylesheet()));
+        assertNotNull(preview.getStore().get(getImage()));
+        assertTrue(preview.getOutput(getStylesheet()).contains(getImage().substring("/images/".length())));
+        assertNull(preview.getStore().get("/images/photo.png"));
+    }
+
+    @Test
+    public void staleAssetPublishedFingerprinted() throws Exception {
+        preview.option("memory_output", false);
+        File dest = preview.build().getDestination();
+        File page = new File(dest, "index.html");
+        String html = FileUtils.readFileToString(page);
+
+        File photo = preview.getFile("assets/images/photo.png");
+        PreviewSite.writeImage(photo, 600, 400);
+        photo.setLastModified(System.currentTimeMillis() + 10000);
+        preview.build();
+
+        String rebuilt = FileUtils.readFileToString(page);
+        assertFalse(html.equals(rebuilt));
+        assertFalse(new File(dest, "images/photo.png").exists());
+        for(String path: new String[]{"images/", "stylesheets/"}){
+            int start = rebuilt.indexOf("/" + path);
+            String url = rebuilt.substring(start + 1, rebuilt.indexOf('"', start));
+            assertTrue(url, new File(dest, url).isFile());
+        }
+    }
+
+    private static String getReference(String html, String prefix){
+        int start = html.indexOf(prefix);
+        assertTrue(html, start != -1);
+        return html.substring(start, html.indexOf('"', start));
+    }
+
+    private String getImage(){
+        return getReference("/images/");
+    }
+
+    private String getStylesheet(){
+        return getReference("/stylesheets/");
+    }
+
+    private String getReference(String prefix){
+        List<String> urls = preview.getReferences("/index.html");
+        for(String url: urls){
+            if(url.startsWith(prefix)){
+                return url;
+            }
+        }
+        throw new AssertionError("No reference " + prefix + " in " + urls);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The pages of preview rendered on demand or by priority, with the static
+ * files added by processors before rendering (image derivatives, fingerprinted
+ * assets) in memory.
+ *
+ * @author Alex Lin
+ */
+public class OnDemandRendererTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PreviewSite preview;
+
+    @Before
+    public void setUp() throws Exception {
+        preview = new PreviewSite(folder.newFolder("site"))
+                .option("responsive_images", true)
+                .option("asset_fingerprint", true);
+    }
+
+    @Test
+    public void renderOnDemandRendersEditedPage() throws Exception {
+        preview.option("render_on_demand", true).build();
+        assertTrue(preview.getOutput("/index.html").contains("<img"));
+
+        preview.editPage("edited");
+        assertTrue(preview.getOutput("/index.html").contains("edited"));
+    }
+
+    @Test
+    public void prioritizedRebuildKeepsDerivativesAfterEdit() throws Exception {
+        preview.option("prioritized_rebuild", true).build();
+        assertReferencesFound(5);
+
+        preview.editPage("edited");
+        assertTrue(preview.getOutput("/index.html").contains("edited"));
+        assertReferencesFound(5);
+    }
+
+    @Test
+    public void renderOnDemandWritesDerivativesInFirstBuild() throws Exception {
+        preview.option("render_on_demand", true).build();
+        assertReferencesFound(5);
+
+        preview.editPage("edited");
+        assertTrue(preview.getOutput("/index.html").contains("edited"));
+        assertReferencesFound(5);
+    }
+
+    @Test
+    public void renderOnDemandConvertsPagesReadByTemplate() throws Exception {
+        FileUtils.writeStringToFile(preview.getFile("pages/about.md"),
+                "---\nlayout: nil\ntitle: About\n---\n**bold**\n");
+        FileUtils.writeStringToFile(preview.getFile("pages/all.html"),
+                "---\nlayout: all\ntitle: All\n---\nAll pages\n");
+        FileUtils.writeStringToFile(preview.getFile("themes/default/templates/_all.ftl"),
+                "<#macro allLayout><#list site.allPages as p><#if p.title == 'About'>${p.content}</#if></#list></#macro>");
+        preview.option("render_on_demand", true).build();
+
+        String html = preview.getOutput("/all.html");
+        assertTrue(html, html.contains("<strong>bold</strong>"));
+    }
+
+    private void assertReferencesFound(int expected){
+        List<String> urls = preview.getReferences("/index.html");
+        assertEquals("" + urls, expected, urls.size());
+        for(String url: urls){
+            assertNotNull("Not found: " + url, preview.getStore().get(url));
+        }
+    }
+}
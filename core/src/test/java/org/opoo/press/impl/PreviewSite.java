@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.opoo.press.file.Result;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal site in a temporary directory, built to memory like preview:
+ * one markdown page referencing an image, a stylesheet and an empty theme.
+ *
+ * @author Alex Lin
+ */
+class PreviewSite {
+    private static final Pattern URL = Pattern.compile("(?:src|href)=\"([^\"]+)\"|([^\\s\"]+) \\d+w");
+
+    private final File basedir;
+    private final Map<String,Object> options = new HashMap<String, Object>();
+    private SiteImpl site;
+
+    PreviewSite(File basedir) throws IOException {
+        this.basedir = basedir.getCanonicalFile();
+        FileUtils.writeStringToFile(new File(basedir, "config.yml"), "title: Preview\n");
+        FileUtils.writeStringToFile(new File(basedir, "themes/default/theme.yml"), "name: default\n");
+        new File(basedir, "themes/default/templates").mkdirs();
+        writePage("");
+        writeImage(new File(basedir, "assets/images/photo.png"), 1200, 800);
+        FileUtils.writeStringToFile(new File(basedir, "assets/stylesheets/screen.css"),
+                "body { background: url(../images/photo.png); }\n");
+
+        options.put("memory_output", true);
+    }
+
+    PreviewSite option(String name, Object value){
+        options.put(name, value);
+        return this;
+    }
+
+    SiteImpl build(){
+        site = new SiteImpl(new SiteConfigImpl(basedir, options));
+        site.build();
+        return site;
+    }
+
+    SiteImpl scan(){
+        site = new SiteImpl(new SiteConfigImpl(basedir, options));
+        site.scan();
+        return site;
+    }
+
+    /**
+     * Appends text to the page and builds incrementally, as the preview does
+     * on a file change.
+     */
+    void editPage(String text) throws IOException {
+        File page = writePage(text);
+        Result result = Result.newResult();
+        result.getUpdatedFiles().add(page);
+        site.build(result);
+    }
+
+    SiteImpl getSite(){
+        return site;
+    }
+
+    File getFile(String path){
+        return new File(basedir, path);
+    }
+
+    MemoryOutputStore getStore(){
+        return (MemoryOutputStore) site.get(MemoryOutputStore.KEY);
+    }
+
+    /**
+     * @return the content of output, rendered on demand if not rendered yet
+     */
+    String getOutput(String path){
+        MemoryOutputStore.Entry entry = getStore().get(path);
+        return entry == null ? null : new String(entry.getContent());
+    }
+
+    /**
+     * @return the urls in <code>src</code>, <code>href</code> and <code>srcset</code>
+     * of the output
+     */
+    List<String> getReferences(String path){
+        List<String> urls = new ArrayList<String>();
+        Matcher m = URL.matcher(getOutput(path));
+        while(m.find()){
+            urls.add(m.group(1) != null ? m.group(1) : m.group(2));
+        }
+        return urls;
+    }
+
+    private File writePage(String text) throws IOException {
+        File page = new File(basedir, "pages/index.md");
+        FileUtils.writeStringToFile(page, "---\nlayout: nil\ntitle: Home\n---\n"
+                + "<img src=\"/images/photo.png\">\n"
+                + "<link rel=\"stylesheet\" href=\"/stylesheets/screen.css\">\n\n" + text + "\n");
+        return page;
+    }
+
+    static void writeImage(File file, int width, int height) throws IOException {
+        file.getParentFile().mkdirs();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.file.Result;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The options applied by {@link SiteImpl#reconfigure(ConfigDiff)} without
+ * setting up the plugins again take effect in the next build.
+ *
+ * @author Alex Lin
+ */
+public class ReconfigureTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PreviewSite preview;
+
+    @Before
+    public void setUp() throws Exception {
+        preview = new PreviewSite(folder.newFolder("site"));
+    }
+
+    @Test
+    public void responsiveImagesWidthsChanged() throws Exception {
+        writeConfig("responsive_images:\n  widths: [300]\n");
+        preview.build();
+        assertTrue(getPage(), getPage().contains(" 300w"));
+
+        writeConfig("responsive_images:\n  widths: [500]\n");
+        reconfigure();
+        assertTrue(getPage(), getPage().contains(" 500w"));
+        assertFalse(getPage(), getPage().contains(" 300w"));
+    }
+
+    @Test
+    public void assetFingerprintExtensionsChanged() throws Exception {
+        writeConfig("asset_fingerprint:\n  extensions: [css]\n");
+        preview.build();
+        assertTrue(getPage(), getPage().contains("\"/images/photo.png\""));
+
+        writeConfig("asset_fingerprint:\n  extensions: [css, png]\n");
+        reconfigure();
+        assertFalse(getPage(), getPage().contains("\"/images/photo.png\""));
+    }
+
+    @Test
+    public void configurationKeptIfSetupFailed() throws Exception {
+        preview.build();
+        SiteImpl site = preview.getSite();
+
+        writeConfig("locale: not a locale\n");
+        ConfigDiff diff = site.diffConfig();
+        assertEquals(ConfigDiff.Scope.SETUP, diff.getScope());
+        try{
+            site.reconfigure(diff);
+            fail();
+        }catch(IllegalArgumentException e){
+            assertNull(site.getConfig().get("locale"));
+        }
+    }
+
+    @Test
+    public void themeResourceBuildersCreatedAgainIfThemeChanged() throws Exception {
+        FileUtils.writeStringToFile(preview.getFile("themes/default/source/css/screen.css"), "body { }\n");
+        FileUtils.writeStringToFile(preview.getFile("themes/default/resource-builders.yml"),
+                "- type: css\n  input: source/css/screen.css\n  output: source/css/all.css\n");
+        preview.build();
+        ThemeImpl theme = (ThemeImpl) preview.getSite().getTheme();
+        Object observer = theme.getObserver();
+        assertNotNull(observer);
+        assertSame(observer, theme.getObserver());
+
+        FileUtils.writeStringToFile(preview.getFile("themes/default/theme.yml"), "name: default\ncolor: red\n");
+        SiteImpl site = preview.getSite();
+        site.reconfigure(site.diffConfig());
+        assertEquals("red", theme.get("color"));
+        assertNotSame(observer, theme.getObserver());
+    }
+
+    private void writeConfig(String options) throws IOException {
+        FileUtils.writeStringToFile(preview.getFile("config.yml"), "title: Preview\n" + options);
+    }
+
+    private void reconfigure(){
+        SiteImpl site = preview.getSite();
+        ConfigDiff diff = site.diffConfig();
+        assertEquals(ConfigDiff.Scope.BUILD, diff.getScope());
+        site.reconfigure(diff);
+        site.build(Result.newResult());
+    }
+
+    private String getPage(){
+        return preview.getOutput("/index.html");
+    }
+}
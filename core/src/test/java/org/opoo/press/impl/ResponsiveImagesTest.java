@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Lin
+ */
+public class ResponsiveImagesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PreviewSite preview;
+
+    @Before
+    public void setUp() throws Exception {
+        preview = new PreviewSite(folder.newFolder("site"));
+    }
+
+    @Test
+    public void derivativesGeneratedAgainIfQualityChanged() throws Exception {
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for(int y = 0 ; y < image.getHeight() ; y++){
+            for(int x = 0 ; x < image.getWidth() ; x++){
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ImageIO.write(image, "jpg", preview.getFile("assets/images/noise.jpg"));
+
+        File high = buildDerivative(0.9, "/images/noise-400w.jpg");
+        File low = buildDerivative(0.3, "/images/noise-400w.jpg");
+        assertFalse(high.equals(low));
+        assertTrue(low.length() < high.length());
+    }
+
+    @Test
+    public void derivativesInOtherFormatWrappedInPicture(){
+        Map<String,Object> config = new HashMap<String, Object>();
+        config.put("widths", Arrays.asList(480));
+        config.put("format", "jpg");
+        preview.option("responsive_images", config).build();
+
+        String html = preview.getOutput("/index.html");
+        assertTrue(html, html.contains("<picture><source type=\"image/jpeg\" srcset=\"/images/photo-480w.jpg 480w, "
+                + "/images/photo-1200w.jpg 1200w\"><img src=\"/images/photo.png\" width=\"1200\" height=\"800\"></picture>"));
+        assertTrue(preview.getStore().get("/images/photo-1200w.jpg") != null);
+    }
+
+    private File buildDerivative(double quality, String path){
+        Map<String,Object> config = new HashMap<String, Object>();
+        config.put("widths", Arrays.asList(400));
+        config.put("quality", quality);
+        preview.option("responsive_images", config).build();
+        return preview.getStore().get(path).getFile();
+    }
+}
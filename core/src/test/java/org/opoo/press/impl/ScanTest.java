@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @author Alex Lin
+ */
+public class ScanTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PreviewSite preview;
+
+    @Before
+    public void setUp() throws Exception {
+        preview = new PreviewSite(folder.newFolder("site")).option("memory_output", false);
+    }
+
+    @Test
+    public void estimateFromSourcesBeforeBuild(){
+        SiteImpl site = preview.scan();
+        assertFalse(site.getDestination().exists());
+
+        long expected = preview.getFile("pages/index.md").length()
+                + preview.getFile("assets/images/photo.png").length()
+                + preview.getFile("assets/stylesheets/screen.css").length();
+        assertEquals(expected, site.estimateOutputLength());
+    }
+
+    @Test
+    public void estimateFromLastOutputs(){
+        File dest = preview.build().getDestination();
+
+        long expected = new File(dest, "index.html").length()
+                + new File(dest, "images/photo.png").length()
+                + new File(dest, "stylesheets/screen.css").length();
+        assertEquals(expected, preview.scan().estimateOutputLength());
+    }
+}
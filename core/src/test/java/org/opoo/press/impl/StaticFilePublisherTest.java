@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Alex Lin
+ */
+public class StaticFilePublisherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PreviewSite preview;
+
+    @Before
+    public void setUp() throws Exception {
+        preview = new PreviewSite(folder.newFolder("site")).option("memory_output", false);
+        FileUtils.writeStringToFile(preview.getFile("assets/files/notes.txt"), "notes\n");
+    }
+
+    @Test
+    public void recordsOfDeletedFilesArePruned(){
+        SiteImpl site = preview.build();
+        String key = new File(site.getDestination(), "files/notes.txt").getPath();
+        assertNotNull(loadRecords(site).get(key));
+
+        assertTrue(preview.getFile("assets/files/notes.txt").delete());
+        site = preview.build();
+        site.build(true);
+        assertNull(loadRecords(site).get(key));
+        assertNotNull(loadRecords(site).get(new File(site.getDestination(), "images/photo.png").getPath()));
+    }
+
+    @Test
+    public void invalidModeReportsAllowedValues(){
+        assertEquals(StaticFilePublisher.Mode.REFLINK, StaticFilePublisher.parseMode("RefLink"));
+        try{
+            StaticFilePublisher.parseMode("hardlink");
+            fail();
+        }catch(IllegalArgumentException e){
+            assertEquals("Invalid static_files_publish: 'hardlink', must be one of [copy, link, reflink]", e.getMessage());
+        }
+    }
+
+    private RecordStore<StaticFilePublisher.Record> loadRecords(SiteImpl site){
+        return new RecordStore<StaticFilePublisher.Record>(new File(site.getWorking(), ".staticFiles"));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.resource;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Alex Lin
+ */
+public class YUIBuilderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void singleInputCompressed() throws Exception {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "a.css"), "a {\n  color : red ;\n}\n");
+
+        assertEquals("a{color:red}", build("a.css", false));
+        assertEquals("a {\n  color : red ;\n}\n", build("a.css", true));
+    }
+
+    @Test
+    public void multipleInputsCompressedInOrder() throws Exception {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "a.css"), "a {\n  color : red ;\n}\n");
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "b.min.css"), "b { }\n");
+
+        assertEquals("a{color:red}b { }\n", build(Arrays.asList("a.css", "b.min.css"), false));
+    }
+
+    private String build(Object input, boolean mergeOnly) throws Exception {
+        Map<String,Object> config = new HashMap<String, Object>();
+        config.put("input", input);
+        config.put("output", "out/all.css");
+        config.put("merge-only", mergeOnly);
+
+        CssBuilder builder = new CssBuilder();
+        builder.init(folder.getRoot(), config);
+        builder.clean();
+        builder.build();
+        return FileUtils.readFileToString(new File(folder.getRoot(), "out/all.css"));
+    }
+}
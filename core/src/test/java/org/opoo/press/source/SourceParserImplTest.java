@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.source;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Source;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Lin
+ */
+public class SourceParserImplTest {
+    private static final String EOL = IOUtils.LINE_SEPARATOR;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SourceParserImpl parser = new SourceParserImpl();
+    private int files;
+
+    @Test
+    public void lineEndingsNormalized() throws Exception {
+        Source source = parse("---\r\ntitle: CRLF\r\n---\r\nline 1\r\nline 2\rline 3");
+        assertEquals("CRLF", source.getMeta().get("title"));
+        assertEquals("line 1" + EOL + "line 2" + EOL + "line 3" + EOL, source.getContent());
+
+        assertEquals("", parse("---\ntitle: empty\n---\n").getContent());
+    }
+
+    @Test
+    public void contentLocatedAgainAfterSameSizeEdit() throws Exception {
+        File file = folder.newFile("page.md");
+        FileUtils.writeStringToFile(file, "---\ntitle: abc\n---\nbody\n", "UTF-8");
+        Source source = parser.parse(new SourceEntryLoaderImpl.SourceEntryImpl(file, folder.getRoot()));
+
+        // same size, the delimiter line moved
+        FileUtils.writeStringToFile(file, "---\ntitle: a\n---\nedited\n", "UTF-8");
+        assertEquals("edited" + EOL, source.getContent());
+    }
+
+    @Test
+    public void largeContentRead() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0 ; i < 50000 ; i++){
+            sb.append("line ").append(i).append(EOL);
+        }
+        Source source = parse("---\ntitle: large\n---\n" + sb);
+        assertEquals(sb.toString(), source.getContent());
+        assertTrue(source.getSourceEntry().getFile().delete());
+    }
+
+    private Source parse(String text) throws Exception {
+        File file = folder.newFile("source" + (files++) + ".md");
+        FileUtils.writeStringToFile(file, text, "UTF-8");
+        return parser.parse(new SourceEntryLoaderImpl.SourceEntryImpl(file, folder.getRoot()));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Alex Lin
+ */
+public class HtmlMinifierTest {
+    private final HtmlMinifier minifier = new HtmlMinifier();
+
+    @Test
+    public void lessThanInTextIsNotTag(){
+        assertEquals("<p>1 < 2 and 3 > 2</p>", minifier.minify("<p>1 < 2 and 3 > 2</p>"));
+        assertEquals("a <", minifier.minify("a <"));
+        assertEquals("a </ b", minifier.minify("a </ b"));
+        assertEquals("<p>a <</p>", minifier.minify("<p>a <</p>"));
+    }
+
+    @Test
+    public void whitespaceAroundBlockTagsRemoved(){
+        assertEquals("<div><p>text</p></div>", minifier.minify("<div>\n  <p> text </p>\n</div>"));
+    }
+
+    @Test
+    public void whitespaceAroundInlineElementsKept(){
+        assertEquals("<label>Name</label> <select> <option>a</option> <option>b</option> </select>",
+                minifier.minify("<label>Name</label>\n<select>\n<option>a</option>\n<option>b</option>\n</select>"));
+        assertEquals("<span>a</span> <iframe src=x></iframe> <video src=v></video> <svg></svg>",
+                minifier.minify("<span>a</span>  <iframe src=\"x\"></iframe>\n<video src=\"v\"></video> <svg></svg>"));
+    }
+
+    @Test
+    public void removedCommentCollapsesWhitespace(){
+        assertEquals("text more", minifier.minify("text <!-- c --> more"));
+        assertEquals("text more", minifier.minify("text <!-- c -->more"));
+        assertEquals("text more", minifier.minify("text<!-- c --> more"));
+        assertEquals("<p>a</p><p>b</p>", minifier.minify("<p>a</p> <!-- c --> <p>b</p>"));
+    }
+
+    @Test
+    public void commentsRemoved(){
+        assertEquals("<p>a</p><p>b</p>", minifier.minify("<p>a</p><!-- c --><p>b</p>"));
+        assertEquals("<p>a</p><!--[if IE]><p>b</p><![endif]-->",
+                minifier.minify("<p>a</p><!--[if IE]><p>b</p><![endif]-->"));
+        assertEquals("<p>a</p><!-- c -->", new HtmlMinifier(false, true).minify("<p>a</p><!-- c -->"));
+    }
+
+    @Test
+    public void optionalQuotesRemoved(){
+        assertEquals("<a href=x.html class=\"a b\">x</a>", minifier.minify("<a href=\"x.html\" class=\"a b\">x</a>"));
+        assertEquals("<a href=\"x.html\">x</a>", new HtmlMinifier(true, false).minify("<a href=\"x.html\">x</a>"));
+    }
+
+    @Test
+    public void preformattedContentUnchanged(){
+        String html = "<pre>  a\n   b <!-- c --> </pre>";
+        assertEquals(html, minifier.minify(html));
+    }
+}
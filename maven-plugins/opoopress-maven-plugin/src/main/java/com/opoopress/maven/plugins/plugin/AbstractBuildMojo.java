@@ -22,9 +22,12 @@ import org.apache.maven.shared.invoker.InvocationRequest;
 import org.apache.maven.shared.invoker.Invoker;
 import org.apache.maven.shared.invoker.MavenInvocationException;
 import org.codehaus.plexus.util.StringUtils;
+import org.opoo.press.StaticFile;
 import org.opoo.press.ThemeCompiler;
 import org.opoo.press.impl.SiteConfigImpl;
 import org.opoo.press.impl.SiteImpl;
+import org.opoo.press.impl.StaticFileImpl;
+import org.opoo.press.impl.ThemeImpl;
 
 import java.io.File;
 import java.util.Arrays;
@@ -54,6 +57,14 @@ public abstract class AbstractBuildMojo extends AbstractOpooPressMojo{
      */
     private boolean forceBuild = false;
 
+    /**
+     * Scan the site and print what would be generated, do not convert, render
+     * or write any page.
+     *
+     * @parameter expression="${op.site.build.dryRun}" default-value="false"
+     */
+    private boolean dryRun = false;
+
     /**
      * @component
      */
@@ -83,26 +94,41 @@ public abstract class AbstractBuildMojo extends AbstractOpooPressMojo{
         });
 
         SiteImpl site = new SiteImpl(config);
+        try{
+            if(skipThemeBuild){
+                getLog().info("Skipping build theme.");
+            }else{
+                site.getTheme().build();
+            }
 
-        if(skipThemeBuild){
-            getLog().info("Skipping build theme.");
-        }else{
-            site.getTheme().build();
-        }
+            if(skipSiteBuild){
+                getLog().info("Skipping build site.");
+            }else if(dryRun){
+                scan(site);
+                executeDryRun(config, site);
+                return;
+            }else{
+                //site.build(forceBuild);
+                build(site, forceBuild);
+            }
 
-        if(skipSiteBuild){
-            getLog().info("Skipping build site.");
-        }else{
-            //site.build(forceBuild);
-            build(site, forceBuild);
+            executeInternal(config, site);
+        }finally{
+            //e.g. the compass runtime of theme
+            ((ThemeImpl) site.getTheme()).close();
         }
-
-        executeInternal(config, site);
     }
 
     protected void executeInternal(SiteConfigImpl config, SiteImpl site) throws MojoExecutionException, MojoFailureException{
     }
 
+    /**
+     * Called instead of {@link #executeInternal(SiteConfigImpl, SiteImpl)} in dry run,
+     * the site is scanned but not built.
+     */
+    protected void executeDryRun(SiteConfigImpl config, SiteImpl site) throws MojoExecutionException, MojoFailureException{
+    }
+
 
     private void invokeGoals( String goals, File projectBasedir) throws MavenInvocationException {
         getLog().info( "[" + projectBasedir +"] Invoking goals: " + goals );
@@ -114,6 +140,24 @@ public abstract class AbstractBuildMojo extends AbstractOpooPressMojo{
         invoker.execute( request );
     }
 
+    private void scan(SiteImpl site){
+        long start = System.currentTimeMillis();
+        site.scan();
+
+        long staticBytes = 0;
+        for(StaticFile staticFile: site.getStaticFiles()){
+            if(staticFile instanceof StaticFileImpl){
+                staticBytes += ((StaticFileImpl) staticFile).getSourceEntry().getLength();
+            }
+        }
+
+        getLog().info("Dry run, nothing written to " + site.getDestination());
+        getLog().info("Pages to render: " + site.getAllPages().size());
+        getLog().info("Static files to copy: " + site.getStaticFiles().size() + " (" + staticBytes + " bytes)");
+        getLog().info("Estimated output size: " + site.estimateOutputLength() + " bytes");
+        getLog().info("Scan time: " + (System.currentTimeMillis() - start) + "ms");
+    }
+
     private void build(SiteImpl site, boolean forceBuild){
         long start = System.currentTimeMillis();
         try {
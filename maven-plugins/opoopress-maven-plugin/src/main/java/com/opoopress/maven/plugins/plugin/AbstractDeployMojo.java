@@ -161,6 +161,25 @@ public class AbstractDeployMojo extends AbstractBuildMojo implements Contextuali
         }
     }
 
+    /**
+     * Prints the repositories and the estimated size to deploy, the whole
+     * destination directory is pushed to each repository.
+     */
+    @Override
+    protected void executeDryRun(SiteConfigImpl config, SiteImpl site) throws MojoExecutionException, MojoFailureException {
+        List<Map<String, String>> deployList = getDeployRepositoryList(config);
+        if (deployList == null || deployList.isEmpty()) {
+            throw new MojoFailureException("Deploy configuration not found in config.yml");
+        }
+
+        long length = site.estimateOutputLength();
+        for (Map<String, String> deployRepo : deployList) {
+            Repository repository = createRepository(deployRepo);
+            getLog().info("Would deploy about " + length + " bytes to " + repository.getId()
+                    + " [" + repository.getUrl() + "]");
+        }
+    }
+
     private List<Map<String,String>> getDeployRepositoryList(SiteConfigImpl config){
         List<Map<String, String>> deployList = config.get("deploy");
 
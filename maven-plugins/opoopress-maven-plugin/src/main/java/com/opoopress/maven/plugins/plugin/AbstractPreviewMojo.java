@@ -15,10 +15,13 @@
  */
 package com.opoopress.maven.plugins.plugin;
 
+import com.opoopress.maven.plugins.plugin.jetty.LiveReloadHandler;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.mortbay.jetty.Server;
 import org.opoo.press.Observer;
+import org.opoo.press.file.WatchSignal;
+import org.opoo.press.impl.MemoryOutputStore;
 import org.opoo.press.impl.SiteConfigImpl;
 import org.opoo.press.impl.SiteImpl;
 import org.opoo.press.impl.SiteObserver;
@@ -28,8 +31,12 @@ import org.opoo.press.impl.SiteObserver;
  *
  */
 public class AbstractPreviewMojo extends AbstractServerMojo{
+    private static final long QUIET_PERIOD_MILLIS = 150;
+    private static final long MAX_DEBOUNCE_MILLIS = 1000;
+
     /**
      * The amount of time in seconds to wait between checks of the site directory.
+     * Native file events wake up the check earlier.
      *
      * @parameter expression="${interval}" default-value="3"
      */
@@ -42,6 +49,51 @@ public class AbstractPreviewMojo extends AbstractServerMojo{
      */
     private boolean skipPreview;
 
+    /**
+     * Set this to 'false' to disable live reload. If enabled, the pages opened in
+     * browsers are reloaded after rebuild, changed style sheets are replaced
+     * without reloading.
+     *
+     * @parameter expression="${op.livereload}" default-value="true"
+     */
+    private boolean liveReload;
+
+    /**
+     * Set this to 'false' to write the site outputs to destination directory
+     * in preview. If enabled, the pages are rendered to memory and served from
+     * memory, the static files are served from source directories.
+     *
+     * @parameter expression="${op.preview.memory}" default-value="true"
+     */
+    private boolean memoryOutput;
+
+    /**
+     * Set this to 'true' to render pages on first request instead of rendering
+     * all pages on startup and after each change, requires memory output. For
+     * large sites.
+     *
+     * @parameter expression="${op.preview.onDemand}" default-value="false"
+     */
+    private boolean renderOnDemand;
+
+    /**
+     * Set this to 'true' to render the pending pages in a low priority background
+     * thread after each build when rendering on demand.
+     *
+     * @parameter expression="${op.preview.onDemand.fill}" default-value="false"
+     */
+    private boolean renderOnDemandFill;
+
+    /**
+     * Set this to 'false' to render all changed pages before publishing. If
+     * enabled (requires memory output), the pages recently opened in browsers
+     * and the pages of changed files are rendered and published first, the rest
+     * of changed pages are rendered in background.
+     *
+     * @parameter expression="${op.preview.prioritized}" default-value="true"
+     */
+    private boolean prioritizedRebuild;
+
     private boolean running = true;
 
     @Override
@@ -50,6 +102,7 @@ public class AbstractPreviewMojo extends AbstractServerMojo{
             getLog().info("Skipping preview.");
             return;
         }
+        configure(config);
         super.executeInternal(config);
     }
 
@@ -76,17 +129,26 @@ public class AbstractPreviewMojo extends AbstractServerMojo{
     }
 
     private void startAll(SiteConfigImpl config, SiteImpl site, long intervalMillis) throws Exception {
-        Server server = createJettyServer(site);
+        LiveReloadHandler liveReloadHandler = null;
+        if(liveReload){
+            liveReloadHandler = new LiveReloadHandler(site.getDestination(),
+                    (MemoryOutputStore) site.get(MemoryOutputStore.KEY), site.getRoot());
+        }
+        Server server = createJettyServer(site, liveReloadHandler);
         server.start();
 
         onServerStart(site, server);
 
         Observer observer = site.getObserver();
+        if(liveReloadHandler != null && observer instanceof SiteObserver){
+            ((SiteObserver) observer).addListener(liveReloadHandler);
+        }
         observer.initialize();
         running = true;
         while(running){
             try {
-                Thread.sleep(intervalMillis);
+                //wait for file events, then for a quiet period to coalesce a burst of changes
+                WatchSignal.await(intervalMillis, QUIET_PERIOD_MILLIS, MAX_DEBOUNCE_MILLIS);
                 if(!running){
                     break;
                 }
@@ -111,11 +173,25 @@ public class AbstractPreviewMojo extends AbstractServerMojo{
         if(config.getConfigFiles().length == 0){
             throw new Exception("No valid OpooPress configuration file.");
         }
+        configure(config);
         site = new SiteImpl(config);
         site.build(true);
         startAll(config, site, intervalMillis);
     }
 
+    private void configure(SiteConfigImpl config){
+        if(memoryOutput){
+            config.put("memory_output", true);
+            if(renderOnDemand){
+                config.put("render_on_demand", true);
+                config.put("render_on_demand_fill", renderOnDemandFill);
+            }
+            config.put("prioritized_rebuild", prioritizedRebuild);
+        }else if(renderOnDemand){
+            getLog().warn("Rendering on demand requires memory output, ignored.");
+        }
+    }
+
     public void stopAll(){
         if(!running){
             throw new IllegalStateException("Thread is not running");
@@ -15,23 +15,28 @@
  */
 package com.opoopress.maven.plugins.plugin;
 
+import com.opoopress.maven.plugins.plugin.jetty.MemoryOutputHandler;
+import com.opoopress.maven.plugins.plugin.jetty.StaticResourceHandler;
 import org.mortbay.jetty.Connector;
 import org.mortbay.jetty.Handler;
 import org.mortbay.jetty.NCSARequestLog;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.handler.ContextHandler;
 import org.mortbay.jetty.handler.DefaultHandler;
+import org.mortbay.jetty.handler.HandlerCollection;
 import org.mortbay.jetty.handler.HandlerList;
 import org.mortbay.jetty.handler.RequestLogHandler;
-import org.mortbay.jetty.handler.ResourceHandler;
 import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.thread.QueuedThreadPool;
 import org.opoo.press.Site;
+import org.opoo.press.impl.MemoryOutputStore;
+
+import java.io.File;
 
 /**
  * @author Alex Lin
  */
 public class AbstractServerMojo extends AbstractBuildMojo{
-    private static final int MAX_IDLE_TIME = 30000;
 
     /**
      * The port to execute the HTTP server on.
@@ -40,41 +45,119 @@ public class AbstractServerMojo extends AbstractBuildMojo{
      */
     private int port;
 
+    /**
+     * The number of acceptor threads, each acceptor has its own selector.
+     * 0 for half of the available processors.
+     *
+     * @parameter expression="${op.server.acceptors}" default-value="0"
+     */
+    private int acceptors;
+
+    /**
+     * @parameter expression="${op.server.minThreads}" default-value="10"
+     */
+    private int minThreads;
+
+    /**
+     * @parameter expression="${op.server.maxThreads}" default-value="250"
+     */
+    private int maxThreads;
+
+    /**
+     * The max idle time of keep-alive connections in milliseconds.
+     *
+     * @parameter expression="${op.server.maxIdleTime}" default-value="30000"
+     */
+    private int maxIdleTime;
+
+    /**
+     * The size of the pending connections queue, 0 for the default of system.
+     *
+     * @parameter expression="${op.server.acceptQueueSize}" default-value="0"
+     */
+    private int acceptQueueSize;
+
+    /**
+     * The Cache-Control rules by path patterns, separated by ';', the first
+     * matched rule is used. e.g.
+     * <code>*.html:no-cache;/stylesheets/**:public, max-age=31536000</code>.
+     *
+     * @parameter expression="${op.server.cacheControl}" default-value="*.html:no-cache"
+     */
+    private String cacheControl;
+
+    /**
+     * Set this to 'true' to log requests in NCSA format.
+     *
+     * @parameter expression="${op.server.requestLog}" default-value="false"
+     */
+    private boolean requestLog;
+
 
     protected Server createJettyServer(Site site){
+        return createJettyServer(site, null);
+    }
+
+    /**
+     * @param site the site
+     * @param handler the handler called before the resource handler, or null if none
+     * @return jetty server
+     */
+    protected Server createJettyServer(Site site, Handler handler){
         Server server = new Server();
         //FIXME
         server.setStopAtShutdown(true);
 
+        QueuedThreadPool threadPool = new QueuedThreadPool();
+        threadPool.setMinThreads(minThreads);
+        threadPool.setMaxThreads(maxThreads);
+        server.setThreadPool(threadPool);
+
         Connector defaultConnector = createConnector(null, port);
         server.setConnectors( new Connector[] { defaultConnector } );
 
         String root = site.getRoot();
-        String resourceBase = site.getDestination().getPath();
-        getLog().info("Server resource base: " + resourceBase);
+        File resourceBase = site.getDestination();
+        Handler resourceHandler;
+        MemoryOutputStore memoryOutputStore = site.get(MemoryOutputStore.KEY);
+        if(memoryOutputStore != null){
+            getLog().info("Serving site outputs from memory.");
+            resourceHandler = new MemoryOutputHandler(memoryOutputStore);
+        }else{
+            getLog().info("Server resource base: " + resourceBase);
+            resourceHandler = new StaticResourceHandler(resourceBase, cacheControl);
+        }
 
+        Handler[] handlers = handler != null ? new Handler[]{handler, resourceHandler} : new Handler[]{resourceHandler};
+        Handler siteHandler;
         if("".equals(root)){
-            ResourceHandler resourceHandler = new ResourceHandler();
-            //resourceHandler.setDirectoriesListed(true);
-            resourceHandler.setWelcomeFiles(new String[]{"index.html"});
-
-            resourceHandler.setResourceBase(resourceBase/*site.getDestination().getPath()*/);
-
-            HandlerList handlers = new HandlerList();
-            handlers.setHandlers(new Handler[] { resourceHandler, new DefaultHandler()});
-            server.setHandler(handlers);
-            //server.setHandlers(new Handler[]{handlers, logHandler});
-            //getLog().info( "Startisng preview server on http://localhost:" + port + "/" );
+            HandlerList handlerList = new HandlerList();
+            handlerList.setHandlers(handlers);
+            siteHandler = handlerList;
         } else {
             getLog().info("Using " + ContextHandler.class.getName());
             ContextHandler contextHandler = new ContextHandler();
             contextHandler.setContextPath(root);
-            contextHandler.setHandler(new ResourceHandler());
-            contextHandler.setResourceBase(resourceBase/*site.getDestination().getPath()*/);
-            //server.setHandler(contextHandler);
-            server.setHandlers(new Handler[]{contextHandler, new DefaultHandler()});
-            //server.setHandlers(new Handler[]{contextHandler, logHandler});
-            //log.info( "Starting preview server on http://localhost:" + port + root );
+            if(handlers.length > 1){
+                HandlerList handlerList = new HandlerList();
+                handlerList.setHandlers(handlers);
+                contextHandler.setHandler(handlerList);
+            }else{
+                contextHandler.setHandler(resourceHandler);
+            }
+            siteHandler = contextHandler;
+        }
+
+        HandlerList handlerList = new HandlerList();
+        handlerList.setHandlers(new Handler[]{siteHandler, new DefaultHandler()});
+
+        RequestLogHandler logHandler = createRequestLogHandler();
+        if(logHandler != null){
+            HandlerCollection handlerCollection = new HandlerCollection();
+            handlerCollection.setHandlers(new Handler[]{handlerList, logHandler});
+            server.setHandler(handlerCollection);
+        }else{
+            server.setHandler(handlerList);
         }
         return server;
     }
@@ -86,17 +169,22 @@ public class AbstractServerMojo extends AbstractBuildMojo{
      * @return jetty connector
      */
     protected Connector createConnector(String host, int port){
-        Connector connector = new SelectChannelConnector();
+        SelectChannelConnector connector = new SelectChannelConnector();
         if(host != null){
             connector.setHost(host);
         }
         connector.setPort( port );
-        connector.setMaxIdleTime(MAX_IDLE_TIME);
+        connector.setMaxIdleTime(maxIdleTime);
+        connector.setAcceptors(acceptors > 0 ? acceptors
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        if(acceptQueueSize > 0){
+            connector.setAcceptQueueSize(acceptQueueSize);
+        }
         return connector;
     }
 
     protected RequestLogHandler createRequestLogHandler(){
-        boolean showRequestLog = Boolean.getBoolean("requestLog");
+        boolean showRequestLog = requestLog || Boolean.getBoolean("requestLog");
         if(!showRequestLog){
             return null;
         }
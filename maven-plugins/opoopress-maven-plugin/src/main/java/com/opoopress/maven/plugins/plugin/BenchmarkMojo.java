@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opoopress.maven.plugins.plugin;
+
+import com.opoopress.maven.plugins.plugin.benchmark.LoadTester;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.opoo.press.impl.GzipSidecars;
+import org.opoo.press.impl.SiteConfigImpl;
+import org.opoo.util.PathUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load tests a running server (e.g. <code>op:server</code>) with the output
+ * files of site, reports the throughput and latencies.
+ *
+ * <p>Usage: start server by <code>mvn op:server</code>, then run
+ * <code>mvn op:benchmark -Dop.benchmark.concurrency=32</code> in another console.</p>
+ *
+ * @author Alex Lin
+ * @goal benchmark
+ */
+public class BenchmarkMojo extends AbstractOpooPressMojo{
+
+    /**
+     * The url of server, the root of site is appended.
+     *
+     * @parameter expression="${op.benchmark.url}" default-value="http://localhost:8080"
+     */
+    private String url;
+
+    /**
+     * The number of concurrent clients.
+     *
+     * @parameter expression="${op.benchmark.concurrency}" default-value="16"
+     */
+    private int concurrency;
+
+    /**
+     * The test time in seconds.
+     *
+     * @parameter expression="${op.benchmark.duration}" default-value="30"
+     */
+    private int duration;
+
+    /**
+     * The warm up time in seconds, requests are not counted.
+     *
+     * @parameter expression="${op.benchmark.warmup}" default-value="5"
+     */
+    private int warmup;
+
+    /**
+     * @parameter expression="${op.benchmark.gzip}" default-value="true"
+     */
+    private boolean gzip;
+
+    /**
+     * Set this to 'true' to send conditional requests like browsers with cache.
+     *
+     * @parameter expression="${op.benchmark.conditional}" default-value="false"
+     */
+    private boolean conditional;
+
+    @Override
+    protected void executeInternal(SiteConfigImpl config) throws MojoExecutionException, MojoFailureException {
+        //from configuration, creating a site loads the theme and plugins
+        File dest = PathUtils.appendBaseIfNotAbsolute(config.getBasedir(), (String) config.get("dest_dir"));
+        if(!dest.isDirectory()){
+            throw new MojoFailureException("Site not built, destination directory not found: " + dest);
+        }
+
+        List<String> paths = new ArrayList<String>();
+        int prefix = dest.getAbsolutePath().length();
+        for(File file: PathUtils.listFiles(dest, (FileFilter) null, true)){
+            if(file.getName().endsWith(GzipSidecars.SUFFIX)){
+                continue;
+            }
+            String path = file.getAbsolutePath().substring(prefix).replace(File.separatorChar, '/');
+            paths.add(path.endsWith("/index.html") ? StringUtils.removeEnd(path, "index.html") : path);
+        }
+
+        String baseUrl = StringUtils.removeEnd(url, "/") + config.get("root", "");
+        getLog().info("Load testing " + baseUrl + " with " + paths.size() + " paths, "
+                + concurrency + " clients, " + duration + "s...");
+
+        LoadTester.Statistics statistics;
+        try {
+            statistics = new LoadTester(baseUrl, paths, concurrency, gzip, conditional)
+                    .run(warmup * 1000L, duration * 1000L);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Load test failed: " + e.getMessage(), e);
+        }
+
+        getLog().info(String.format("Requests: %d, %.1f req/s, errors: %d",
+                statistics.getRequests(), statistics.getRequestsPerSecond(), statistics.getErrors()));
+        for(Map.Entry<Integer,Long> entry: statistics.getStatusCounts().entrySet()){
+            getLog().info("  HTTP " + entry.getKey() + ": " + entry.getValue());
+        }
+        getLog().info(String.format("Transferred: %.2f MB, %.2f MB/s", statistics.getBytes() / 1048576.0,
+                statistics.getBytes() / 1048576.0 / duration));
+        getLog().info(String.format("Latency (ms): p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+                statistics.getLatencyMillis(50), statistics.getLatencyMillis(90),
+                statistics.getLatencyMillis(99), statistics.getLatencyMillis(100)));
+    }
+}
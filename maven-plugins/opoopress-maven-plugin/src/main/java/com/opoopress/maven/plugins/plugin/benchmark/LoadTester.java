@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opoopress.maven.plugins.plugin.benchmark;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simple HTTP load generator: concurrent keep-alive clients request random
+ * paths for a period, reports the throughput and the latency percentiles.
+ *
+ * @author Alex Lin
+ */
+public class LoadTester {
+    private final String baseUrl;
+    private final List<String> paths;
+    private final int concurrency;
+    private final boolean gzip;
+    private final boolean conditional;
+
+    /**
+     * @param baseUrl the url of site root, without '/' at the end
+     * @param paths the paths to request, start with '/'
+     * @param concurrency the number of concurrent clients
+     * @param gzip true to send 'Accept-Encoding: gzip'
+     * @param conditional true to send 'If-None-Match' with the ETag of last response of the path
+     */
+    public LoadTester(String baseUrl, List<String> paths, int concurrency, boolean gzip, boolean conditional) {
+        if(paths.isEmpty()){
+            throw new IllegalArgumentException("No path to request.");
+        }
+        this.baseUrl = baseUrl;
+        this.paths = paths;
+        this.concurrency = concurrency;
+        this.gzip = gzip;
+        this.conditional = conditional;
+    }
+
+    /**
+     * @param warmupMillis the warm up time, requests in warm up time are not counted
+     * @param durationMillis the test time
+     * @return the statistics
+     * @throws Exception if test failed
+     */
+    public Statistics run(long warmupMillis, long durationMillis) throws Exception {
+        final long start = System.nanoTime();
+        final long countFrom = start + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        final long end = countFrom + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<Statistics>> futures = new ArrayList<Future<Statistics>>();
+        try {
+            for(int i = 0; i < concurrency; i++){
+                futures.add(executor.submit(new Callable<Statistics>() {
+                    @Override
+                    public Statistics call() throws Exception {
+                        return runClient(countFrom, end);
+                    }
+                }));
+            }
+            Statistics statistics = new Statistics(durationMillis);
+            for(Future<Statistics> future: futures){
+                statistics.merge(future.get());
+            }
+            return statistics;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Statistics runClient(long countFrom, long end){
+        Statistics statistics = new Statistics(0);
+        Map<String,String> etags = new HashMap<String, String>();
+        byte[] buffer = new byte[8192];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        long now;
+        while((now = System.nanoTime()) < end){
+            String path = paths.get(random.nextInt(paths.size()));
+            boolean counted = now >= countFrom;
+            HttpURLConnection connection = null;
+            InputStream in = null;
+            try {
+                connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+                connection.setInstanceFollowRedirects(false);
+                if(gzip){
+                    connection.setRequestProperty("Accept-Encoding", "gzip");
+                }
+                String etag = etags.get(path);
+                if(etag != null){
+                    connection.setRequestProperty("If-None-Match", etag);
+                }
+
+                int status = connection.getResponseCode();
+                in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                long bytes = 0;
+                if(in != null){
+                    int n;
+                    while((n = in.read(buffer)) != -1){
+                        bytes += n;
+                    }
+                }
+                if(conditional && status == 200 && connection.getHeaderField("ETag") != null){
+                    etags.put(path, connection.getHeaderField("ETag"));
+                }
+                if(counted){
+                    statistics.record(status, bytes, System.nanoTime() - now);
+                }
+            } catch (IOException e) {
+                if(counted){
+                    statistics.errors++;
+                }
+                //drop the broken keep-alive connection
+                if(connection != null){
+                    connection.disconnect();
+                }
+            } finally {
+                //closing the stream returns the connection to keep-alive cache
+                IOUtils.closeQuietly(in);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * The statistics of a load test.
+     */
+    public static class Statistics{
+        private final long durationMillis;
+        private long requests;
+        private long errors;
+        private long bytes;
+        private final Map<Integer,Long> statusCounts = new HashMap<Integer, Long>();
+        private long[] latencies = new long[1024];
+        private boolean sorted = false;
+
+        Statistics(long durationMillis) {
+            this.durationMillis = durationMillis;
+        }
+
+        void record(int status, long bytes, long latencyNanos){
+            if(requests == latencies.length){
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[(int) requests] = latencyNanos;
+            requests++;
+            this.bytes += bytes;
+            Long count = statusCounts.get(status);
+            statusCounts.put(status, count == null ? 1 : count + 1);
+        }
+
+        void merge(Statistics other){
+            long[] merged = Arrays.copyOf(latencies, (int) (requests + other.requests));
+            System.arraycopy(other.latencies, 0, merged, (int) requests, (int) other.requests);
+            latencies = merged;
+            requests += other.requests;
+            errors += other.errors;
+            bytes += other.bytes;
+            for(Map.Entry<Integer,Long> entry: other.statusCounts.entrySet()){
+                Long count = statusCounts.get(entry.getKey());
+                statusCounts.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+            }
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public Map<Integer, Long> getStatusCounts() {
+            return statusCounts;
+        }
+
+        public double getRequestsPerSecond(){
+            return durationMillis > 0 ? requests * 1000.0 / durationMillis : 0;
+        }
+
+        /**
+         * @param percentile e.g. 99 for p99
+         * @return the latency in milliseconds
+         */
+        public double getLatencyMillis(double percentile){
+            if(requests == 0){
+                return 0;
+            }
+            if(!sorted){
+                Arrays.sort(latencies, 0, (int) requests);
+                sorted = true;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * requests) - 1;
+            return latencies[(int) Math.max(0, Math.min(index, requests - 1))] / 1000000.0;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opoopress.maven.plugins.plugin.jetty;
+
+import org.mortbay.io.Buffer;
+import org.mortbay.jetty.HttpConnection;
+import org.mortbay.jetty.MimeTypes;
+import org.mortbay.jetty.Request;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * @author Alex Lin
+ */
+class Handlers {
+    private static final MimeTypes MIME_TYPES = new MimeTypes();
+
+    private Handlers(){
+    }
+
+    static void setHandled(HttpServletRequest request){
+        Request baseRequest = (request instanceof Request) ? (Request) request
+                : HttpConnection.getCurrentConnection().getRequest();
+        baseRequest.setHandled(true);
+    }
+
+    static String getContentType(String path){
+        Buffer mimeType = MIME_TYPES.getMimeByExtension(path);
+        if(mimeType == null){
+            return "application/octet-stream";
+        }
+        String type = mimeType.toString();
+        //rendered pages are written in UTF-8
+        if(type.startsWith("text/html")){
+            return "text/html; charset=UTF-8";
+        }
+        return type;
+    }
+}
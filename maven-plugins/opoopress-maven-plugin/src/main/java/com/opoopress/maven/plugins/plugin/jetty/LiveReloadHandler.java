@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opoopress.maven.plugins.plugin.jetty;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.util.URIUtil;
+import org.opoo.press.impl.MemoryOutputStore;
+import org.opoo.press.impl.SiteObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the changed urls of site to browsers by server-sent events, and injects
+ * the client script to html pages.
+ *
+ * <ul>
+ *     <li><code>/__livereload/events</code>: the event stream, a <code>change</code>
+ *     event is sent after each rebuild.</li>
+ *     <li><code>/__livereload/client.js</code>: the client script, it reloads the
+ *     page if the page changed, or replaces the changed style sheets without
+ *     reloading.</li>
+ * </ul>
+ *
+ * <p>Browsers reconnect to the event stream automatically when server restarted
+ * (e.g. configuration changed), and reload the page because the server id changed.</p>
+ *
+ * @author Alex Lin
+ */
+public class LiveReloadHandler extends AbstractHandler implements SiteObserver.Listener {
+    private static final Logger log = LoggerFactory.getLogger(LiveReloadHandler.class);
+
+    public static final String PATH_PREFIX = "/__livereload/";
+    private static final String EVENTS_PATH = PATH_PREFIX + "events";
+    private static final String CLIENT_PATH = PATH_PREFIX + "client.js";
+    private static final long HEARTBEAT_MILLIS = 15000;
+    private static final String CLOSE = "";
+
+    private final File resourceBase;
+    private final MemoryOutputStore memoryOutputStore;
+    private final String root;
+    private final String serverId = Long.toString(System.currentTimeMillis(), 36);
+    private final Collection<BlockingQueue<String>> clients = new CopyOnWriteArrayList<BlockingQueue<String>>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] clientScript;
+
+    /**
+     * @param resourceBase the directory of site output files
+     * @param memoryOutputStore the site outputs in memory, or null if outputs are in resource base
+     * @param root the root of site
+     */
+    public LiveReloadHandler(File resourceBase, MemoryOutputStore memoryOutputStore, String root) {
+        this.resourceBase = resourceBase;
+        this.memoryOutputStore = memoryOutputStore;
+        this.root = root;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        InputStream stream = LiveReloadHandler.class.getResourceAsStream("livereload.js");
+        if(stream == null){
+            throw new IllegalStateException("Live reload client script not found.");
+        }
+        try{
+            clientScript = IOUtils.toByteArray(stream);
+        }finally {
+            IOUtils.closeQuietly(stream);
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        for(BlockingQueue<String> queue: clients){
+            queue.offer(CLOSE);
+        }
+        super.doStop();
+    }
+
+    @Override
+    public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+            throws IOException, ServletException {
+        if(!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())){
+            return;
+        }
+
+        if(EVENTS_PATH.equals(target)){
+            Handlers.setHandled(request);
+            streamEvents(response);
+        }else if(CLIENT_PATH.equals(target)){
+            Handlers.setHandled(request);
+            response.setContentType("application/javascript; charset=UTF-8");
+            response.setHeader("Cache-Control", "no-cache");
+            response.setContentLength(clientScript.length);
+            response.getOutputStream().write(clientScript);
+        }else{
+            byte[] html = getHtml(target);
+            if(html != null){
+                Handlers.setHandled(request);
+                writeHtml(html, request, response);
+            }
+        }
+    }
+
+    private byte[] getHtml(String target) throws IOException {
+        String path = URIUtil.canonicalPath(target);
+        if(path == null){
+            return null;
+        }
+        if(path.endsWith("/")){
+            path += "index.html";
+        }
+        String lowerCase = path.toLowerCase();
+        if(!lowerCase.endsWith(".html") && !lowerCase.endsWith(".htm")){
+            return null;
+        }
+
+        File file;
+        if(memoryOutputStore != null){
+            memoryOutputStore.requested(path);
+            MemoryOutputStore.Entry entry = memoryOutputStore.get(path);
+            if(entry == null){
+                return null;
+            }
+            if(entry.getContent() != null){
+                return entry.getContent();
+            }
+            file = entry.getFile();
+        }else{
+            file = new File(resourceBase, path);
+        }
+        return file.isFile() ? FileUtils.readFileToByteArray(file) : null;
+    }
+
+    private void writeHtml(byte[] html, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        byte[] bytes = injectScript(new String(html, "UTF-8")).getBytes("UTF-8");
+        response.setContentType("text/html; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentLength(bytes.length);
+        if(!"HEAD".equals(request.getMethod())){
+            response.getOutputStream().write(bytes);
+        }
+    }
+
+    /**
+     * Injects the client script before the last <code>&lt;/body&gt;</code>, or
+     * appends to the end of html if not found.
+     */
+    String injectScript(String html){
+        String script = "<script src=\"" + root + CLIENT_PATH + "\"></script>";
+        int index = html.toLowerCase().lastIndexOf("</body>");
+        if(index == -1){
+            return html + script;
+        }
+        return html.substring(0, index) + script + html.substring(index);
+    }
+
+    private void streamEvents(HttpServletResponse response) throws IOException {
+        response.setContentType("text/event-stream; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        OutputStream out = response.getOutputStream();
+
+        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+        clients.add(queue);
+        log.debug("Live reload client connected, {} clients.", clients.size());
+        try{
+            write(out, "retry: 2000\nevent: hello\ndata: " + serverId + "\n\n");
+            while(isRunning()){
+                String event = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if(event == CLOSE){
+                    break;
+                }
+                //comment line as heartbeat, also detects the closed connections
+                write(out, event != null ? event : ": ping\n\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.debug("Live reload client disconnected: {}", e.getMessage());
+        } finally {
+            clients.remove(queue);
+        }
+    }
+
+    private static void write(OutputStream out, String string) throws IOException {
+        out.write(string.getBytes("UTF-8"));
+        out.flush();
+    }
+
+    @Override
+    public void siteChanged(Collection<String> urls, boolean all) {
+        if(clients.isEmpty()){
+            return;
+        }
+        Map<String,Object> data = new LinkedHashMap<String, Object>();
+        data.put("all", all);
+        data.put("urls", urls);
+        String event;
+        try {
+            event = "event: change\ndata: " + objectMapper.writeValueAsString(data) + "\n\n";
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Notifying {} live reload client(s).", clients.size());
+        for(BlockingQueue<String> queue: clients){
+            queue.offer(event);
+        }
+    }
+}
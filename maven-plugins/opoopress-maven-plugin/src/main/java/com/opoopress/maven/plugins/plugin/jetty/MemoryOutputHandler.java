@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opoopress.maven.plugins.plugin.jetty;
+
+import org.apache.commons.io.FileUtils;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.util.URIUtil;
+import org.opoo.press.impl.MemoryOutputStore;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the site outputs from {@link MemoryOutputStore}, with ETag and
+ * Last-Modified headers, responds 304 if not modified.
+ *
+ * @author Alex Lin
+ */
+public class MemoryOutputHandler extends AbstractHandler {
+    private final MemoryOutputStore store;
+
+    public MemoryOutputHandler(MemoryOutputStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+            throws IOException, ServletException {
+        if(!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())){
+            return;
+        }
+
+        String path = URIUtil.canonicalPath(target);
+        if(path == null){
+            return;
+        }
+
+        if(path.endsWith("/")){
+            store.requested(path + "index.html");
+        }else if(path.endsWith(".html")){
+            store.requested(path);
+        }
+        MemoryOutputStore.Entry entry = store.get(path.endsWith("/") ? path + "index.html" : path);
+        if(entry == null){
+            if(!path.endsWith("/") && store.get(path + "/index.html") != null){
+                Handlers.setHandled(request);
+                response.sendRedirect(request.getRequestURI() + "/");
+            }
+            return;
+        }
+
+        Handlers.setHandled(request);
+        String etag = entry.getETag();
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", entry.getLastModified());
+        //preview, always revalidate
+        response.setHeader("Cache-Control", "no-cache");
+
+        if(etag.equals(request.getHeader("If-None-Match"))){
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(Handlers.getContentType(path.endsWith("/") ? "index.html" : path));
+        response.setContentLength((int) entry.getLength());
+        if("HEAD".equals(request.getMethod())){
+            return;
+        }
+        if(entry.getContent() != null){
+            response.getOutputStream().write(entry.getContent());
+        }else{
+            FileUtils.copyFile(entry.getFile(), response.getOutputStream());
+        }
+    }
+}
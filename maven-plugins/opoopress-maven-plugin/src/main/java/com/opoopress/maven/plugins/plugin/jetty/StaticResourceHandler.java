@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opoopress.maven.plugins.plugin.jetty;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.util.URIUtil;
+import org.opoo.press.impl.GzipSidecars;
+import org.opoo.util.DigestUtils;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the files of site destination directory.
+ *
+ * <ul>
+ *     <li>Strong ETag by the MD5 digest of file, Last-Modified, responds 304 if
+ *     the client has the current version.</li>
+ *     <li>Gzip: serves the precompressed sidecar (<code>.gz</code>) if exists and
+ *     not older than the file, otherwise compresses the text files larger than 1K
+ *     on the fly.</li>
+ *     <li>Cache-Control by the first matched path pattern.</li>
+ * </ul>
+ *
+ * <p>The cache control rules are separated by ';', each rule is <code>pattern:value</code>,
+ * e.g. <code>*.html:no-cache;/stylesheets/**:public, max-age=31536000</code>. In
+ * pattern, '**' matches any path, '*' matches any characters except '/'. A
+ * pattern without '/' matches the file name in any directory.</p>
+ *
+ * @author Alex Lin
+ */
+public class StaticResourceHandler extends AbstractHandler {
+    private static final int MIN_COMPRESS_LENGTH = 1024;
+    private static final Pattern COMPRESSIBLE = Pattern.compile(
+            "text/.*|application/(javascript|x-javascript|json|xml|rss\\+xml|atom\\+xml)|image/svg\\+xml");
+
+    private final File resourceBase;
+    private final Map<Pattern,String> cacheControlRules;
+    //path => {lastModified, length, digest}
+    private final ConcurrentMap<String,Object[]> digests = new ConcurrentHashMap<String, Object[]>();
+
+    /**
+     * @param resourceBase the destination directory of site
+     * @param cacheControl the cache control rules, or null if none
+     */
+    public StaticResourceHandler(File resourceBase, String cacheControl) {
+        this.resourceBase = resourceBase;
+        this.cacheControlRules = parseCacheControlRules(cacheControl);
+    }
+
+    @Override
+    public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+            throws IOException, ServletException {
+        if(!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())){
+            return;
+        }
+
+        String path = URIUtil.canonicalPath(target);
+        if(path == null){
+            return;
+        }
+        File file = new File(resourceBase, path);
+        if(file.isDirectory()){
+            if(!path.endsWith("/")){
+                Handlers.setHandled(request);
+                response.sendRedirect(request.getRequestURI() + "/");
+                return;
+            }
+            path += "index.html";
+            file = new File(file, "index.html");
+        }
+        if(!file.isFile()){
+            return;
+        }
+        Handlers.setHandled(request);
+
+        String contentType = Handlers.getContentType(path);
+        File sidecar = GzipSidecars.getSidecarFile(file);
+        //the sidecar of a file changed by others is stale
+        boolean hasSidecar = sidecar.isFile() && sidecar.lastModified() >= file.lastModified();
+        boolean compressible = hasSidecar
+                || (COMPRESSIBLE.matcher(contentType).matches() && file.length() >= MIN_COMPRESS_LENGTH);
+        boolean gzip = compressible && acceptsGzip(request);
+
+        long lastModified = file.lastModified() / 1000 * 1000;
+        String etag = "\"" + getDigest(path, file) + (gzip ? "-gz" : "") + "\"";
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        if(compressible){
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        String cacheControl = getCacheControl(path);
+        if(cacheControl != null){
+            response.setHeader("Cache-Control", cacheControl);
+        }
+
+        if(isNotModified(request, etag, lastModified)){
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(contentType);
+        boolean head = "HEAD".equals(request.getMethod());
+        if(gzip){
+            response.setHeader("Content-Encoding", "gzip");
+            if(hasSidecar){
+                response.setContentLength((int) sidecar.length());
+                if(!head){
+                    FileUtils.copyFile(sidecar, response.getOutputStream());
+                }
+            }else if(!head){
+                GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream());
+                FileUtils.copyFile(file, out);
+                out.finish();
+            }
+        }else{
+            response.setContentLength((int) file.length());
+            if(!head){
+                FileUtils.copyFile(file, response.getOutputStream());
+            }
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request){
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, String etag, long lastModified){
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if(ifNoneMatch != null){
+            for(String tag: StringUtils.split(ifNoneMatch, ',')){
+                tag = tag.trim();
+                if(tag.equals("*") || tag.equals(etag)){
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = -1;
+        try{
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        }catch(IllegalArgumentException e){
+            //invalid date
+        }
+        return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+    }
+
+    private String getDigest(String path, File file) throws IOException {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Object[] cached = digests.get(path);
+        if(cached != null && (Long) cached[0] == lastModified && (Long) cached[1] == length){
+            return (String) cached[2];
+        }
+        String digest = DigestUtils.md5Hex(file);
+        digests.put(path, new Object[]{lastModified, length, digest});
+        return digest;
+    }
+
+    String getCacheControl(String path){
+        for(Map.Entry<Pattern,String> entry: cacheControlRules.entrySet()){
+            if(entry.getKey().matcher(path).matches()){
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    static Map<Pattern,String> parseCacheControlRules(String cacheControl){
+        Map<Pattern,String> rules = new LinkedHashMap<Pattern, String>();
+        if(StringUtils.isBlank(cacheControl)){
+            return rules;
+        }
+        for(String rule: StringUtils.split(cacheControl, ';')){
+            int index = rule.indexOf(':');
+            if(index < 1){
+                throw new IllegalArgumentException("Invalid cache control rule: " + rule);
+            }
+            String pattern = rule.substring(0, index).trim();
+            if(!pattern.contains("/")){
+                pattern = "**/" + pattern;
+            }else if(!pattern.startsWith("/")){
+                pattern = "/" + pattern;
+            }
+            rules.put(toRegex(pattern), rule.substring(index + 1).trim());
+        }
+        return rules;
+    }
+
+    private static Pattern toRegex(String glob){
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < glob.length(); i++){
+            char c = glob.charAt(i);
+            if(c == '*'){
+                if(i + 1 < glob.length() && glob.charAt(i + 1) == '*'){
+                    i++;
+                    //'**/' matches zero or more directories
+                    if(i + 1 < glob.length() && glob.charAt(i + 1) == '/'){
+                        i++;
+                        sb.append("(?:.*/)?");
+                    }else{
+                        sb.append(".*");
+                    }
+                }else{
+                    sb.append("[^/]*");
+                }
+            }else if(c == '?'){
+                sb.append("[^/]");
+            }else{
+                sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(sb.toString());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * OpooPress live reload client, injected to html pages by preview server.
+ * Reloads the page if the page changed, replaces the changed style sheets
+ * and images without reloading.
+ */
+(function () {
+    if (!window.EventSource || !window.JSON) {
+        return;
+    }
+
+    var scripts = document.getElementsByTagName('script');
+    var src = (document.currentScript || scripts[scripts.length - 1]).src;
+    var source = new EventSource(src.replace(/client\.js(\?.*)?$/, 'events'));
+    var serverId = null;
+
+    function pathOf(url) {
+        var a = document.createElement('a');
+        a.href = url;
+        var path = a.pathname;
+        if (path.charAt(0) !== '/') {
+            path = '/' + path;
+        }
+        return decodeURI(path).replace(/index\.html?$/, '');
+    }
+
+    function indexOf(paths, url) {
+        var path = pathOf(url);
+        for (var i = 0; i < paths.length; i++) {
+            if (paths[i] === path) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    function bust(url) {
+        return url.replace(/([?&])livereload=\d+&?/, '$1').replace(/[?&]$/, '')
+            + (url.indexOf('?') === -1 ? '?' : '&') + 'livereload=' + new Date().getTime();
+    }
+
+    function each(selector, fn) {
+        var list = document.querySelectorAll(selector);
+        for (var i = 0; i < list.length; i++) {
+            fn(list[i]);
+        }
+    }
+
+    function apply(data) {
+        if (data.all) {
+            location.reload();
+            return;
+        }
+
+        var paths = [];
+        for (var i = 0; i < data.urls.length; i++) {
+            paths.push(pathOf(data.urls[i]));
+        }
+
+        var reload = indexOf(paths, location.href) !== -1;
+        each('script[src]', function (script) {
+            reload = reload || indexOf(paths, script.src) !== -1;
+        });
+        if (reload) {
+            location.reload();
+            return;
+        }
+
+        each('link[rel~="stylesheet"][href]', function (link) {
+            if (indexOf(paths, link.href) !== -1) {
+                link.href = bust(link.getAttribute('href'));
+            }
+        });
+        each('img[src]', function (img) {
+            if (indexOf(paths, img.src) !== -1) {
+                img.src = bust(img.getAttribute('src'));
+            }
+        });
+    }
+
+    source.addEventListener('hello', function (e) {
+        if (serverId !== null && serverId !== e.data) {
+            //server restarted, the whole site was rebuilt
+            location.reload();
+            return;
+        }
+        serverId = e.data;
+    });
+
+    source.addEventListener('change', function (e) {
+        apply(JSON.parse(e.data));
+    });
+})();
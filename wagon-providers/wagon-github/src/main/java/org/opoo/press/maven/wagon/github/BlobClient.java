@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.maven.wagon.github;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.eclipse.egit.github.core.ShaResource;
+import org.eclipse.egit.github.core.client.GitHubClient;
+
+/**
+ * GitHub client which sends the content of blob in a stream: the file is
+ * base64 encoded while writing the request body, never held in memory as
+ * a whole.
+ *
+ * @author Alex Lin
+ */
+class BlobClient extends GitHubClient {
+	private static final int CONNECT_TIMEOUT = 30 * 1000;
+	private static final int READ_TIMEOUT = 5 * 60 * 1000;
+	/**
+	 * Multiple of 3, so only the last chunk is padded.
+	 */
+	private static final int CHUNK_SIZE = 3 * 8192;
+	private static final byte[] BASE64 = ascii("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+	private static final byte[] JSON_PREFIX = ascii("{\"encoding\":\"base64\",\"content\":\"");
+	private static final byte[] JSON_SUFFIX = ascii("\"}");
+
+	BlobClient() {
+		super();
+	}
+
+	BlobClient(String hostname) {
+		super(hostname);
+	}
+
+	BlobClient(String hostname, int port, String scheme) {
+		super(hostname, port, scheme);
+	}
+
+	@Override
+	protected HttpURLConnection configureRequest(HttpURLConnection request) {
+		super.configureRequest(request);
+		request.setConnectTimeout(CONNECT_TIMEOUT);
+		request.setReadTimeout(READ_TIMEOUT);
+		return request;
+	}
+
+	/**
+	 * Creates a blob with the content read from stream.
+	 *
+	 * @param repository the repository
+	 * @param content the content, exactly <code>length</code> bytes are read
+	 * @param length the length of content
+	 * @return SHA-1 of the created blob
+	 * @throws StatusException if GitHub responds an error
+	 * @throws ContentException if the content can not be read
+	 * @throws IOException
+	 */
+	String createBlob(IRepositoryIdProvider repository, InputStream content, long length) throws IOException {
+		long bodyLength = JSON_PREFIX.length + (length + 2) / 3 * 4 + JSON_SUFFIX.length;
+		if (bodyLength > Integer.MAX_VALUE){
+			throw new ContentException("Blob too large: " + length + " bytes", null);
+		}
+
+		HttpURLConnection request = createPost("/repos/" + repository.generateId() + "/git/blobs");
+		request.setDoOutput(true);
+		request.setRequestProperty(HEADER_CONTENT_TYPE, "application/json; charset=UTF-8");
+		request.setFixedLengthStreamingMode((int) bodyLength);
+
+		OutputStream output = request.getOutputStream();
+		try {
+			output.write(JSON_PREFIX);
+			encode(content, output, length);
+			output.write(JSON_SUFFIX);
+			output.close();
+		} finally {
+			IOUtils.closeQuietly(output);
+		}
+
+		int code = request.getResponseCode();
+		updateRateLimits(request);
+		if (isOk(code)){
+			ShaResource created = parseJson(getStream(request), ShaResource.class);
+			return created.getSha();
+		}
+		IOException e = createException(getStream(request), code, request.getResponseMessage());
+		throw new StatusException(e, code, getRetryAfter(request));
+	}
+
+	/**
+	 * The time to wait before next request, from header <code>Retry-After</code>
+	 * or the reset time of exhausted rate limit.
+	 *
+	 * @return milliseconds, or -1 if not specified
+	 */
+	private static long getRetryAfter(HttpURLConnection request) {
+		String retryAfter = request.getHeaderField("Retry-After");
+		if (StringUtils.isNumeric(retryAfter) && retryAfter.length() > 0){
+			return Long.parseLong(retryAfter) * 1000L;
+		}
+		String reset = request.getHeaderField("X-RateLimit-Reset");
+		if ("0".equals(request.getHeaderField("X-RateLimit-Remaining"))
+				&& StringUtils.isNumeric(reset) && reset.length() > 0){
+			return Math.max(0, Long.parseLong(reset) * 1000L - System.currentTimeMillis());
+		}
+		return -1;
+	}
+
+	/**
+	 * Base64 encodes <code>length</code> bytes of input to output.
+	 */
+	static void encode(InputStream input, OutputStream output, long length) throws IOException {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		byte[] encoded = new byte[CHUNK_SIZE / 3 * 4];
+		long remaining = length;
+		while (remaining > 0){
+			int size = (int) Math.min(chunk.length, remaining);
+			int read = 0;
+			while (read < size){
+				int n;
+				try {
+					n = input.read(chunk, read, size - read);
+				} catch (IOException e) {
+					throw new ContentException("Reading content failed: " + e.getMessage(), e);
+				}
+				if (n == -1){
+					throw new ContentException("Content shorter than " + length + " bytes, file changed?",
+							new EOFException());
+				}
+				read += n;
+			}
+			remaining -= size;
+			output.write(encoded, 0, encode(chunk, size, encoded));
+		}
+	}
+
+	private static int encode(byte[] input, int length, byte[] output) {
+		int o = 0;
+		int i = 0;
+		for (; i + 3 <= length; i += 3){
+			int bits = (input[i] & 0xff) << 16 | (input[i + 1] & 0xff) << 8 | (input[i + 2] & 0xff);
+			output[o++] = BASE64[bits >>> 18 & 0x3f];
+			output[o++] = BASE64[bits >>> 12 & 0x3f];
+			output[o++] = BASE64[bits >>> 6 & 0x3f];
+			output[o++] = BASE64[bits & 0x3f];
+		}
+		int rest = length - i;
+		if (rest > 0){
+			int bits = (input[i] & 0xff) << 16 | (rest == 2 ? (input[i + 1] & 0xff) << 8 : 0);
+			output[o++] = BASE64[bits >>> 18 & 0x3f];
+			output[o++] = BASE64[bits >>> 12 & 0x3f];
+			output[o++] = rest == 2 ? BASE64[bits >>> 6 & 0x3f] : (byte) '=';
+			output[o++] = '=';
+		}
+		return o;
+	}
+
+	private static byte[] ascii(String string) {
+		try {
+			return string.getBytes("US-ASCII");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * The content of blob can not be read, e.g. the file deleted or changed
+	 * while uploading, sending it again does not help.
+	 */
+	static class ContentException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ContentException(String message, IOException cause) {
+			super(message, cause);
+		}
+	}
+
+	/**
+	 * The error response of GitHub, with the status code and the time to wait.
+	 */
+	static class StatusException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final int status;
+		private final long retryAfterMillis;
+
+		StatusException(IOException cause, int status, long retryAfterMillis) {
+			super(cause.getMessage(), cause);
+			this.status = status;
+			this.retryAfterMillis = retryAfterMillis;
+		}
+
+		int getStatus() {
+			return status;
+		}
+
+		long getRetryAfterMillis() {
+			return retryAfterMillis;
+		}
+
+		/**
+		 * Rate limited, GitHub responds 403 for the exhausted and the secondary
+		 * rate limits.
+		 */
+		boolean isThrottled() {
+			if (status == 429){
+				return true;
+			}
+			return status == HttpURLConnection.HTTP_FORBIDDEN && (retryAfterMillis >= 0
+					|| StringUtils.containsIgnoreCase(getMessage(), "rate limit")
+					|| StringUtils.containsIgnoreCase(getMessage(), "abuse"));
+		}
+
+		boolean isRetryable() {
+			return isThrottled() || status >= 500;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.maven.wagon.github;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads blobs concurrently, the number of concurrent uploads adapts to the
+ * latency and the rate limit responses of GitHub, up to the number of threads.
+ *
+ * <p>The failed uploads are retried with exponential backoff when GitHub
+ * throttles, responds a server error or the connection fails, but not when
+ * the local file can not be read. The progress and throughput are reported
+ * periodically.</p>
+ *
+ * @author Alex Lin
+ */
+class BlobUploader {
+	private static final Logger log = LoggerFactory.getLogger(BlobUploader.class);
+	private static final int MAX_RETRIES = 5;
+	private static final long BACKOFF_BASE_MILLIS = 1000;
+	private static final long BACKOFF_MAX_MILLIS = 60 * 1000;
+	private static final long REPORT_INTERVAL_MILLIS = 5000;
+	/**
+	 * Latencies are normalized per this size, so large files do not look like congestion.
+	 */
+	private static final double LATENCY_UNIT_BYTES = 64 * 1024;
+
+	private final BlobClient client;
+	private final IRepositoryIdProvider repository;
+	private final int numThreads;
+	private final ConcurrencyLimiter limiter;
+	private final Random random = new Random();
+
+	private final AtomicInteger uploadedBlobs = new AtomicInteger();
+	private final AtomicLong uploadedBytes = new AtomicLong();
+	private int totalBlobs;
+	private long totalBytes;
+	private long startTime;
+	private long lastReportTime;
+
+	/**
+	 * @param client the client
+	 * @param repository the repository
+	 * @param numThreads the maximum number of concurrent uploads
+	 */
+	BlobUploader(BlobClient client, IRepositoryIdProvider repository, int numThreads) {
+		this.client = client;
+		this.repository = repository;
+		this.numThreads = Math.max(1, numThreads);
+		this.limiter = new ConcurrencyLimiter(this.numThreads);
+	}
+
+	/**
+	 * @param blobs the local SHA-1 of blob =&gt; the file of content, null for an empty blob
+	 * @return the local SHA-1 =&gt; SHA-1 of the created blob
+	 * @throws GitHubException
+	 */
+	Map<String,String> upload(Map<String,File> blobs) throws GitHubException {
+		totalBlobs = blobs.size();
+		for (File file : blobs.values()){
+			totalBytes += file != null ? file.length() : 0;
+		}
+		startTime = System.currentTimeMillis();
+		lastReportTime = startTime;
+		log.info(String.format("Uploading %d blobs, %.2f MB", totalBlobs, totalBytes / 1048576.0));
+
+		ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);
+		CompletionService<String[]> cs = new ExecutorCompletionService<String[]>(threadPool);
+		for (final Map.Entry<String,File> entry : blobs.entrySet()){
+			cs.submit(new Callable<String[]>() {
+				@Override
+				public String[] call() throws Exception {
+					return new String[]{entry.getKey(), upload(entry.getKey(), entry.getValue())};
+				}
+			});
+		}
+
+		Map<String,String> created = new HashMap<String, String>();
+		try {
+			for (int i = 0 ; i < blobs.size() ; i++){
+				String[] result = cs.take().get();
+				created.put(result[0], result[1]);
+			}
+		} catch (InterruptedException e) {
+			throw new GitHubException("Uploading blobs interrupted", e);
+		} catch (ExecutionException e) {
+			throw new GitHubException("Error creating blob: " + e.getCause().getMessage(), e.getCause());
+		} finally {
+			// stops the other uploads on failure
+			threadPool.shutdownNow();
+		}
+
+		long millis = Math.max(1, System.currentTimeMillis() - startTime);
+		log.info(String.format("Uploaded %d blobs, %.2f MB in %.1fs, %.2f MB/s", totalBlobs,
+				totalBytes / 1048576.0, millis / 1000.0, totalBytes / 1048576.0 / (millis / 1000.0)));
+		return created;
+	}
+
+	private String upload(String sha, File file) throws IOException, InterruptedException {
+		if (file != null && !file.isFile()){
+			throw new FileNotFoundException(file.getAbsolutePath());
+		}
+		long length = file != null ? file.length() : 0;
+
+		for (int attempt = 0 ; ; attempt++){
+			long retryDelay;
+			limiter.acquire();
+			try {
+				long start = System.currentTimeMillis();
+				String created = send(file, length);
+				limiter.onSuccess((System.currentTimeMillis() - start) / (1 + length / LATENCY_UNIT_BYTES));
+				if (log.isDebugEnabled()){
+					log.debug("Created blob " + created + " from " + file);
+				}
+				uploaded(length);
+				return created;
+			} catch (BlobClient.StatusException e) {
+				if (!e.isRetryable() || attempt >= MAX_RETRIES){
+					throw e;
+				}
+				if (e.isThrottled()){
+					limiter.onThrottled(e.getRetryAfterMillis());
+				}
+				retryDelay = Math.max(e.getRetryAfterMillis(), getBackoff(attempt));
+				log.warn(String.format("Creating blob %s failed (%d), retry in %dms: %s",
+						sha, e.getStatus(), retryDelay, e.getMessage()));
+			} catch (BlobClient.ContentException e) {
+				throw e;
+			} catch (IOException e) {
+				// e.g. connection reset or timeout
+				if (attempt >= MAX_RETRIES){
+					throw e;
+				}
+				limiter.onFailure();
+				retryDelay = getBackoff(attempt);
+				log.warn(String.format("Creating blob %s failed, retry in %dms: %s", sha, retryDelay, e.getMessage()));
+			} finally {
+				limiter.release();
+			}
+			Thread.sleep(retryDelay);
+		}
+	}
+
+	private String send(File file, long length) throws IOException {
+		InputStream content = null;
+		try {
+			content = file != null ? open(file) : new ByteArrayInputStream(new byte[0]);
+			return client.createBlob(repository, content, length);
+		} finally {
+			IOUtils.closeQuietly(content);
+		}
+	}
+
+	private static InputStream open(File file) throws BlobClient.ContentException {
+		try {
+			return new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			throw new BlobClient.ContentException("File not found: " + file, e);
+		}
+	}
+
+	/**
+	 * Exponential backoff with jitter, so the retries of concurrent uploads
+	 * are spread.
+	 */
+	private long getBackoff(int attempt) {
+		long delay = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << attempt);
+		synchronized (random){
+			return delay / 2 + (long) (random.nextDouble() * delay / 2);
+		}
+	}
+
+	private void uploaded(long length) {
+		int blobs = uploadedBlobs.incrementAndGet();
+		long bytes = uploadedBytes.addAndGet(length);
+		long now = System.currentTimeMillis();
+		synchronized (this){
+			if (now - lastReportTime < REPORT_INTERVAL_MILLIS || blobs == totalBlobs){
+				return;
+			}
+			lastReportTime = now;
+		}
+		double seconds = Math.max(1, now - startTime) / 1000.0;
+		log.info(String.format("Uploaded %d/%d blobs, %.2f/%.2f MB, %.2f MB/s, %d concurrent uploads",
+				blobs, totalBlobs, bytes / 1048576.0, totalBytes / 1048576.0,
+				bytes / 1048576.0 / seconds, limiter.getLimit()));
+	}
+}
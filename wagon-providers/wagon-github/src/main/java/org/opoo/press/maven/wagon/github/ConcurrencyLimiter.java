@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.maven.wagon.github;
+
+/**
+ * Adaptive limit of concurrent requests.
+ *
+ * <p>The limit grows by one per round of requests while the latency stays
+ * close to the best seen, and shrinks when the latency grows (the server or
+ * network is congested) or the server throttles. A throttled response may
+ * also pause all requests for the time the server asks.</p>
+ *
+ * @author Alex Lin
+ */
+class ConcurrencyLimiter {
+	/**
+	 * The latency above the base latency multiplied by this is congestion.
+	 */
+	private static final double LATENCY_TOLERANCE = 2.0;
+	private static final double CONGESTION_RATIO = 0.9;
+	private static final double THROTTLE_RATIO = 0.5;
+	/**
+	 * The base latency follows the samples slowly, so a stale minimum does not
+	 * keep the limit low forever.
+	 */
+	private static final double BASE_LATENCY_DRIFT = 0.01;
+
+	private final int maxLimit;
+	private double limit;
+	private int inFlight;
+	private double baseLatency = -1;
+	private long pausedUntil;
+
+	/**
+	 * @param maxLimit the maximum number of concurrent requests
+	 */
+	ConcurrencyLimiter(int maxLimit) {
+		this.maxLimit = Math.max(1, maxLimit);
+		this.limit = Math.max(1, (this.maxLimit + 1) / 2);
+	}
+
+	/**
+	 * Waits until a request is allowed.
+	 */
+	synchronized void acquire() throws InterruptedException {
+		while (true){
+			long pause = pausedUntil - System.currentTimeMillis();
+			if (pause > 0){
+				wait(pause);
+			} else if (inFlight < (int) limit){
+				inFlight++;
+				return;
+			} else {
+				wait();
+			}
+		}
+	}
+
+	/**
+	 * Called after each request acquired, succeeded or not.
+	 */
+	synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+
+	/**
+	 * @param latency the latency of a successful request, normalized by size
+	 */
+	synchronized void onSuccess(double latency) {
+		if (baseLatency < 0 || latency < baseLatency){
+			baseLatency = latency;
+		} else {
+			baseLatency += (latency - baseLatency) * BASE_LATENCY_DRIFT;
+		}
+
+		if (latency > baseLatency * LATENCY_TOLERANCE){
+			setLimit(limit * CONGESTION_RATIO);
+		} else if (inFlight >= (int) limit){
+			// only grows when the limit is used up
+			setLimit(limit + 1.0 / limit);
+		}
+	}
+
+	/**
+	 * Called when a request failed without response, e.g. timeout.
+	 */
+	synchronized void onFailure() {
+		setLimit(limit * CONGESTION_RATIO);
+	}
+
+	/**
+	 * @param retryAfterMillis the time to pause all requests, or -1
+	 */
+	synchronized void onThrottled(long retryAfterMillis) {
+		setLimit(limit * THROTTLE_RATIO);
+		if (retryAfterMillis > 0){
+			pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + retryAfterMillis);
+		}
+	}
+
+	synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	private void setLimit(double limit) {
+		this.limit = Math.max(1, Math.min(maxLimit, limit));
+		notifyAll();
+	}
+}
@@ -15,47 +15,50 @@
  */
 package org.opoo.press.maven.wagon.github;
 
-import static org.eclipse.egit.github.core.Blob.ENCODING_BASE64;
 import static org.eclipse.egit.github.core.TreeEntry.MODE_BLOB;
 import static org.eclipse.egit.github.core.TreeEntry.TYPE_BLOB;
 import static org.eclipse.egit.github.core.TypedResource.TYPE_COMMIT;
 
 import java.io.Console;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import org.apache.commons.io.FileUtils;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.codehaus.plexus.util.DirectoryScanner;
-import org.eclipse.egit.github.core.Blob;
 import org.eclipse.egit.github.core.Commit;
 import org.eclipse.egit.github.core.Reference;
 import org.eclipse.egit.github.core.RepositoryId;
 import org.eclipse.egit.github.core.Tree;
 import org.eclipse.egit.github.core.TreeEntry;
 import org.eclipse.egit.github.core.TypedResource;
-import org.eclipse.egit.github.core.client.GitHubClient;
 import org.eclipse.egit.github.core.client.RequestException;
 import org.eclipse.egit.github.core.service.DataService;
-import org.eclipse.egit.github.core.util.EncodingUtils;
 
 /**
  * Pure java GitHub client wagon.
+ * <p>
+ * The git blob SHA-1 of each file is computed locally and compared with the
+ * blobs of the current tree of branch, only the new or changed files are
+ * uploaded, the unchanged entries reference the existing blobs. The blobs
+ * are uploaded by {@link BlobUploader}.
  * @author Alex Lin
  * @author Kevin Sawicki (kevin@github.com)
  */
@@ -226,7 +229,7 @@ public class GitHub{
 		String[] paths = getPaths(outputDirectory);
 		String prefix = getPrefix(destinationDirectory);
 		
-		GitHubClient client = createClient(host, userName, password, oauth2Token);
+		BlobClient client = createClient(host, userName, password, oauth2Token);
 		DataService service = new DataService(client);
 		
 		boolean createNoJekyll = noJekyll;
@@ -240,29 +243,47 @@ public class GitHub{
 			}
 		}
 
-		// Write blobs and build tree entries
+		Reference ref = getReference(service, repository);
+
+		// The blobs already in repository
+		Set<String> remoteBlobs = getRemoteBlobs(service, repository, ref);
+		// SHA-1 => content of the blobs to upload
+		Map<String,File> blobs = new LinkedHashMap<String, File>();
+
+		// Build tree entries
 		List<TreeEntry> entries = new ArrayList<TreeEntry>(paths.length);
-		if(numThreads <= 1){
-			createEntries(entries, prefix, paths, service, repository, outputDirectory);
-		}else{
-			createEntriesInThreads(entries, prefix, paths, service, repository, outputDirectory, numThreads);
+		for (String path : paths) {
+			entries.add(createEntry(prefix, path, outputDirectory, remoteBlobs, blobs));
 		}
 		
 		if (createNoJekyll) {
 			if (log.isDebugEnabled()){
 				log.debug("Creating empty '.nojekyll' blob at root of tree");
 			}
-			TreeEntry entry = createEntry("", NO_JEKYLL_FILE, service, repository, outputDirectory);
-			entries.add(entry);
+			entries.add(createEntry("", NO_JEKYLL_FILE, outputDirectory, remoteBlobs, blobs));
 		}
 
-		Reference ref = getReference(service, repository);
-		
+		log.info(MessageFormat.format("{0} blob(s) to upload, {1} entries unchanged",
+				blobs.size(), entries.size() - blobs.size()));
+
 		if(dryRun){
 			log.debug("Dry run mode, skip deploy.");
 			return;
 		}
 
+		// Write blobs
+		if (!blobs.isEmpty()){
+			Map<String,String> created = new BlobUploader(client, repository, numThreads).upload(blobs);
+			for (TreeEntry entry : entries){
+				String sha = created.get(entry.getSha());
+				if (sha != null && !sha.equals(entry.getSha())){
+					log.warn("Blob SHA-1 mismatch of '" + entry.getPath() + "': " + entry.getSha()
+							+ " (local), " + sha + " (GitHub)");
+					entry.setSha(sha);
+				}
+			}
+		}
+
 		// Write tree
 		Tree tree = createTree(service, repository, ref, entries);
 
@@ -276,21 +297,21 @@ public class GitHub{
 			commit.setParents(Collections.singletonList(new Commit().setSha(ref.getObject().getSha())));
 		}
 
-		Commit created;
+		Commit createdCommit;
 		try {
-			created = service.createCommit(repository, commit);
-			log.info(MessageFormat.format("Creating commit with SHA-1: {0}", created.getSha()));
+			createdCommit = service.createCommit(repository, commit);
+			log.info(MessageFormat.format("Creating commit with SHA-1: {0}", createdCommit.getSha()));
 		} catch (IOException e) {
 			throw new GitHubException("Error creating commit: " + e.getMessage(), e);
 		}
 
 		TypedResource object = new TypedResource();
-		object.setType(TYPE_COMMIT).setSha(created.getSha());
+		object.setType(TYPE_COMMIT).setSha(createdCommit.getSha());
 		if (ref != null) {
 			// Update existing reference
 			ref.setObject(object);
 			try {
-				log.info(String.format("Updating reference %s from %s to %s", branch, commit.getParents().get(0).getSha(), created.getSha()));
+				log.info(String.format("Updating reference %s from %s to %s", branch, commit.getParents().get(0).getSha(), createdCommit.getSha()));
 				service.editReference(repository, ref, force);
 			} catch (IOException e) {
 				throw new GitHubException("Error editing reference: " + e.getMessage(), e);
@@ -299,7 +320,7 @@ public class GitHub{
 			// Create new reference
 			ref = new Reference().setObject(object).setRef(branch);
 			try {
-				log.info(MessageFormat.format("Creating reference {0} starting at commit {1}", branch, created.getSha()));
+				log.info(MessageFormat.format("Creating reference {0} starting at commit {1}", branch, createdCommit.getSha()));
 				service.createReference(repository, ref);
 			} catch (IOException e) {
 				throw new GitHubException("Error creating reference: " + e.getMessage(), e);
@@ -307,49 +328,6 @@ public class GitHub{
 		}
 	}
 	
-	private List<TreeEntry> createEntries(List<TreeEntry> entries, final String prefix, final String[] paths, 
-			final DataService service, final RepositoryId repository, final File outputDirectory) throws GitHubException{
-		for (String path : paths) {
-			TreeEntry entry = createEntry(prefix, path, service, repository, outputDirectory);
-			entries.add(entry);
-		}
-		return entries;
-	}
-
-	private List<TreeEntry> createEntriesInThreads(List<TreeEntry> entries, final String prefix, final String[] paths, 
-			final DataService service, final RepositoryId repository, final File outputDirectory, int numThreads) throws GitHubException{
-		ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);//.newCachedThreadPool();  
-        CompletionService<TreeEntry> cs = new ExecutorCompletionService<TreeEntry>(threadPool);
-
-        for (final String path : paths) {
-			cs.submit(new Callable<TreeEntry>() {
-				@Override
-				public TreeEntry call() throws Exception {
-					return createEntry(prefix, path, service, repository, outputDirectory);
-				}
-			});
-		}
-		
-        try {
-        	//BUG: wait for ever??
-//			Future<TreeEntry> future = cs.take();
-//			while(future != null){
-//				entries.add(future.get());
-//				future = cs.take();
-//			}
-			
-        	for(int i = 0 ; i < paths.length ; i++){
-        		entries.add(cs.take().get());
-        	}
-			log.info("All entries created: " + paths.length);
-		} catch (InterruptedException e) {
-			throw new GitHubException("", e);
-		} catch (ExecutionException e) {
-			throw new GitHubException("", e);
-		}
-		return entries;
-	}
-
 	private Tree createTree(DataService service, RepositoryId repository, Reference ref, List<TreeEntry> entries) throws GitHubException {
 		try {
 			int size = entries.size();
@@ -389,18 +367,129 @@ public class GitHub{
 		return ref;
 	}
 
-	private TreeEntry createEntry(String prefix, String path, DataService service, RepositoryId repository, File outputDirectory) throws GitHubException {
+	/**
+	 * Gets the SHA-1 of all blobs in the current tree of branch, by one
+	 * recursive tree request.
+	 *
+	 * @return the blob SHA-1s, empty if the branch not exists
+	 */
+	private Set<String> getRemoteBlobs(DataService service, RepositoryId repository, Reference ref) throws GitHubException {
+		Set<String> blobs = new HashSet<String>();
+		if (ref == null){
+			return blobs;
+		}
+		try {
+			Tree currentTree = service.getCommit(repository, ref.getObject().getSha()).getTree();
+			if (currentTree == null){
+				return blobs;
+			}
+			Tree tree = service.getTree(repository, currentTree.getSha(), true);
+			if (tree.getTree() != null){
+				for (TreeEntry entry : tree.getTree()){
+					if (TYPE_BLOB.equals(entry.getType())){
+						blobs.add(entry.getSha());
+					}
+				}
+			}
+			log.info(MessageFormat.format("Found {0} blobs in tree {1}", blobs.size(), currentTree.getSha()));
+		} catch (IOException e) {
+			// A truncated or failed listing only makes more blobs uploaded
+			log.warn("Error getting current tree, uploading all blobs: " + e.getMessage());
+		}
+		return blobs;
+	}
+
+	/**
+	 * Creates the tree entry of file, the blob is added to the blobs to upload
+	 * unless it is in repository.
+	 */
+	private TreeEntry createEntry(String prefix, String path, File outputDirectory,
+			Set<String> remoteBlobs, Map<String,File> blobs) throws GitHubException {
 		TreeEntry entry = new TreeEntry();
 		entry.setPath(prefix + path);
 		entry.setType(TYPE_BLOB);
 		entry.setMode(MODE_BLOB);
-		if(!dryRun){
-			entry.setSha(createBlob(service, repository, outputDirectory, path));
-			log.info("" + path + " -> " + entry.getSha());
+
+		String sha = getBlobSha(outputDirectory, path);
+		entry.setSha(sha);
+		if (remoteBlobs.contains(sha) || blobs.containsKey(sha)){
+			if (log.isDebugEnabled()){
+				log.debug("Unchanged: " + path + " -> " + sha);
+			}
+		}else{
+			// .nojekyll is always created empty
+			blobs.put(sha, NO_JEKYLL_FILE.equals(path) ? null : new File(outputDirectory, path));
+			log.info("" + path + " -> " + sha);
 		}
 		return entry;
 	}
 
+	private String getBlobSha(File outputDirectory, String path) throws GitHubException {
+		if (NO_JEKYLL_FILE.equals(path)){
+			// always created empty
+			return getBlobSha(new byte[0]);
+		}
+		try {
+			return getBlobSha(new File(outputDirectory, path));
+		} catch (IOException e) {
+			throw new GitHubException("Error reading '" + path + "': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Computes the git blob SHA-1 of file, the same as <code>git hash-object</code>:
+	 * SHA-1 of "blob &lt;length&gt;\0" followed by the content.
+	 *
+	 * @param file the file
+	 * @return SHA-1 in hex
+	 * @throws IOException
+	 */
+	public static String getBlobSha(File file) throws IOException {
+		MessageDigest digest = createBlobDigest(file.length());
+		InputStream input = null;
+		try {
+			input = new FileInputStream(file);
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = input.read(buffer)) != -1){
+				digest.update(buffer, 0, n);
+			}
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @param content the content of blob
+	 * @return git blob SHA-1 in hex
+	 */
+	public static String getBlobSha(byte[] content) {
+		MessageDigest digest = createBlobDigest(content.length);
+		digest.update(content);
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest createBlobDigest(long length) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(("blob " + length + "\0").getBytes("US-ASCII"));
+			return digest;
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes){
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * @param destinationDirectory
 	 * @return
@@ -420,37 +509,15 @@ public class GitHub{
 		return prefix;
 	}
 
-	private String createBlob(DataService service, RepositoryId repository, File outputDirectory, String path) throws GitHubException {
-		try {
-			Blob blob = new Blob().setEncoding(ENCODING_BASE64);
-			if(NO_JEKYLL_FILE.equals(path)){
-				blob.setContent("");
-				//log.debug("Creating blob from " + NO_JEKYLL_FILE);
-			}else{
-				File file = new File(outputDirectory, path);
-				byte[] bytes = FileUtils.readFileToByteArray(file);
-				String encoded = EncodingUtils.toBase64(bytes);
-				blob.setContent(encoded);
-				//log.debug("Creating blob from " +  file.getAbsolutePath());
-			}
-			if(log.isDebugEnabled()){
-				log.debug("Creating blob from " +  path);
-			}
-			return service.createBlob(repository, blob);
-		} catch (IOException e) {
-			throw new GitHubException("Error creating blob from '" + path + "': " + e.getMessage(), e);
-		}
-	}
-
-	private GitHubClient createClient(String host, String userName, String password, String oauth2Token) throws GitHubException {
-		GitHubClient client;
+	private BlobClient createClient(String host, String userName, String password, String oauth2Token) throws GitHubException {
+		BlobClient client;
 		if (!StringUtils.isEmpty(host)) {
 			if (log.isDebugEnabled()){
 				log.debug("Using custom host: " + host);
 			}
 			client = createClient(host);
 		} else{
-			client = new GitHubClient();
+			client = new BlobClient();
 		}
 		
 		if(!StringUtils.isEmpty(userName) && !StringUtils.isEmpty(password)){
@@ -492,12 +559,12 @@ public class GitHub{
 	 * @return non-null client
 	 * @throws MojoExecutionException
 	 */
-	private GitHubClient createClient(String hostname)	throws GitHubException {
+	private BlobClient createClient(String hostname)	throws GitHubException {
 		if (!hostname.contains("://"))
-			return new GitHubClient(hostname);
+			return new BlobClient(hostname);
 		try {
 			URL hostUrl = new URL(hostname);
-			return new GitHubClient(hostUrl.getHost(), hostUrl.getPort(), hostUrl.getProtocol());
+			return new BlobClient(hostUrl.getHost(), hostUrl.getPort(), hostUrl.getProtocol());
 		} catch (MalformedURLException e) {
 			throw new GitHubException("Could not parse host URL " + hostname, e);
 		}
@@ -546,9 +613,9 @@ public class GitHub{
 		}
 
 		if (paths.length != 1){
-			log.info(MessageFormat.format("Creating {0} blobs", paths.length));
+			log.info(MessageFormat.format("Scanned {0} files", paths.length));
 		}else{
-			log.info("Creating 1 blob");
+			log.info("Scanned 1 file");
 		}
 		
 		if (log.isDebugEnabled()){
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.maven.wagon.github;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.eclipse.egit.github.core.RepositoryId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Alex Lin
+ */
+public class BlobUploaderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GitHubStandIn github;
+	private final Map<String,File> blobs = new HashMap<String, File>();
+
+	@Before
+	public void setUp() throws Exception {
+		github = new GitHubStandIn();
+	}
+
+	@After
+	public void tearDown() {
+		github.stop();
+	}
+
+	@Test
+	public void retriesServerErrorsAndThrottles() throws Exception {
+		addBlobs(6);
+		blobs.put(GitHub.getBlobSha(new byte[0]), null);
+		github.fail(502, "Bad Gateway", null)
+				.fail(500, "Server Error", null)
+				.fail(403, "You have exceeded a secondary rate limit", null);
+
+		Map<String,String> created = upload(4);
+
+		assertEquals(blobs.size(), created.size());
+		for (Map.Entry<String,File> entry : blobs.entrySet()){
+			String sha = entry.getKey();
+			assertEquals(sha, created.get(sha));
+			byte[] expected = entry.getValue() != null ? FileUtils.readFileToByteArray(entry.getValue()) : new byte[0];
+			assertArrayEquals(expected, github.getBlobs().get(sha));
+		}
+		assertEquals(blobs.size() + 3, github.getRequests().size());
+		assertTrue(github.getMaxConcurrent() <= 4);
+	}
+
+	@Test
+	public void throttlePausesAllUploads() throws Exception {
+		addBlobs(8);
+		github.setLatency(100).fail(429, "Too Many Requests", "1");
+
+		upload(4);
+
+		List<GitHubStandIn.Request> requests = github.getRequests();
+		assertEquals(9, requests.size());
+		long throttled = -1;
+		for (GitHubStandIn.Request request : requests){
+			if (request.status == 429){
+				throttled = request.responded;
+			}
+		}
+		for (GitHubStandIn.Request request : requests){
+			long after = request.received - throttled;
+			// the uploads acquired before the pause may arrive right after
+			assertTrue("Request " + after + "ms after throttled", after < 50 || after >= 900);
+		}
+	}
+
+	@Test
+	public void clientErrorNotRetried() throws Exception {
+		addBlobs(1);
+		github.fail(422, "Validation Failed", null);
+
+		try {
+			upload(2);
+			fail("Client error uploaded");
+		} catch (GitHubException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Validation Failed"));
+		}
+		assertEquals(1, github.getRequests().size());
+	}
+
+	@Test
+	public void contentErrorNotRetried() throws Exception {
+		addBlobs(1);
+		final AtomicInteger attempts = new AtomicInteger();
+		// the file looks shorter than expected, as if changed while uploading
+		BlobClient client = new BlobClient("127.0.0.1", github.getPort(), "http") {
+			@Override
+			String createBlob(IRepositoryIdProvider repository, InputStream content, long length) throws IOException {
+				attempts.incrementAndGet();
+				return super.createBlob(repository, content, length + 1);
+			}
+		};
+
+		try {
+			new BlobUploader(client, RepositoryId.create("opoo", "site"), 2).upload(blobs);
+			fail("Changed file uploaded");
+		} catch (GitHubException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Content shorter than"));
+		}
+		assertEquals(1, attempts.get());
+	}
+
+	private void addBlobs(int count) throws Exception {
+		for (int i = 0 ; i < count ; i++){
+			File file = folder.newFile("blob" + i + ".txt");
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0 ; j <= i * 5000 ; j++){
+				sb.append(i).append(':').append(j).append('\n');
+			}
+			FileUtils.writeStringToFile(file, sb.toString(), "UTF-8");
+			blobs.put(GitHub.getBlobSha(file), file);
+		}
+	}
+
+	private Map<String,String> upload(int numThreads) throws GitHubException {
+		BlobUploader uploader = new BlobUploader(github.createClient(), RepositoryId.create("opoo", "site"), numThreads);
+		return uploader.upload(blobs);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.maven.wagon.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Alex Lin
+ */
+public class ConcurrencyLimiterTest {
+
+	@Test
+	public void growsWhenLimitUsedUp() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(5);
+		assertEquals(3, limiter.getLimit());
+		int acquired = 0;
+		for (int i = 0 ; i < 20 ; i++){
+			// keeps the limit used up
+			while (acquired < limiter.getLimit()){
+				limiter.acquire();
+				acquired++;
+			}
+			limiter.onSuccess(10);
+		}
+		assertEquals(5, limiter.getLimit());
+	}
+
+	@Test
+	public void notGrowsWhenLimitNotUsedUp() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8);
+		limiter.acquire();
+		for (int i = 0 ; i < 20 ; i++){
+			limiter.onSuccess(10);
+		}
+		assertEquals(4, limiter.getLimit());
+	}
+
+	@Test
+	public void shrinksOnCongestionAndFailure() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(20);
+		assertEquals(10, limiter.getLimit());
+		limiter.onSuccess(10);
+		limiter.onSuccess(100);
+		assertEquals(9, limiter.getLimit());
+		limiter.onFailure();
+		assertEquals(8, limiter.getLimit());
+	}
+
+	@Test
+	public void throttleHalvesLimitAndPauses() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8);
+		limiter.onThrottled(300);
+		assertEquals(2, limiter.getLimit());
+
+		long start = System.currentTimeMillis();
+		limiter.acquire();
+		assertTrue(System.currentTimeMillis() - start >= 250);
+
+		for (int i = 0 ; i < 5 ; i++){
+			limiter.onThrottled(-1);
+		}
+		assertEquals(1, limiter.getLimit());
+	}
+
+	@Test
+	public void acquireWaitsForRelease() throws Exception {
+		final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+		limiter.acquire();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					return;
+				}
+				limiter.release();
+			}
+		};
+		thread.start();
+		long start = System.currentTimeMillis();
+		limiter.acquire();
+		assertTrue(System.currentTimeMillis() - start >= 150);
+		thread.join();
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.maven.wagon.github;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.egit.github.core.util.EncodingUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP stand-in of the GitHub blob API: creates blobs from the request
+ * content, or responds the scripted errors first.
+ *
+ * @author Alex Lin
+ */
+class GitHubStandIn {
+	private static final Pattern CONTENT = Pattern.compile("\"content\":\"([^\"]*)\"");
+
+	private final HttpServer server;
+	private final LinkedList<Response> script = new LinkedList<Response>();
+	private final List<Request> requests = new ArrayList<Request>();
+	private final Map<String,byte[]> blobs = new ConcurrentHashMap<String, byte[]>();
+	private volatile long latencyMillis;
+	private int concurrent;
+	private int maxConcurrent;
+
+	GitHubStandIn() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					GitHubStandIn.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	BlobClient createClient() {
+		return new BlobClient("127.0.0.1", getPort(), "http");
+	}
+
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Responds an error to the next request, after the errors scripted before.
+	 *
+	 * @param status the status code
+	 * @param message the message of error
+	 * @param retryAfter the value of header <code>Retry-After</code>, or null
+	 */
+	synchronized GitHubStandIn fail(int status, String message, String retryAfter) {
+		script.add(new Response(status, message, retryAfter));
+		return this;
+	}
+
+	/**
+	 * @param latencyMillis the time to respond each request
+	 */
+	GitHubStandIn setLatency(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+		return this;
+	}
+
+	synchronized List<Request> getRequests() {
+		return new ArrayList<Request>(requests);
+	}
+
+	/**
+	 * @return SHA-1 =&gt; content of the created blobs
+	 */
+	Map<String,byte[]> getBlobs() {
+		return blobs;
+	}
+
+	synchronized int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	void stop() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		long received = System.currentTimeMillis();
+		Response response;
+		synchronized (this){
+			maxConcurrent = Math.max(maxConcurrent, ++concurrent);
+			response = script.poll();
+		}
+		try {
+			String body = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+			if (latencyMillis > 0){
+				try {
+					Thread.sleep(latencyMillis);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			if (response == null){
+				Matcher m = CONTENT.matcher(body);
+				if (!m.find()){
+					response = new Response(400, "Problems parsing JSON", null);
+				} else {
+					byte[] content = EncodingUtils.fromBase64(m.group(1));
+					String sha = GitHub.getBlobSha(content);
+					blobs.put(sha, content);
+					response = new Response(201, sha, null);
+				}
+			}
+			synchronized (this){
+				requests.add(new Request(received, System.currentTimeMillis(), response.status));
+			}
+			send(exchange, response);
+		} finally {
+			synchronized (this){
+				concurrent--;
+			}
+		}
+	}
+
+	private static void send(HttpExchange exchange, Response response) throws IOException {
+		String json = response.status == 201 ? "{\"sha\":\"" + response.message + "\"}"
+				: "{\"message\":\"" + response.message + "\"}";
+		byte[] bytes = json.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		if (response.retryAfter != null){
+			exchange.getResponseHeaders().set("Retry-After", response.retryAfter);
+		}
+		exchange.sendResponseHeaders(response.status, bytes.length);
+		OutputStream output = exchange.getResponseBody();
+		try {
+			output.write(bytes);
+		} finally {
+			IOUtils.closeQuietly(output);
+		}
+	}
+
+	static class Request {
+		final long received;
+		final long responded;
+		final int status;
+
+		Request(long received, long responded, int status) {
+			this.received = received;
+			this.responded = responded;
+			this.status = status;
+		}
+	}
+
+	private static class Response {
+		final int status;
+		final String message;
+		final String retryAfter;
+
+		Response(int status, String message, String retryAfter) {
+			this.status = status;
+			this.message = message;
+			this.retryAfter = retryAfter;
+		}
+	}
+}